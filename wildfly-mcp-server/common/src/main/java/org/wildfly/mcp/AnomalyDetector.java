@@ -0,0 +1,308 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Online anomaly detection over the sampled metrics. Each sample is scored
+ * when it is recorded against a fixed size state of its series, the history
+ * is never read again:
+ * <ul>
+ * <li>an exponentially weighted moving average and variance of the value: a
+ * value far from the recent level is a spike (or a drop),</li>
+ * <li>the average and variance of the value for each hour of the day: a
+ * spike that is usual at this hour of the day is not reported,</li>
+ * <li>a slower exponentially weighted moving average of the per second
+ * slope: a sustained slope, such as a heap that keeps growing across the
+ * garbage collections, is a growth (or a decline).</li>
+ * </ul>
+ * The scores are the distances to the expected value in standard deviations,
+ * for a slope the increase over the period of its average.
+ * The cumulative series (the counters) are not scored, their rate is.
+ *
+ * @author jdenise
+ */
+public class AnomalyDetector {
+
+    /**
+     * An anomalous series.
+     *
+     * @param kind spike, drop, growth or decline.
+     * @param score The distance to the expected value in standard
+     * deviations.
+     * @param value The last value, the per second slope for a growth or a
+     * decline.
+     * @param expected The expected value, the expected per second slope for a
+     * growth or a decline.
+     * @param since The time of the first sample of the anomaly, the time of
+     * the last sample if the score is below the threshold.
+     */
+    public record Anomaly(String series, String kind, double score, double value, double expected, long since) {
+
+    }
+
+    private static final int HOURS = 24;
+    private static final long HOUR = 3600000;
+    // The weight of a new day in the hour of the day baseline.
+    private static final double SEASONAL_ALPHA = 0.3;
+    private static final double MAX_SCORE = 100;
+
+    private static final class State {
+
+        private long samples;
+        private double mean;
+        private double variance;
+        private double lastValue;
+        private long lastTime;
+        private long slopes;
+        private double slope;
+        private double interval;
+        // The baseline of each hour of the day, and the current hour being accumulated.
+        private final double[] hourMeans = new double[HOURS];
+        private final double[] hourVariances = new double[HOURS];
+        private int hours;
+        private long hour = -1;
+        private long hourCount;
+        private double hourSum;
+        private double hourSquares;
+        // The result of the last sample, whatever its score.
+        private long time;
+        private String kind;
+        private double score;
+        private double value;
+        private double expected;
+        private long since;
+    }
+
+    private static final class Recording {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, State> states = new HashMap<>();
+        private long time;
+    }
+
+    private final Map<String, Recording> recordings = new ConcurrentHashMap<>();
+    private final double alpha;
+    private final double trendAlpha;
+    private final int warmup;
+    private final double threshold;
+    private final int maxSeries;
+
+    public AnomalyDetector() {
+        this(Double.parseDouble(System.getProperty("org.wildfly.mcp.anomaly.alpha", "0.05")),
+                Double.parseDouble(System.getProperty("org.wildfly.mcp.anomaly.trend.alpha", "0.005")),
+                Integer.getInteger("org.wildfly.mcp.anomaly.warmup", 30),
+                Double.parseDouble(System.getProperty("org.wildfly.mcp.anomaly.threshold", "4")),
+                Integer.getInteger("org.wildfly.mcp.sampler.max.series", 1000));
+    }
+
+    /**
+     * @param alpha The weight of a new sample in the average of the values.
+     * @param trendAlpha The weight of a new sample in the average of the
+     * slopes.
+     * @param warmup The number of samples of a series before it is scored,
+     * the slope is scored after 1 / trendAlpha samples.
+     * @param threshold The score above which a series is anomalous.
+     * @param maxSeries The maximum number of series per server, the next
+     * series are not scored.
+     */
+    AnomalyDetector(double alpha, double trendAlpha, int warmup, double threshold, int maxSeries) {
+        this.alpha = alpha;
+        this.trendAlpha = trendAlpha;
+        this.warmup = Math.max(2, warmup);
+        this.threshold = threshold;
+        this.maxSeries = maxSeries;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    private static String key(Server server) {
+        return server.host + ":" + server.port;
+    }
+
+    /**
+     * Score a sample of the server, the first count names and values are
+     * scored with the same timestamp.
+     *
+     * @param cumulative The cumulative series, they are not scored.
+     */
+    public void record(Server server, long time, List<String> names, double[] values, boolean[] cumulative, int count) {
+        Recording recording = recordings.computeIfAbsent(key(server), k -> new Recording());
+        recording.lock.lock();
+        try {
+            recording.time = time;
+            for (int i = 0; i < count; i++) {
+                if (cumulative[i] || !Double.isFinite(values[i])) {
+                    continue;
+                }
+                State state = recording.states.get(names.get(i));
+                if (state == null) {
+                    if (recording.states.size() == maxSeries) {
+                        continue;
+                    }
+                    state = new State();
+                    recording.states.put(names.get(i), state);
+                }
+                update(state, time, values[i]);
+            }
+        } finally {
+            recording.lock.unlock();
+        }
+    }
+
+    private void update(State state, long time, double value) {
+        String kind = null;
+        double score = 0;
+        double expected = 0;
+        double reported = value;
+        long hour = Math.floorDiv(time, HOUR);
+        int hourOfDay = (int) (hour % HOURS);
+        if (state.samples >= warmup) {
+            double level = score(value, state.mean, state.variance);
+            expected = state.mean;
+            // A value usual at this hour of the day is not an anomaly.
+            if ((state.hours & (1 << hourOfDay)) != 0) {
+                double seasonal = score(value, state.hourMeans[hourOfDay], state.hourVariances[hourOfDay]);
+                if (seasonal < level) {
+                    level = seasonal;
+                    expected = state.hourMeans[hourOfDay];
+                }
+            }
+            kind = value > expected ? "spike" : "drop";
+            score = level;
+        }
+        double slope = 0;
+        boolean hasSlope = state.samples > 0 && time > state.lastTime;
+        if (hasSlope) {
+            slope = (value - state.lastValue) * 1000 / (time - state.lastTime);
+            if (state.slopes >= 1 / trendAlpha) {
+                // The increase over the period of the average of the slopes.
+                double period = state.interval / 1000 / trendAlpha;
+                double trend = score(state.mean + state.slope * period, state.mean, state.variance);
+                if (kind == null || trend > score) {
+                    kind = state.slope > 0 ? "growth" : "decline";
+                    score = trend;
+                    reported = state.slope;
+                    expected = 0;
+                }
+            }
+        }
+        if (kind == null) {
+            state.kind = null;
+        } else {
+            // An anomaly starts when the score reaches the threshold.
+            if (score < threshold || state.kind == null || state.score < threshold) {
+                state.since = time;
+            }
+            state.kind = kind;
+            state.score = score;
+            state.value = reported;
+            state.expected = expected;
+        }
+        state.time = time;
+
+        // Update the state once the sample is scored.
+        if (state.samples == 0) {
+            state.mean = value;
+        } else {
+            double diff = value - state.mean;
+            double increment = alpha * diff;
+            state.mean += increment;
+            state.variance = (1 - alpha) * (state.variance + diff * increment);
+        }
+        if (hasSlope) {
+            if (state.slopes == 0) {
+                state.slope = slope;
+                state.interval = time - state.lastTime;
+            } else {
+                state.slope += trendAlpha * (slope - state.slope);
+                state.interval += alpha * (time - state.lastTime - state.interval);
+            }
+            state.slopes += 1;
+        }
+        if (hour != state.hour) {
+            closeHour(state);
+            state.hour = hour;
+        }
+        state.hourCount += 1;
+        state.hourSum += value;
+        state.hourSquares += value * value;
+        state.samples += 1;
+        state.lastValue = value;
+        state.lastTime = time;
+    }
+
+    /**
+     * Add the values of the elapsed hour to the baseline of its hour of the
+     * day.
+     */
+    private static void closeHour(State state) {
+        if (state.hourCount < 2) {
+            state.hourCount = 0;
+            state.hourSum = 0;
+            state.hourSquares = 0;
+            return;
+        }
+        int hourOfDay = (int) (state.hour % HOURS);
+        double mean = state.hourSum / state.hourCount;
+        double variance = Math.max(0, state.hourSquares / state.hourCount - mean * mean);
+        if ((state.hours & (1 << hourOfDay)) == 0) {
+            state.hourMeans[hourOfDay] = mean;
+            state.hourVariances[hourOfDay] = variance;
+            state.hours |= 1 << hourOfDay;
+        } else {
+            state.hourMeans[hourOfDay] += SEASONAL_ALPHA * (mean - state.hourMeans[hourOfDay]);
+            state.hourVariances[hourOfDay] += SEASONAL_ALPHA * (variance - state.hourVariances[hourOfDay]);
+        }
+        state.hourCount = 0;
+        state.hourSum = 0;
+        state.hourSquares = 0;
+    }
+
+    private static double score(double value, double mean, double variance) {
+        // A constant series still tolerates a relative deviation.
+        double deviation = Math.max(Math.sqrt(variance), Math.abs(mean) * 1e-3);
+        if (deviation == 0) {
+            return value == mean ? 0 : MAX_SCORE;
+        }
+        return Math.min(MAX_SCORE, Math.abs(value - mean) / deviation);
+    }
+
+    /**
+     * The score of every scored series is kept, a minimum score lower than
+     * the threshold returns the series that are close to be anomalous.
+     *
+     * @return The series of the server whose score at the last sample is at
+     * least minScore, the highest scores first.
+     */
+    public List<Anomaly> getAnomalies(Server server, double minScore) {
+        List<Anomaly> result = new ArrayList<>();
+        Recording recording = recordings.get(key(server));
+        if (recording == null) {
+            return result;
+        }
+        recording.lock.lock();
+        try {
+            for (Map.Entry<String, State> entry : recording.states.entrySet()) {
+                State state = entry.getValue();
+                if (state.kind != null && state.time == recording.time && state.score >= minScore) {
+                    result.add(new Anomaly(entry.getKey(), state.kind, state.score, state.value, state.expected, state.since));
+                }
+            }
+        } finally {
+            recording.lock.unlock();
+        }
+        result.sort((a1, a2) -> Double.compare(a2.score(), a1.score()));
+        return result;
+    }
+}
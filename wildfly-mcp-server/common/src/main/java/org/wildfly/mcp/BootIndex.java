@@ -0,0 +1,160 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Index of the server starts (WFLYSRV0049 traces) found in the server log
+ * file of each server. The index is built incrementally, from the lines read
+ * when the log is tailed and from the lines written since the indexed
+ * position, so the log file is read once.
+ *
+ * @author jdenise
+ */
+public class BootIndex {
+
+    public static final String BOOT_MARKER = "WFLYSRV0049";
+
+    /**
+     * A server start.
+     *
+     * @param line The line of the log file.
+     * @param time The time of the log record, null if not known.
+     */
+    public record Boot(int line, LocalDateTime time) {
+
+    }
+
+    /**
+     * The indexed part of a log file.
+     *
+     * @param last The last server start, null if the log file doesn't contain
+     * a start.
+     * @param lines The number of indexed lines.
+     * @param size The size in bytes of the indexed lines.
+     */
+    public record Indexed(Boot last, int lines, long size) {
+
+    }
+
+    /**
+     * Read the lines of the log file that follow a position.
+     */
+    public interface LineReader {
+
+        /**
+         * @param line The number of lines before the position.
+         * @param size The number of bytes before the position.
+         * @param consumer Receives the lines.
+         * @return The number of bytes before the end of the last pushed line.
+         */
+        long read(int line, long size, Consumer<String> consumer) throws Exception;
+    }
+
+    private static final class State {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private String fingerprint;
+        private int indexed;
+        private long size;
+        private final List<Boot> boots = new ArrayList<>();
+    }
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param fileSize The size of the log file, a file smaller than the
+     * indexed lines is a new file. -1 if not known.
+     */
+    private State state(Server server, String fingerprint, long fileSize) {
+        State state = states.computeIfAbsent(server.host + ":" + server.port, k -> new State());
+        if (!fingerprint.equals(state.fingerprint) || fileSize >= 0 && fileSize < state.size) {
+            // New log file.
+            state.fingerprint = fingerprint;
+            state.indexed = 0;
+            state.size = 0;
+            state.boots.clear();
+        }
+        return state;
+    }
+
+    /**
+     * Index lines read from the log file. Lines that are not contiguous with
+     * the already indexed lines are ignored.
+     *
+     * @param fingerprint Identifies the log file.
+     * @param offset The line of the log file of the first line.
+     * @param size The number of bytes before the end of the last line.
+     */
+    public void observe(Server server, String fingerprint, int offset, List<String> lines, long size) {
+        State state = states.computeIfAbsent(server.host + ":" + server.port, k -> new State());
+        // Never wait, the lines will be read again if needed.
+        if (!state.lock.tryLock()) {
+            return;
+        }
+        try {
+            state = state(server, fingerprint, -1);
+            if (offset <= state.indexed && state.indexed < offset + lines.size()) {
+                for (String line : lines.subList(state.indexed - offset, lines.size())) {
+                    index(state, line);
+                }
+                state.size = size;
+            }
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Index the lines written since the indexed position.
+     *
+     * @param fingerprint Identifies the log file.
+     * @param fileSize The size of the log file, -1 if not known.
+     * @param reader Reads the lines that follow the indexed position.
+     * @return The indexed part of the log file.
+     */
+    public Indexed update(Server server, String fingerprint, long fileSize, LineReader reader) throws Exception {
+        State state = states.computeIfAbsent(server.host + ":" + server.port, k -> new State());
+        state.lock.lock();
+        try {
+            State current = state(server, fingerprint, fileSize);
+            current.size = reader.read(current.indexed, current.size, line -> index(current, line));
+            return new Indexed(current.boots.isEmpty() ? null : current.boots.get(current.boots.size() - 1), current.indexed, current.size);
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The indexed starts of the server.
+     */
+    public List<Boot> getBoots(Server server) {
+        State state = states.get(server.host + ":" + server.port);
+        if (state == null) {
+            return List.of();
+        }
+        state.lock.lock();
+        try {
+            return List.copyOf(state.boots);
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    private static void index(State state, String line) {
+        if (line.contains(BOOT_MARKER)) {
+            LogLineParser.Entry entry = LogLineParser.parse(line);
+            state.boots.add(new Boot(state.indexed, entry == null ? null : entry.time()));
+        }
+        state.indexed += 1;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jboss.as.cli.CommandContext;
+import org.jboss.as.cli.CommandContextFactory;
+import org.jboss.as.cli.CommandFormatException;
+import org.jboss.as.cli.Util;
+import org.jboss.as.cli.operation.OperationFormatException;
+import org.jboss.as.cli.operation.OperationRequestAddress;
+import org.jboss.as.cli.operation.ParsedCommandLine;
+import org.jboss.as.cli.operation.impl.DefaultCallbackHandler;
+import org.jboss.as.cli.parsing.StateParser;
+import org.jboss.as.cli.parsing.arguments.ArgumentValueCallbackHandler;
+import org.jboss.as.cli.parsing.arguments.ArgumentValueInitialState;
+import org.jboss.as.cli.parsing.operation.OperationFormat;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Build management operations from CLI operation requests. The parsed
+ * operations are kept in a LRU cache, so the same request is only parsed once.
+ * A template can contain {@code ?} placeholders as node names or argument
+ * values, they are replaced by the provided values without parsing the
+ * template again, e.g.
+ * {@code buildTemplate("/deployment=?:read-content(path=?)", name, path)}.
+ * The requests provided by the users are built with {@link #build(String)},
+ * a {@code ?} is then a plain value.
+ * <p>
+ * Operation requests are parsed without a CLI {@link CommandContext}, a
+ * context is only created for the lines that are not plain operations (CLI
+ * commands, headers, variables).
+ *
+ * @author jdenise
+ */
+public class CLIOperationBuilder {
+
+    public static final String PLACEHOLDER = "?";
+
+    /**
+     * A parsed operation and the location of its placeholders.
+     */
+    private record Template(ModelNode operation, List<Slot> slots) {
+
+        ModelNode instantiate(String... values) throws OperationFormatException {
+            if (values.length != slots.size()) {
+                throw new OperationFormatException("Expecting " + slots.size() + " value(s) but got " + values.length);
+            }
+            ModelNode op = operation.clone();
+            for (int i = 0; i < values.length; i++) {
+                slots.get(i).set(op, values[i]);
+            }
+            return op;
+        }
+    }
+
+    /**
+     * Either the name of the address node at the given index or the value of
+     * the given argument.
+     */
+    private record Slot(int addressIndex, String argument) {
+
+        void set(ModelNode op, String value) {
+            if (argument == null) {
+                ModelNode node = op.get(Util.ADDRESS).get(addressIndex);
+                String type = node.keys().iterator().next();
+                node.get(type).set(value);
+            } else {
+                op.get(argument).set(value);
+            }
+        }
+    }
+
+    private final Map<String, Template> cache;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CLIOperationBuilder() {
+        this(Integer.getInteger("org.wildfly.mcp.cli.cache.size", 256));
+    }
+
+    CLIOperationBuilder(int maxSize) {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Build the operation for the CLI request, a {@code ?} is not a
+     * placeholder.
+     *
+     * @param request The CLI request.
+     * @return A new operation that can be modified by the caller.
+     */
+    public ModelNode build(String request) throws CommandFormatException {
+        return template(request).operation().clone();
+    }
+
+    /**
+     * Build the operation for an internal CLI request template.
+     *
+     * @param template The CLI request, it can contain {@code ?} placeholders.
+     * @param values The values of the placeholders, in the order they appear.
+     * @return A new operation that can be modified by the caller.
+     */
+    public ModelNode buildTemplate(String template, String... values) throws CommandFormatException {
+        return template(template).instantiate(values);
+    }
+
+    private Template template(String request) throws CommandFormatException {
+        Template template;
+        lock.lock();
+        try {
+            template = cache.get(request);
+        } finally {
+            lock.unlock();
+        }
+        if (template == null) {
+            misses.increment();
+            // Parsing is done outside of the lock, a concurrent parsing of the same request is harmless.
+            template = parse(request);
+            lock.lock();
+            try {
+                cache.put(request, template);
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            hits.increment();
+        }
+        return template;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private static Template parse(String request) throws CommandFormatException {
+        DefaultCallbackHandler parsedLine = new DefaultCallbackHandler(false);
+        try {
+            parsedLine.parse(null, request, null);
+        } catch (CommandFormatException | RuntimeException ex) {
+            return fallback(request, ex);
+        }
+        if (parsedLine.getFormat() != OperationFormat.INSTANCE || parsedLine.hasHeaders()
+                || !parsedLine.getOtherProperties().isEmpty() || parsedLine.getOutputTarget() != null) {
+            return fallback(request, null);
+        }
+        List<Slot> slots = new ArrayList<>();
+        ModelNode op = toOperation(parsedLine, slots, true);
+        return new Template(op, List.copyOf(slots));
+    }
+
+    /**
+     * Lines that are not plain operation requests are built by a CLI context.
+     * Placeholders are not supported for such lines.
+     */
+    private static Template fallback(String request, Exception parsingFailure) throws CommandFormatException {
+        CommandContext ctx;
+        try {
+            ctx = CommandContextFactory.getInstance().newCommandContext();
+        } catch (Exception ex) {
+            if (parsingFailure instanceof CommandFormatException cfe) {
+                throw cfe;
+            }
+            throw new CommandFormatException("Can't parse " + request, ex);
+        }
+        try {
+            return new Template(ctx.buildRequest(request), List.of());
+        } finally {
+            ctx.terminateSession();
+        }
+    }
+
+    /**
+     * @param cliValues true to parse the argument values that are not DMR
+     * values as the CLI does, false to only accept DMR values.
+     */
+    static ModelNode toOperation(ParsedCommandLine parsedLine, boolean cliValues) throws CommandFormatException {
+        return toOperation(parsedLine, new ArrayList<>(), cliValues);
+    }
+
+    private static ModelNode toOperation(ParsedCommandLine parsedLine, List<Slot> slots, boolean cliValues) throws CommandFormatException {
+        if (parsedLine.getFormat() != OperationFormat.INSTANCE) {
+            throw new OperationFormatException("The line does not follow the operation request format");
+        }
+        ModelNode request = new ModelNode();
+        ModelNode addressNode = request.get(Util.ADDRESS);
+        if (parsedLine.getAddress().isEmpty()) {
+            addressNode.setEmptyList();
+        } else {
+            Iterator<OperationRequestAddress.Node> iterator = parsedLine.getAddress().iterator();
+            int index = 0;
+            while (iterator.hasNext()) {
+                OperationRequestAddress.Node node = iterator.next();
+                if (node.getName() != null) {
+                    if (PLACEHOLDER.equals(node.getName())) {
+                        slots.add(new Slot(index, null));
+                    }
+                    addressNode.add(node.getType(), node.getName());
+                    index += 1;
+                } else if (iterator.hasNext()) {
+                    throw new OperationFormatException(
+                            "The node name is not specified for type '"
+                            + node.getType() + "'");
+                }
+            }
+        }
+
+        final String operationName = parsedLine.getOperationName();
+        if (operationName == null || operationName.isEmpty()) {
+            throw new OperationFormatException("The operation name is missing or the format of the operation request is wrong.");
+        }
+        request.get(Util.OPERATION).set(operationName);
+        for (String propName : parsedLine.getPropertyNames()) {
+            String value = parsedLine.getPropertyValue(propName);
+            if (propName == null || propName.trim().isEmpty()) {
+                throw new OperationFormatException("The argument name is not specified: '" + propName + "'");
+            }
+            if (value == null || value.trim().isEmpty()) {
+                throw new OperationFormatException("The argument value is not specified for " + propName + ": '" + value + "'");
+            }
+            if (PLACEHOLDER.equals(value)) {
+                slots.add(new Slot(-1, propName));
+            }
+            request.get(propName).set(cliValues ? toValue(value) : ModelNode.fromString(value));
+        }
+        return request;
+    }
+
+    private static ModelNode toValue(String value) throws CommandFormatException {
+        try {
+            return ModelNode.fromString(value);
+        } catch (IllegalArgumentException ex) {
+            // Not a DMR value, parse it as the CLI does, e.g. [{input-stream-index=0}] or a plain string.
+            ArgumentValueCallbackHandler handler = new ArgumentValueCallbackHandler();
+            StateParser.parse(value, handler, ArgumentValueInitialState.INSTANCE);
+            return handler.getResult();
+        }
+    }
+}
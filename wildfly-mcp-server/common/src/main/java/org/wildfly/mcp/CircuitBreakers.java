@@ -0,0 +1,232 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker per WildFly server (host and port). After a number of
+ * consecutive connection failures (including the calls that timed out, a
+ * hanging server doesn't fail the calls) the circuit is opened and the calls
+ * fail immediately. The cancelled calls are not counted, a call can be
+ * cancelled because another call of the same batch failed or timed out.
+ * Only the timeout of the call itself is counted. Once the open duration has elapsed, a single call is let
+ * through to probe the server (half-open state), its outcome closes or
+ * re-opens the circuit.
+ *
+ * @author jdenise
+ */
+public class CircuitBreakers {
+
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.CircuitBreakers");
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static class CircuitOpenException extends Exception {
+
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    public record BreakerStats(String server, State state, int consecutiveFailures, long retryInMs, long rejectedCalls) {
+
+    }
+
+    private static final class Breaker {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongAdder rejected = new LongAdder();
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+    }
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long openDuration;
+    private final LongSupplier clock;
+
+    public CircuitBreakers() {
+        this(Integer.getInteger("org.wildfly.mcp.breaker.failure.threshold", 3),
+                Long.getLong("org.wildfly.mcp.breaker.open.duration", 30000),
+                System::currentTimeMillis);
+    }
+
+    CircuitBreakers(int failureThreshold, long openDuration, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    private static String key(Server server) {
+        return server.host + ":" + server.port;
+    }
+
+    private Breaker breaker(Server server) {
+        return breakers.computeIfAbsent(key(server), k -> new Breaker());
+    }
+
+    /**
+     * Check that a call can be done to the server. Each successful check must
+     * be followed by a call to {@link #onSuccess(Server)},
+     * {@link #onFailure(Server, Throwable)} or {@link #abandon(Server)}.
+     */
+    public void before(Server server) throws CircuitOpenException {
+        Breaker breaker = breaker(server);
+        breaker.lock.lock();
+        try {
+            switch (breaker.state) {
+                case CLOSED:
+                    return;
+                case OPEN:
+                    long retryIn = breaker.openedAt + openDuration - clock.getAsLong();
+                    if (retryIn <= 0) {
+                        breaker.state = State.HALF_OPEN;
+                        breaker.probing = true;
+                        return;
+                    }
+                    breaker.rejected.increment();
+                    throw new CircuitOpenException("The server " + server.host + ":" + server.port
+                            + " is not reachable, the last " + breaker.failures + " connection attempts failed. Retry in "
+                            + (retryIn / 1000 + 1) + " seconds.");
+                case HALF_OPEN:
+                    if (!breaker.probing) {
+                        breaker.probing = true;
+                        return;
+                    }
+                    breaker.rejected.increment();
+                    throw new CircuitOpenException("The server " + server.host + ":" + server.port
+                            + " is not reachable, a connection attempt is in progress. Retry later.");
+            }
+        } finally {
+            breaker.lock.unlock();
+        }
+    }
+
+    public void onSuccess(Server server) {
+        Breaker breaker = breaker(server);
+        breaker.lock.lock();
+        try {
+            if (breaker.state != State.CLOSED) {
+                LOGGER.info("The server " + key(server) + " is reachable again");
+            }
+            breaker.state = State.CLOSED;
+            breaker.failures = 0;
+            breaker.probing = false;
+        } finally {
+            breaker.lock.unlock();
+        }
+    }
+
+    /**
+     * Record a failed call. Failures that are not connection failures mean that
+     * the server has been reached, they are recorded as a success. A cancelled
+     * call tells nothing about the server, it is abandoned.
+     */
+    public void onFailure(Server server, Throwable failure) {
+        if (failure instanceof CancellationException) {
+            abandon(server);
+            return;
+        }
+        if (!isConnectionFailure(failure)) {
+            onSuccess(server);
+            return;
+        }
+        Breaker breaker = breaker(server);
+        breaker.lock.lock();
+        try {
+            breaker.failures += 1;
+            breaker.probing = false;
+            if (breaker.state == State.HALF_OPEN || breaker.failures >= failureThreshold) {
+                if (breaker.state != State.OPEN) {
+                    LOGGER.warning("Opening the circuit for the server " + key(server) + " after " + breaker.failures + " connection failures");
+                }
+                breaker.state = State.OPEN;
+                breaker.openedAt = clock.getAsLong();
+            }
+        } finally {
+            breaker.lock.unlock();
+        }
+    }
+
+    /**
+     * The call has not been done, let another call probe the server.
+     */
+    public void abandon(Server server) {
+        Breaker breaker = breaker(server);
+        breaker.lock.lock();
+        try {
+            breaker.probing = false;
+        } finally {
+            breaker.lock.unlock();
+        }
+    }
+
+    public <T> T call(Server server, Callable<T> call) throws Exception {
+        before(server);
+        T result;
+        try {
+            result = call.call();
+        } catch (Exception ex) {
+            onFailure(server, ex);
+            throw ex;
+        }
+        onSuccess(server);
+        return result;
+    }
+
+    public static boolean isConnectionFailure(Throwable failure) {
+        Throwable t = failure;
+        while (t != null) {
+            if (t instanceof ConnectException || t instanceof UnknownHostException
+                    || t instanceof NoRouteToHostException || t instanceof SocketTimeoutException
+                    || t instanceof TimeoutException) {
+                return true;
+            }
+            // WFLYPRT0053: Could not connect, WFLYPRT0054: The connection timed out
+            String message = t.getMessage();
+            if (message != null && (message.startsWith("WFLYPRT0053") || message.startsWith("WFLYPRT0054"))) {
+                return true;
+            }
+            t = t.getCause() == t ? null : t.getCause();
+        }
+        return false;
+    }
+
+    public List<BreakerStats> getStats() {
+        List<BreakerStats> stats = new ArrayList<>();
+        for (Map.Entry<String, Breaker> entry : breakers.entrySet()) {
+            Breaker breaker = entry.getValue();
+            breaker.lock.lock();
+            try {
+                long retryIn = breaker.state == State.OPEN ? Math.max(0, breaker.openedAt + openDuration - clock.getAsLong()) : 0;
+                stats.add(new BreakerStats(entry.getKey(), breaker.state, breaker.failures, retryIn, breaker.rejected.sum()));
+            } finally {
+                breaker.lock.unlock();
+            }
+        }
+        return stats;
+    }
+}
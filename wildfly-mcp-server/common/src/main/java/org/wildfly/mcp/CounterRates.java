@@ -0,0 +1,154 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The previous value of the cumulative series (counters, histogram buckets,
+ * counts and sums) of a server, to compute their increase and per second
+ * rate between two scrapes. The values are kept in an open addressing table of
+ * primitive arrays. The times are monotonic (System.nanoTime), a decreasing
+ * value is a reset of the counter: the increase is then the new value.
+ * Not thread safe, the callers hold the lock of the instance while updating
+ * it, see {@link #lock()}.
+ *
+ * @author jdenise
+ */
+public final class CounterRates {
+
+    public static final int DELTA = 0;
+    public static final int RATE = 1;
+    public static final int SECONDS = 2;
+    public static final int RESET = 3;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxSeries;
+    private String[] keys = new String[64];
+    private double[] values = new double[64];
+    private long[] times = new long[64];
+    private int size;
+
+    public CounterRates() {
+        this(Integer.getInteger("org.wildfly.mcp.metrics.rate.max.series", 10000));
+    }
+
+    /**
+     * @param maxSeries The maximum number of series, the next series are not
+     * tracked.
+     */
+    CounterRates(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    public void lock() {
+        lock.lock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * @return true if the sample is cumulative: counters, histograms and
+     * summaries except the quantiles.
+     */
+    public static boolean isCumulative(String type, String[] labelNames, int labelCount) {
+        switch (type) {
+            case "counter", "histogram" -> {
+                return true;
+            }
+            case "summary" -> {
+                for (int i = 0; i < labelCount; i++) {
+                    if ("quantile".equals(labelNames[i])) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Record the value of a series and compute its increase since its
+     * previous value.
+     *
+     * @param nanos The time of the scrape, System.nanoTime. A value scraped
+     * before the previous value is ignored.
+     * @param result Receives the increase, the per second rate, the elapsed
+     * seconds and 1 if the counter has been reset, at the DELTA, RATE,
+     * SECONDS and RESET indexes.
+     * @return false if the series has no previous value.
+     */
+    public boolean update(String series, double value, long nanos, double[] result) {
+        int slot = slot(series);
+        if (keys[slot] == null) {
+            if (size == maxSeries) {
+                return false;
+            }
+            keys[slot] = series;
+            values[slot] = value;
+            times[slot] = nanos;
+            size += 1;
+            if (size * 2 > keys.length) {
+                resize();
+            }
+            return false;
+        }
+        double previous = values[slot];
+        long elapsed = nanos - times[slot];
+        if (elapsed < 0) {
+            // Scraped concurrently with a more recent scrape.
+            return false;
+        }
+        values[slot] = value;
+        times[slot] = nanos;
+        if (elapsed <= 0) {
+            return false;
+        }
+        boolean reset = value < previous;
+        result[DELTA] = reset ? value : value - previous;
+        result[SECONDS] = elapsed / 1e9;
+        result[RATE] = result[DELTA] / result[SECONDS];
+        result[RESET] = reset ? 1 : 0;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(String series) {
+        int hash = series.hashCode();
+        int mask = keys.length - 1;
+        for (int slot = (hash ^ (hash >>> 16)) & mask;; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            // The interned series names are most often the same instance.
+            if (key == null || key == series || key.equals(series)) {
+                return slot;
+            }
+        }
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        double[] oldValues = values;
+        long[] oldTimes = times;
+        keys = new String[oldKeys.length * 2];
+        values = new double[keys.length];
+        times = new long[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                times[slot] = oldTimes[i];
+            }
+        }
+    }
+}
@@ -4,22 +4,55 @@
  */
 package org.wildfly.mcp;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.AttributeList;
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 /**
+ * A long lived JMX session to a server. The connection is opened at the
+ * first call and kept open, a call that fails with an IOException (e.g. the
+ * server has been restarted) closes it and is retried once on a new
+ * connection.
  *
  * @author jdenise
  */
 public class JMXSession implements AutoCloseable {
 
-    private final JMXConnector jmxConnector;
-    public final MBeanServerConnection connection;
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.JMXSession");
 
-    public JMXSession(Server server, User user) throws Exception {
+    /**
+     * A call to the MBean server.
+     */
+    public interface JMXCall<T> {
+
+        T call(MBeanServerConnection connection) throws Exception;
+    }
+
+    private final Server server;
+    private final User user;
+    private final ReentrantLock lock = new ReentrantLock();
+    private JMXConnector jmxConnector;
+    private MBeanServerConnection connection;
+    private long connections;
+
+    public JMXSession(Server server, User user) {
+        this.server = server;
+        this.user = user;
+    }
+
+    /**
+     * Open a new connection to the MBean server.
+     */
+    MBeanServerConnection connect() throws IOException {
         String urlString = "service:jmx:remote+http://" + server.host + ":" + server.port;
         JMXServiceURL serviceURL = new JMXServiceURL(urlString);
         HashMap<String, Object> environment = new HashMap<>();
@@ -27,11 +60,96 @@ public class JMXSession implements AutoCloseable {
             environment.put(JMXConnector.CREDENTIALS, new String[] { user.userName, user.userPassword });
         }
         jmxConnector = JMXConnectorFactory.connect(serviceURL, environment);
-        connection = jmxConnector.getMBeanServerConnection();
+        return jmxConnector.getMBeanServerConnection();
+    }
+
+    /**
+     * @return The connection to the MBean server, opened if needed.
+     */
+    public MBeanServerConnection getConnection() throws IOException {
+        lock.lock();
+        try {
+            if (connection == null) {
+                connection = connect();
+                connections += 1;
+            }
+            return connection;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of connections opened by the session.
+     */
+    public long getConnections() {
+        lock.lock();
+        try {
+            return connections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call the MBean server, the call is retried once on a new connection if
+     * it fails with an IOException.
+     */
+    public <T> T call(JMXCall<T> call) throws Exception {
+        MBeanServerConnection current = getConnection();
+        try {
+            return call.call(current);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Reconnecting to " + server.host + ":" + server.port, ex);
+            disconnect(current);
+            return call.call(getConnection());
+        }
+    }
+
+    /**
+     * Read several attributes of an MBean in a single call.
+     *
+     * @return The attributes that have been read.
+     */
+    public AttributeList getAttributes(ObjectName name, String... attributes) throws Exception {
+        return call(c -> c.getAttributes(name, attributes));
+    }
+
+    public Set<ObjectName> queryNames(ObjectName pattern) throws Exception {
+        return call(c -> c.queryNames(pattern, null));
+    }
+
+    private void disconnect(MBeanServerConnection failed) {
+        lock.lock();
+        try {
+            // Another call may have already reconnected.
+            if (connection == failed) {
+                closeConnector();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeConnector() {
+        connection = null;
+        if (jmxConnector != null) {
+            try {
+                jmxConnector.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Error closing the connection to " + server.host + ":" + server.port, ex);
+            }
+            jmxConnector = null;
+        }
     }
 
     @Override
-    public void close() throws Exception {
-        jmxConnector.close();
+    public void close() {
+        lock.lock();
+        try {
+            closeConnector();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case insensitive matching of a set of ASCII keywords (Aho-Corasick). The
+ * keywords are compiled into a deterministic automaton, a line is matched
+ * against all the keywords in a single pass over its characters.
+ *
+ * @author jdenise
+ */
+public final class KeywordMatcher {
+
+    private static final int ALPHABET = 128;
+
+    // The transitions of each state, state * ALPHABET + character.
+    private final int[] transitions;
+    // The groups of the keywords recognized in each state, null if none.
+    private final BitSet[] outputs;
+    private final int groups;
+
+    /**
+     * @param keywords The keywords of each group, a match reports the group
+     * of the keyword.
+     */
+    public KeywordMatcher(List<List<String>> keywords) {
+        groups = keywords.size();
+        // The trie.
+        List<int[]> trie = new ArrayList<>();
+        List<BitSet> out = new ArrayList<>();
+        trie.add(newState());
+        out.add(null);
+        for (int group = 0; group < keywords.size(); group++) {
+            for (String keyword : keywords.get(group)) {
+                String lower = keyword.toLowerCase(Locale.ROOT);
+                if (lower.isEmpty()) {
+                    throw new IllegalArgumentException("Empty keyword");
+                }
+                int state = 0;
+                for (int i = 0; i < lower.length(); i++) {
+                    char c = lower.charAt(i);
+                    if (c >= ALPHABET) {
+                        throw new IllegalArgumentException("Non ASCII keyword " + keyword);
+                    }
+                    if (trie.get(state)[c] < 0) {
+                        trie.get(state)[c] = trie.size();
+                        trie.add(newState());
+                        out.add(null);
+                    }
+                    state = trie.get(state)[c];
+                }
+                if (out.get(state) == null) {
+                    out.set(state, new BitSet(groups));
+                }
+                out.get(state).set(group);
+            }
+        }
+        // Breadth first, the missing transitions follow the failure links.
+        int size = trie.size();
+        transitions = new int[size * ALPHABET];
+        outputs = out.toArray(new BitSet[size]);
+        int[] failures = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie.get(0)[c];
+            transitions[c] = next < 0 ? 0 : next;
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int failure = failures[state];
+            if (outputs[failure] != null) {
+                if (outputs[state] == null) {
+                    outputs[state] = new BitSet(groups);
+                }
+                outputs[state].or(outputs[failure]);
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie.get(state)[c];
+                if (next < 0) {
+                    transitions[state * ALPHABET + c] = transitions[failure * ALPHABET + c];
+                } else {
+                    transitions[state * ALPHABET + c] = next;
+                    failures[next] = transitions[failure * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * @param matches Receives the groups of the keywords found in the line,
+     * cleared first.
+     * @return true if at least one keyword is found.
+     */
+    public boolean match(CharSequence line, BitSet matches) {
+        matches.clear();
+        int state = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= ALPHABET) {
+                // No keyword contains this character.
+                state = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state * ALPHABET + c];
+            if (outputs[state] != null) {
+                matches.or(outputs[state]);
+            }
+        }
+        return !matches.isEmpty();
+    }
+
+    public int getGroupCount() {
+        return groups;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compact the log records: the records that only differ by their variable
+ * parts (numbers, identifiers, timestamps, threads) are the same event, an
+ * event is returned once with its number of occurrences. The lines are pushed
+ * one by one, only the distinct events are kept, the number of events and the
+ * number of lines kept per event are bounded.
+ *
+ * @author jdenise
+ */
+public class LogCompactor {
+
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern HEX = Pattern.compile("0x[0-9a-fA-F]+");
+    private static final Pattern IDENTITY = Pattern.compile("@[0-9a-fA-F]{4,}\\b");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private static final class Event {
+
+        private final List<String> lines;
+        private final int omitted;
+        private final LocalDateTime first;
+        private LocalDateTime last;
+        private int count = 1;
+
+        private Event(List<String> lines, int omitted, LocalDateTime time) {
+            this.lines = lines;
+            this.omitted = omitted;
+            this.first = time;
+            this.last = time;
+        }
+    }
+
+    private final int maxEvents;
+    private final int traceLines;
+    private final Map<String, Event> events = new LinkedHashMap<>();
+    // The current record, only its first lines are kept.
+    private final List<String> record = new ArrayList<>();
+    private final StringBuilder fingerprint = new StringBuilder();
+    private LogLineParser.Entry entry;
+    private int omitted;
+    private int lineCount;
+    private int recordCount;
+    private int dropped;
+
+    public LogCompactor() {
+        this(Integer.getInteger("org.wildfly.mcp.log.compact.max.events", 500),
+                Integer.getInteger("org.wildfly.mcp.log.compact.trace.lines", 10));
+    }
+
+    /**
+     * @param maxEvents The maximum number of distinct events.
+     * @param traceLines The maximum number of lines kept per event, the
+     * header line included.
+     */
+    LogCompactor(int maxEvents, int traceLines) {
+        this.maxEvents = maxEvents;
+        this.traceLines = traceLines;
+    }
+
+    public void accept(String line) {
+        LogLineParser.Entry parsed = LogLineParser.parse(line);
+        if (parsed != null || lineCount == 0) {
+            endRecord();
+            entry = parsed;
+            if (parsed != null) {
+                fingerprint.append(parsed.level()).append(' ').append(parsed.category()).append(' ').append(normalize(parsed.message()));
+            } else {
+                fingerprint.append(normalize(line));
+            }
+            record.add(line);
+        } else if (record.size() < traceLines) {
+            fingerprint.append('\n').append(normalize(line));
+            record.add(line);
+        } else {
+            omitted += 1;
+        }
+        lineCount += 1;
+    }
+
+    /**
+     * @return The distinct events, in the order of their first occurrence.
+     */
+    public String finish() {
+        endRecord();
+        StringBuilder output = new StringBuilder();
+        for (Event event : events.values()) {
+            for (String line : event.lines) {
+                output.append(line).append("\n");
+            }
+            if (event.omitted > 0) {
+                output.append("\t... ").append(event.omitted).append(" more lines\n");
+            }
+            if (event.count > 1) {
+                output.append("[").append(event.count).append(" occurrences");
+                if (event.first != null) {
+                    output.append(", first at ").append(event.first).append(", last at ").append(event.last);
+                }
+                output.append("]\n");
+            }
+        }
+        if (dropped > 0) {
+            output.append("[").append(dropped).append(" records not shown, more than ").append(maxEvents).append(" distinct events]\n");
+        }
+        return output.toString();
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getEventCount() {
+        return events.size();
+    }
+
+    private void endRecord() {
+        if (record.isEmpty()) {
+            return;
+        }
+        recordCount += 1;
+        String key = fingerprint.toString();
+        LocalDateTime time = entry == null ? null : entry.time();
+        Event event = events.get(key);
+        if (event != null) {
+            event.count += 1;
+            if (time != null) {
+                event.last = time;
+            }
+        } else if (events.size() < maxEvents) {
+            events.put(key, new Event(List.copyOf(record), omitted, time));
+        } else {
+            dropped += 1;
+        }
+        record.clear();
+        fingerprint.setLength(0);
+        omitted = 0;
+    }
+
+    /**
+     * Replace the variable parts of a message.
+     */
+    static String normalize(String message) {
+        String normalized = UUID.matcher(message).replaceAll("<uuid>");
+        normalized = HEX.matcher(normalized).replaceAll("<hex>");
+        // Default toString() of the objects.
+        normalized = IDENTITY.matcher(normalized).replaceAll("@<hex>");
+        return NUMBER.matcher(normalized).replaceAll("<n>");
+    }
+}
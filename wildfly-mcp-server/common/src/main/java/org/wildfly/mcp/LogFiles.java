@@ -0,0 +1,276 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.wildfly.mcp.WildFlyControllerClient.GetLogFilesRequest;
+import org.wildfly.mcp.WildFlyControllerClient.GetLoggingFileRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
+
+/**
+ * Access to the log files of the logging subsystem: the current and the
+ * rotated files of the handlers. The lines of several files are merged in
+ * timestamp order. The last lines of the files are read concurrently, the
+ * whole files are read in a single pass from their streams and only the
+ * current line of each file is in memory.
+ *
+ * @author jdenise
+ */
+public final class LogFiles {
+
+    /**
+     * A log file.
+     *
+     * @param name The name of the log-file resource, e.g.
+     * server.log.2026-10-17.
+     * @param size The size in bytes.
+     * @param lastModified The last modification time, in the time zone of the
+     * MCP server, null if not known. It is compared to the timestamps of the
+     * log records, the MCP server and the WildFly server are expected to run
+     * in the same time zone.
+     */
+    public record LogFile(String name, long size, LocalDateTime lastModified) {
+
+    }
+
+    /**
+     * Reads the lines of a log file.
+     */
+    private interface LineSupplier {
+
+        /**
+         * @return The next line, null at the end of the file.
+         */
+        String readLine() throws IOException;
+    }
+
+    /**
+     * A file being merged, its lines are read as they are merged.
+     */
+    private static final class Source {
+
+        private final int order;
+        private final LineSupplier lines;
+        private String line;
+        private LocalDateTime time;
+
+        private Source(int order, LineSupplier lines, String line) {
+            this.order = order;
+            this.lines = lines;
+            this.line = line;
+            LogLineParser.Entry entry = LogLineParser.parse(line);
+            // Lines without a timestamp at the start of a file come first.
+            time = entry == null ? LocalDateTime.MIN : entry.time();
+        }
+
+        /**
+         * Move to the next line.
+         *
+         * @return false at the end of the file.
+         */
+        private boolean advance() throws IOException {
+            line = lines.readLine();
+            return line != null;
+        }
+    }
+
+    private LogFiles() {
+    }
+
+    /**
+     * @return The log files, the least recently modified first.
+     */
+    public static List<LogFile> list(WildFlyControllerClient client, Server server, User user) throws Exception {
+        ModelNode response = client.call(new GetLogFilesRequest(server, user));
+        if (response.hasDefined("outcome") && !"success".equals(response.get("outcome").asString())) {
+            throw new IllegalStateException(response.get("failure-description").asString());
+        }
+        List<LogFile> files = new ArrayList<>();
+        for (Property property : response.get("result").asPropertyListOrEmpty()) {
+            ModelNode file = property.getValue();
+            LocalDateTime lastModified = file.hasDefined("last-modified-timestamp")
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(file.get("last-modified-timestamp").asLong()), ZoneId.systemDefault())
+                    : null;
+            files.add(new LogFile(property.getName(), file.get("file-size").asLong(0), lastModified));
+        }
+        files.sort(Comparator.comparing(LogFile::lastModified, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(LogFile::name));
+        return files;
+    }
+
+    /**
+     * @param names Comma separated names of log files, {@code *} matches any
+     * sequence of characters.
+     * @return The files matching one of the names.
+     */
+    public static List<LogFile> select(List<LogFile> files, String names) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.isBlank()) {
+                patterns.add(Pattern.compile(Pattern.quote(name.trim()).replace("*", "\\E.*\\Q")));
+            }
+        }
+        List<LogFile> selected = new ArrayList<>();
+        for (LogFile file : files) {
+            if (patterns.stream().anyMatch(p -> p.matcher(file.name()).matches())) {
+                selected.add(file);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Push the last lines of the files to a consumer, the log records of all
+     * the files are merged in timestamp order. Only the files that can contain
+     * log records in the time range are read. A log record is kept with its
+     * continuation lines.
+     *
+     * @param files The files, the least recently modified first.
+     * @param numLines The number of lines read from the end of each file, -1
+     * for all the lines.
+     * @param from The start of the time range, null for no lower bound.
+     * @param to The end of the time range, null for no upper bound.
+     * @return The files that have been read.
+     */
+    public static List<LogFile> read(WildFlyControllerClient client, Server server, User user, List<LogFile> files, int numLines,
+            LocalDateTime from, LocalDateTime to, Consumer<String> consumer) throws Exception {
+        return read(client, server, user, files, numLines, from, to, consumer, () -> false);
+    }
+
+    /**
+     * Push the last lines of the files to a consumer, until done.
+     *
+     * @param done Tells if the consumer doesn't need more lines, the files are
+     * then no longer read.
+     */
+    public static List<LogFile> read(WildFlyControllerClient client, Server server, User user, List<LogFile> files, int numLines,
+            LocalDateTime from, LocalDateTime to, Consumer<String> consumer, BooleanSupplier done) throws Exception {
+        List<LogFile> overlapping = new ArrayList<>();
+        if (to != null && !files.isEmpty()) {
+            // The first record of each file, in a single round trip.
+            List<ReadLogFileLinesRequest> probes = new ArrayList<>();
+            for (LogFile file : files) {
+                probes.add(new ReadLogFileLinesRequest(server, user, file.name(), 0, 1));
+            }
+            List<ModelNode> responses = client.callBatch(probes);
+            for (int i = 0; i < files.size(); i++) {
+                List<ModelNode> first = responses.get(i).get("result").asListOrEmpty();
+                LogLineParser.Entry entry = first.isEmpty() ? null : LogLineParser.parse(first.get(0).asString());
+                if ((entry == null || !entry.time().withNano(0).isAfter(to)) && endsAfter(files.get(i), from)) {
+                    overlapping.add(files.get(i));
+                }
+            }
+        } else {
+            for (LogFile file : files) {
+                if (endsAfter(file, from)) {
+                    overlapping.add(file);
+                }
+            }
+        }
+        List<Source> sources = new ArrayList<>();
+        List<OperationResponse> streams = new ArrayList<>();
+        try {
+            if (numLines < 0) {
+                // Each file is read in a single pass from its stream, its lines are read as they are merged.
+                for (int i = 0; i < overlapping.size(); i++) {
+                    String name = overlapping.get(i).name();
+                    OperationResponse response = client.callOperation(new ReadLogFileAttributeRequest(server, user, name, "stream"));
+                    streams.add(response);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream(name, response), StandardCharsets.UTF_8));
+                    add(sources, i, reader::readLine);
+                }
+            } else {
+                // The last lines of each file, concurrently.
+                List<ManagementRequest> requests = new ArrayList<>();
+                for (LogFile file : overlapping) {
+                    requests.add(new GetLoggingFileRequest(server, String.valueOf(numLines), user, file.name()));
+                }
+                List<ModelNode> responses = client.callAll(requests);
+                for (int i = 0; i < responses.size(); i++) {
+                    Iterator<String> lines = lines(overlapping.get(i).name(), responses.get(i)).iterator();
+                    add(sources, i, () -> lines.hasNext() ? lines.next() : null);
+                }
+            }
+            merge(sources, consumer, done);
+        } finally {
+            for (OperationResponse response : streams) {
+                response.close();
+            }
+        }
+        return overlapping;
+    }
+
+    private static void add(List<Source> sources, int order, LineSupplier lines) throws IOException {
+        String first = lines.readLine();
+        if (first != null) {
+            sources.add(new Source(order, lines, first));
+        }
+    }
+
+    private static InputStream stream(String file, OperationResponse response) {
+        ModelNode result = response.getResponseNode();
+        if (result.hasDefined("outcome") && !"success".equals(result.get("outcome").asString())) {
+            throw new IllegalStateException("Can't read the log file " + file + ": " + result.get("failure-description").asString());
+        }
+        return response.getInputStream(result.get("result").asString()).getStream();
+    }
+
+    private static List<String> lines(String file, ModelNode response) {
+        if (response.hasDefined("outcome") && !"success".equals(response.get("outcome").asString())) {
+            throw new IllegalStateException("Can't read the log file " + file + ": " + response.get("failure-description").asString());
+        }
+        List<String> lines = new ArrayList<>();
+        for (ModelNode line : response.get("result").asListOrEmpty()) {
+            lines.add(line.asString());
+        }
+        return lines;
+    }
+
+    private static boolean endsAfter(LogFile file, LocalDateTime from) {
+        return from == null || file.lastModified() == null || !file.lastModified().isBefore(from);
+    }
+
+    /**
+     * Merge the log records of the files in timestamp order, the records with
+     * the same timestamp are taken from the first files first.
+     */
+    private static void merge(List<Source> sources, Consumer<String> consumer, BooleanSupplier done) throws IOException {
+        PriorityQueue<Source> queue = new PriorityQueue<>(Comparator.<Source, LocalDateTime>comparing(s -> s.time)
+                .thenComparingInt(s -> s.order));
+        queue.addAll(sources);
+        while (!queue.isEmpty() && !done.getAsBoolean()) {
+            Source source = queue.poll();
+            // The record header and its continuation lines.
+            LogLineParser.Entry next = null;
+            do {
+                consumer.accept(source.line);
+            } while (source.advance() && (next = LogLineParser.parse(source.line)) == null);
+            if (next != null) {
+                source.time = next.time();
+                queue.add(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Count the log records per level, message code, logging category and
+ * exception class. The lines are pushed one by one, only the counters are
+ * kept, so a histogram can be updated with the lines written later.
+ *
+ * @author jdenise
+ */
+public class LogHistogram {
+
+    private static final Pattern EXCEPTION = Pattern.compile("\\b((?:[a-z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable))\\b");
+
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    // The last slot counts the unknown levels.
+    private final long[] levels = new long[LogLineParser.LEVELS.size() + 1];
+    private final Map<String, long[]> codes = new HashMap<>();
+    private final Map<String, long[]> categories = new HashMap<>();
+    private final Map<String, long[]> exceptions = new HashMap<>();
+    private long lineCount;
+    private long recordCount;
+    // true if the current record is in the time range.
+    private boolean inRange;
+
+    /**
+     * @param from Only the records logged at or after this time, null for no
+     * lower bound.
+     * @param to Only the records logged at or before this time, null for no
+     * upper bound.
+     */
+    public LogHistogram(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        inRange = from == null && to == null;
+    }
+
+    private LogHistogram(LogHistogram histogram) {
+        this(histogram.from, histogram.to);
+        System.arraycopy(histogram.levels, 0, levels, 0, levels.length);
+        copy(histogram.codes, codes);
+        copy(histogram.categories, categories);
+        copy(histogram.exceptions, exceptions);
+        lineCount = histogram.lineCount;
+        recordCount = histogram.recordCount;
+        inRange = histogram.inRange;
+    }
+
+    private static void copy(Map<String, long[]> source, Map<String, long[]> target) {
+        for (Map.Entry<String, long[]> entry : source.entrySet()) {
+            target.put(entry.getKey(), new long[]{entry.getValue()[0]});
+        }
+    }
+
+    /**
+     * @return A copy of this histogram, to be updated without changing this
+     * one.
+     */
+    public LogHistogram copy() {
+        return new LogHistogram(this);
+    }
+
+    /**
+     * Forget the counted lines, e.g. when the log file has been rotated.
+     */
+    public void reset() {
+        Arrays.fill(levels, 0);
+        codes.clear();
+        categories.clear();
+        exceptions.clear();
+        lineCount = 0;
+        recordCount = 0;
+        inRange = from == null && to == null;
+    }
+
+    public void accept(String line) {
+        lineCount += 1;
+        LogLineParser.Entry entry = LogLineParser.parse(line);
+        if (entry == null) {
+            // A continuation line, e.g. a stack trace.
+            if (inRange && !line.stripLeading().startsWith("at ")) {
+                countExceptions(line);
+            }
+            return;
+        }
+        inRange = (from == null || !entry.time().isBefore(from)) && (to == null || !entry.time().withNano(0).isAfter(to));
+        if (!inRange) {
+            return;
+        }
+        recordCount += 1;
+        int level = entry.levelRank();
+        levels[level < 0 ? levels.length - 1 : level] += 1;
+        if (entry.code() != null) {
+            increment(codes, entry.code());
+        }
+        increment(categories, entry.category());
+        countExceptions(entry.message());
+    }
+
+    private void countExceptions(String content) {
+        Matcher matcher = EXCEPTION.matcher(content);
+        while (matcher.find()) {
+            increment(exceptions, matcher.group(1));
+        }
+    }
+
+    private static void increment(Map<String, long[]> counters, String key) {
+        counters.computeIfAbsent(key, k -> new long[1])[0] += 1;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return The count of a level, a message code, a category or an
+     * exception class.
+     */
+    long count(String name) {
+        int level = LogLineParser.LEVELS.indexOf(name);
+        if (level >= 0) {
+            return levels[level];
+        }
+        for (Map<String, long[]> counters : List.of(codes, categories, exceptions)) {
+            long[] counter = counters.get(name);
+            if (counter != null) {
+                return counter[0];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param top The maximum number of entries per table.
+     * @return The ranked tables.
+     */
+    public String format(int top) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Levels:\n");
+        for (int i = LogLineParser.LEVELS.size() - 1; i >= 0; i--) {
+            if (levels[i] > 0) {
+                builder.append(levels[i]).append("\t").append(LogLineParser.LEVELS.get(i)).append("\n");
+            }
+        }
+        if (levels[levels.length - 1] > 0) {
+            builder.append(levels[levels.length - 1]).append("\tother\n");
+        }
+        format(builder, "Message codes", codes, top);
+        format(builder, "Categories", categories, top);
+        format(builder, "Exceptions", exceptions, top);
+        return builder.toString();
+    }
+
+    private static void format(StringBuilder builder, String title, Map<String, long[]> counters, int top) {
+        builder.append(title).append(" (").append(counters.size()).append(" distinct):\n");
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort((e1, e2) -> e1.getValue()[0] == e2.getValue()[0] ? e1.getKey().compareTo(e2.getKey())
+                : Long.compare(e2.getValue()[0], e1.getValue()[0]));
+        long others = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i < top) {
+                builder.append(entries.get(i).getValue()[0]).append("\t").append(entries.get(i).getKey()).append("\n");
+            } else {
+                others += entries.get(i).getValue()[0];
+            }
+        }
+        if (others > 0) {
+            builder.append(others).append("\t(").append(entries.size() - top).append(" others)\n");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parse the lines of the WildFly server log file, default pattern is
+ * {@code %d{yyyy-MM-dd HH:mm:ss,SSS} %-5p [%c] (%t) %s%e%n}, e.g.
+ * {@code 2025-06-23 10:13:45,123 INFO  [org.jboss.as] (Controller Boot Thread) WFLYSRV0025: WildFly started}.
+ * Lines that don't start a log record (e.g. stack traces) are continuation
+ * lines of the previous record.
+ *
+ * @author jdenise
+ */
+public final class LogLineParser {
+
+    public static final List<String> LEVELS = List.of("TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL");
+
+    private static final Pattern RECORD = Pattern.compile(
+            "^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}[,.]\\d{3}) +([A-Z]+) +\\[([^\\]]*)\\] \\(([^)]*)\\) (.*)$");
+    private static final Pattern CODE = Pattern.compile("^([A-Z][A-Z0-9]*[A-Z]\\d{4,6}):");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[,SSS][.SSS]", Locale.ROOT);
+
+    /**
+     * A parsed log record header line.
+     *
+     * @param code The message code, e.g. WFLYSRV0025, null if the message has
+     * no code.
+     */
+    public record Entry(LocalDateTime time, String level, String category, String thread, String code, String message) {
+
+        /**
+         * @return The rank of the level in {@link #LEVELS}, -1 for unknown
+         * levels.
+         */
+        public int levelRank() {
+            return rank(level);
+        }
+    }
+
+    private LogLineParser() {
+    }
+
+    /**
+     * @return The parsed record, null if the line is a continuation line.
+     */
+    public static Entry parse(String line) {
+        // Fast path, a record starts with the year.
+        if (line.length() < 24 || !Character.isDigit(line.charAt(0))) {
+            return null;
+        }
+        Matcher matcher = RECORD.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.parse(matcher.group(1), TIMESTAMP);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+        String message = matcher.group(5);
+        Matcher code = CODE.matcher(message);
+        return new Entry(time, matcher.group(2), matcher.group(3), matcher.group(4), code.find() ? code.group(1) : null, message);
+    }
+
+    /**
+     * @return The rank of the level in {@link #LEVELS}, -1 for unknown levels.
+     */
+    public static int rank(String level) {
+        if (level == null) {
+            return -1;
+        }
+        String upper = level.toUpperCase(Locale.ROOT);
+        // java.util.logging and log4j names.
+        upper = switch (upper) {
+            case "WARNING" -> "WARN";
+            case "SEVERE" -> "ERROR";
+            case "FINE", "FINER", "CONFIG" -> "DEBUG";
+            case "FINEST" -> "TRACE";
+            default -> upper;
+        };
+        return LEVELS.indexOf(upper);
+    }
+
+    /**
+     * Parse a date provided by a user, {@code yyyy-MM-dd HH:mm:ss} or
+     * {@code yyyy-MM-ddTHH:mm:ss}, seconds are optional.
+     */
+    public static LocalDateTime parseTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String normalized = value.trim().replace('T', ' ');
+        if (normalized.length() == 16) {
+            normalized += ":00";
+        } else if (normalized.length() == 10) {
+            normalized += " 00:00:00";
+        }
+        try {
+            return LocalDateTime.parse(normalized, TIMESTAMP);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid time " + value + ", expected format is yyyy-MM-dd HH:mm:ss");
+        }
+    }
+}
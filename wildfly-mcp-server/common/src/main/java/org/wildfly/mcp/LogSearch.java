@@ -0,0 +1,177 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Search the log records matching some criteria. The lines are pushed one by
+ * one, only the lines of the matching records and their context lines are
+ * kept. A record is bounded to {@code org.wildfly.mcp.log.search.record.max.lines}
+ * lines, the next lines that are not a record header are records of their
+ * own, so a log file that can't be parsed is not kept in memory.
+ *
+ * @author jdenise
+ */
+public class LogSearch {
+
+    /**
+     * The search criteria, null values are not used to filter the records.
+     *
+     * @param level The minimum level.
+     * @param category A category or a parent category.
+     * @param code A message code or a message code prefix.
+     * @param before The number of context lines to keep before a match.
+     * @param after The number of context lines to keep after a match.
+     * @param maxMatches The maximum number of matching records.
+     */
+    public record Criteria(Pattern pattern, String level, String category, String code, LocalDateTime from,
+            LocalDateTime to, int before, int after, int maxMatches) {
+
+    }
+
+    private record Line(int index, String content) {
+
+    }
+
+    private final Criteria criteria;
+    private final int maxRecordLines;
+    private final int minLevel;
+    private final StringBuilder output = new StringBuilder();
+    private final ArrayDeque<Line> context = new ArrayDeque<>();
+    // The lines of the current record: a header line and its continuation lines.
+    private final List<String> record = new ArrayList<>();
+    private LogLineParser.Entry entry;
+    private int recordStart;
+    private int lineCount;
+    private int lastOutput = -1;
+    private int afterRemaining;
+    private int matches;
+    private boolean truncated;
+
+    public LogSearch(Criteria criteria) {
+        this(criteria, Integer.getInteger("org.wildfly.mcp.log.search.record.max.lines", 1000));
+    }
+
+    LogSearch(Criteria criteria, int maxRecordLines) {
+        this.criteria = criteria;
+        this.maxRecordLines = maxRecordLines;
+        minLevel = LogLineParser.rank(criteria.level());
+        if (criteria.level() != null && minLevel < 0) {
+            throw new IllegalArgumentException("Unknown level " + criteria.level() + ", expected one of " + LogLineParser.LEVELS);
+        }
+    }
+
+    public void accept(String line) {
+        LogLineParser.Entry parsed = LogLineParser.parse(line);
+        if (parsed != null || record.isEmpty() || record.size() == maxRecordLines) {
+            endRecord();
+            entry = parsed;
+            recordStart = lineCount;
+        }
+        record.add(line);
+        lineCount += 1;
+    }
+
+    /**
+     * @return The matching lines, groups of non contiguous lines are separated
+     * by {@code --}.
+     */
+    public String finish() {
+        endRecord();
+        return output.toString();
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return true if the search stopped after the maximum number of matches,
+     * the next lines don't need to be read.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private void endRecord() {
+        if (record.isEmpty()) {
+            return;
+        }
+        boolean matching = !truncated && matches(entry, record);
+        if (matching && matches == criteria.maxMatches()) {
+            truncated = true;
+            matching = false;
+        }
+        if (matching) {
+            matches += 1;
+            for (Line l : context) {
+                write(l.index(), l.content());
+            }
+            context.clear();
+            for (int i = 0; i < record.size(); i++) {
+                write(recordStart + i, record.get(i));
+            }
+            afterRemaining = criteria.after();
+        } else {
+            for (int i = 0; i < record.size(); i++) {
+                if (afterRemaining > 0) {
+                    afterRemaining -= 1;
+                    write(recordStart + i, record.get(i));
+                } else if (criteria.before() > 0) {
+                    if (context.size() == criteria.before()) {
+                        context.removeFirst();
+                    }
+                    context.addLast(new Line(recordStart + i, record.get(i)));
+                }
+            }
+        }
+        record.clear();
+    }
+
+    private void write(int index, String line) {
+        if (lastOutput >= 0 && index > lastOutput + 1) {
+            output.append("--\n");
+        }
+        output.append(line).append("\n");
+        lastOutput = index;
+    }
+
+    private boolean matches(LogLineParser.Entry entry, List<String> lines) {
+        if (minLevel >= 0 && (entry == null || entry.levelRank() < minLevel)) {
+            return false;
+        }
+        if (criteria.category() != null && (entry == null || !(entry.category().equals(criteria.category())
+                || entry.category().startsWith(criteria.category() + ".")))) {
+            return false;
+        }
+        if (criteria.code() != null && (entry == null || entry.code() == null || !entry.code().startsWith(criteria.code()))) {
+            return false;
+        }
+        if (criteria.from() != null && (entry == null || entry.time().isBefore(criteria.from()))) {
+            return false;
+        }
+        if (criteria.to() != null && (entry == null || entry.time().withNano(0).isAfter(criteria.to()))) {
+            return false;
+        }
+        if (criteria.pattern() != null) {
+            for (String line : lines) {
+                if (criteria.pattern().matcher(line).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In memory store of the log records of the server log file of each server.
+ * The records are stored by columns: the timestamps in a primitive array, the
+ * levels, categories, threads and message codes as indexes in dictionaries,
+ * so counting and grouping the records doesn't parse the log file again. The
+ * messages and the continuation lines are not stored, the records are only
+ * counted. The store is updated with the lines written since its last update.
+ *
+ * @author jdenise
+ */
+public class LogStore {
+
+    /**
+     * The grouping of a query.
+     */
+    public enum GroupBy {
+        NONE,
+        LEVEL,
+        CATEGORY,
+        THREAD,
+        CODE;
+
+        public static GroupBy of(String value) {
+            if (value == null || value.isBlank()) {
+                return NONE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace("MESSAGECODE", "CODE"));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown grouping " + value + ", expected one of level, category, thread or messageCode");
+            }
+        }
+    }
+
+    /**
+     * A query, null values are not used to filter the records.
+     *
+     * @param level The minimum level.
+     * @param category A category or a parent category.
+     * @param code A message code or a message code prefix.
+     * @param bucket The size of the time buckets, null to not group by time.
+     */
+    public record Query(LocalDateTime from, LocalDateTime to, String level, String category, String code, GroupBy groupBy,
+            Duration bucket) {
+
+    }
+
+    /**
+     * The result of a query.
+     *
+     * @param count The number of matching records.
+     * @param records The number of records in the store.
+     * @param counts The number of matching records per time bucket (null key
+     * if not grouped by time) and per group (null key if not grouped).
+     */
+    public record Result(long count, long records, Map<LocalDateTime, Map<String, Long>> counts) {
+
+    }
+
+    private static final class Dictionary {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        /**
+         * Remove the values no longer used by the first size ids of the
+         * column, the ids of the column are renumbered.
+         */
+        private void compact(int[] column, int size) {
+            int[] mapping = new int[values.size()];
+            Arrays.fill(mapping, -1);
+            List<String> used = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int id = column[i];
+                // -1 is a record without a value.
+                if (id >= 0) {
+                    if (mapping[id] < 0) {
+                        mapping[id] = used.size();
+                        used.add(values.get(id));
+                    }
+                    column[i] = mapping[id];
+                }
+            }
+            clear();
+            for (String value : used) {
+                id(value);
+            }
+        }
+
+        private void clear() {
+            ids.clear();
+            values.clear();
+        }
+    }
+
+    private static final class Columns {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private String cursor;
+        private int size;
+        private long[] times = new long[1024];
+        private byte[] levels = new byte[1024];
+        private int[] categories = new int[1024];
+        private int[] threads = new int[1024];
+        private int[] codes = new int[1024];
+        private final Dictionary categoryNames = new Dictionary();
+        private final Dictionary threadNames = new Dictionary();
+        private final Dictionary codeNames = new Dictionary();
+
+        private void add(LogLineParser.Entry entry) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                levels = Arrays.copyOf(levels, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+                threads = Arrays.copyOf(threads, capacity);
+                codes = Arrays.copyOf(codes, capacity);
+            }
+            times[size] = entry.time().toInstant(ZoneOffset.UTC).toEpochMilli();
+            int rank = entry.levelRank();
+            levels[size] = (byte) (rank < 0 ? LogLineParser.LEVELS.size() : rank);
+            categories[size] = categoryNames.id(entry.category());
+            threads[size] = threadNames.id(entry.thread());
+            codes[size] = entry.code() == null ? -1 : codeNames.id(entry.code());
+            size += 1;
+        }
+
+        private void dropOldest(int count) {
+            System.arraycopy(times, count, times, 0, size - count);
+            System.arraycopy(levels, count, levels, 0, size - count);
+            System.arraycopy(categories, count, categories, 0, size - count);
+            System.arraycopy(threads, count, threads, 0, size - count);
+            System.arraycopy(codes, count, codes, 0, size - count);
+            size -= count;
+            // The values of the dropped records only are removed from the dictionaries.
+            categoryNames.compact(categories, size);
+            threadNames.compact(threads, size);
+            codeNames.compact(codes, size);
+        }
+
+        private void clear() {
+            size = 0;
+            categoryNames.clear();
+            threadNames.clear();
+            codeNames.clear();
+        }
+    }
+
+    private final Map<String, Columns> stores = new ConcurrentHashMap<>();
+    private final LogTailer tailer;
+    private final int maxRecords;
+
+    public LogStore(LogTailer tailer) {
+        this(tailer, Integer.getInteger("org.wildfly.mcp.log.store.max.records", 1000000));
+    }
+
+    LogStore(LogTailer tailer, int maxRecords) {
+        this.tailer = tailer;
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Add the records written since the last update to the store of the
+     * server, then run the query.
+     */
+    public Result query(WildFlyControllerClient client, Server server, User user, Query query) throws Exception {
+        Columns columns = stores.computeIfAbsent(server.host + ":" + server.port, k -> new Columns());
+        columns.lock.lock();
+        try {
+            try {
+                columns.cursor = tailer.follow(client, server, user, columns.cursor, line -> {
+                    LogLineParser.Entry entry = LogLineParser.parse(line);
+                    if (entry != null) {
+                        if (columns.size == maxRecords) {
+                            // Keep the most recent records.
+                            columns.dropOldest(maxRecords / 4 + 1);
+                        }
+                        columns.add(entry);
+                    }
+                }, columns::clear);
+            } catch (Exception ex) {
+                // Some lines may have been added without moving the cursor, the store is rebuilt by the next query.
+                columns.clear();
+                columns.cursor = null;
+                throw ex;
+            }
+            return query(columns, query);
+        } finally {
+            columns.lock.unlock();
+        }
+    }
+
+    private static Result query(Columns columns, Query query) {
+        long from = query.from() == null ? Long.MIN_VALUE : query.from().toInstant(ZoneOffset.UTC).toEpochMilli();
+        // The upper bound is inclusive of the whole second.
+        long to = query.to() == null ? Long.MAX_VALUE : query.to().withNano(0).toInstant(ZoneOffset.UTC).toEpochMilli() + 999;
+        int minLevel = LogLineParser.rank(query.level());
+        if (query.level() != null && minLevel < 0) {
+            throw new IllegalArgumentException("Unknown level " + query.level() + ", expected one of " + LogLineParser.LEVELS);
+        }
+        // The filters on the dictionaries are evaluated once per dictionary entry.
+        boolean[] categoryMask = null;
+        if (query.category() != null) {
+            categoryMask = new boolean[columns.categoryNames.values.size()];
+            for (int i = 0; i < categoryMask.length; i++) {
+                String name = columns.categoryNames.values.get(i);
+                categoryMask[i] = name.equals(query.category()) || name.startsWith(query.category() + ".");
+            }
+        }
+        boolean[] codeMask = null;
+        if (query.code() != null) {
+            codeMask = new boolean[columns.codeNames.values.size()];
+            for (int i = 0; i < codeMask.length; i++) {
+                codeMask[i] = columns.codeNames.values.get(i).startsWith(query.code());
+            }
+        }
+        GroupBy groupBy = query.groupBy() == null ? GroupBy.NONE : query.groupBy();
+        long bucket = query.bucket() == null ? 0 : query.bucket().toMillis();
+        // Counts per bucket and per group id, the group ids are mapped to names at the end.
+        Map<Long, long[]> counts = new TreeMap<>();
+        int groups = switch (groupBy) {
+            case NONE -> 1;
+            case LEVEL -> LogLineParser.LEVELS.size() + 1;
+            case CATEGORY -> columns.categoryNames.values.size();
+            case THREAD -> columns.threadNames.values.size();
+            case CODE -> columns.codeNames.values.size() + 1;
+        };
+        long count = 0;
+        for (int i = 0; i < columns.size; i++) {
+            long time = columns.times[i];
+            if (time < from || time > to
+                    || (minLevel >= 0 && (columns.levels[i] < minLevel || columns.levels[i] == LogLineParser.LEVELS.size()))
+                    || (categoryMask != null && !categoryMask[columns.categories[i]])
+                    || (codeMask != null && (columns.codes[i] < 0 || !codeMask[columns.codes[i]]))) {
+                continue;
+            }
+            count += 1;
+            int group = switch (groupBy) {
+                case NONE -> 0;
+                case LEVEL -> columns.levels[i];
+                case CATEGORY -> columns.categories[i];
+                case THREAD -> columns.threads[i];
+                // The records without a code are the last group.
+                case CODE -> columns.codes[i] < 0 ? groups - 1 : columns.codes[i];
+            };
+            long key = bucket > 0 ? Math.floorDiv(time, bucket) * bucket : Long.MIN_VALUE;
+            counts.computeIfAbsent(key, k -> new long[groups])[group] += 1;
+        }
+        Map<LocalDateTime, Map<String, Long>> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, long[]> entry : counts.entrySet()) {
+            Map<String, Long> named = new LinkedHashMap<>();
+            long[] values = entry.getValue();
+            for (int group = 0; group < values.length; group++) {
+                if (values[group] > 0) {
+                    named.put(groupName(columns, groupBy, group, groups), values[group]);
+                }
+            }
+            result.put(entry.getKey() == Long.MIN_VALUE ? null
+                    : LocalDateTime.ofEpochSecond(Math.floorDiv(entry.getKey(), 1000), 0, ZoneOffset.UTC), named);
+        }
+        return new Result(count, columns.size, result);
+    }
+
+    private static String groupName(Columns columns, GroupBy groupBy, int group, int groups) {
+        return switch (groupBy) {
+            case NONE -> null;
+            case LEVEL -> group == LogLineParser.LEVELS.size() ? "other" : LogLineParser.LEVELS.get(group);
+            case CATEGORY -> columns.categoryNames.values.get(group);
+            case THREAD -> columns.threadNames.values.get(group);
+            case CODE -> group == groups - 1 ? "none" : columns.codeNames.values.get(group);
+        };
+    }
+
+    /**
+     * Parse a bucket size, e.g. 30s, 5m, 1h or 1d.
+     */
+    public static Duration parseBucket(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            long amount = Long.parseLong(trimmed.substring(0, trimmed.length() - 1));
+            Duration duration = switch (trimmed.charAt(trimmed.length() - 1)) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                case 'd' -> Duration.ofDays(amount);
+                default -> null;
+            };
+            if (duration != null && !duration.isNegative() && !duration.isZero()) {
+                return duration;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid time bucket " + value + ", expected a number followed by s, m, h or d, e.g. 5m");
+    }
+}
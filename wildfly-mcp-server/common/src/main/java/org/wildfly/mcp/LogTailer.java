@@ -0,0 +1,600 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
+
+/**
+ * Incremental reading of the server log file. A cursor identifies a position
+ * in the log file, in lines and in bytes, and the file itself (a hash of its
+ * first lines and its size), so only the lines written since the cursor are
+ * read and a rotation of the file is detected. The last lines of the file are
+ * read from its end, the lines written since a cursor are found in the last
+ * lines of the file by their size in bytes. When they are not in the last
+ * lines, the file is read once from its start. The lines are returned by
+ * pages, a page is bounded in lines and in bytes whatever the size of the
+ * file.
+ *
+ * @author jdenise
+ */
+public class LogTailer {
+
+    /**
+     * Lines read from the log file.
+     *
+     * @param lines The lines.
+     * @param cursor The cursor to use to read the next lines.
+     * @param rotated true if the log file has been rotated since the previous
+     * cursor, the lines are read from the start of the new file.
+     * @param more true if more lines are already available.
+     */
+    public record Tail(List<String> lines, String cursor, boolean rotated, boolean more) {
+
+    }
+
+    /**
+     * A position in the log file: the number of lines and the number of bytes
+     * before the position, -1 when they are unknown.
+     */
+    private record Position(String fingerprint, int line, long size) {
+
+    }
+
+    /**
+     * The size and the first lines of the log file, read in the same round
+     * trip as the lines. When the last lines are read, the size is read
+     * before and after them, the end of the last line is between the two
+     * sizes. The sizes are -1 when they can't be read.
+     */
+    private record Header(long size, long end, List<String> firstLines) {
+
+        String fingerprint() {
+            return LogTailer.fingerprint(firstLines);
+        }
+    }
+
+    /**
+     * Receives the lines of the log file.
+     */
+    private interface LineConsumer {
+
+        /**
+         * @return false if the line is not consumed, no more line is pushed.
+         */
+        boolean accept(String line);
+    }
+
+    /**
+     * The lines of a page, bounded in lines and in bytes. A line larger than
+     * a page is truncated and is alone in its page.
+     */
+    private final class Page implements LineConsumer {
+
+        private final List<String> lines = new ArrayList<>();
+        private final int pageLines;
+        private final long pageBytes;
+        private long bytes;
+        // A line didn't fit in the page.
+        private boolean full;
+
+        Page(int pageLines, long pageBytes) {
+            this.pageLines = pageLines;
+            this.pageBytes = pageBytes;
+        }
+
+        @Override
+        public boolean accept(String line) {
+            long length = utf8Length(line) + 1;
+            if (lines.size() == pageLines || (!lines.isEmpty() && bytes + length > pageBytes)) {
+                full = true;
+                return false;
+            }
+            lines.add(length > pageBytes ? truncate(line) : line);
+            bytes += length;
+            return true;
+        }
+    }
+
+    private static final int FINGERPRINT_LINES = 4;
+    // Returned by firstNew.
+    private static final int MORE_LINES = -1;
+    private static final int NOT_FOUND = -2;
+
+    private final BootIndex bootIndex;
+    private final int maxLines;
+    private final int maxBytes;
+    private final int scanLines;
+
+    public LogTailer() {
+        this(new BootIndex(), Integer.getInteger("org.wildfly.mcp.log.tail.max.lines", 1000),
+                Integer.getInteger("org.wildfly.mcp.log.page.max.bytes", 262144),
+                Integer.getInteger("org.wildfly.mcp.log.scan.page.lines", 10000));
+    }
+
+    LogTailer(BootIndex bootIndex, int maxLines, int maxBytes) {
+        this(bootIndex, maxLines, maxBytes, maxLines);
+    }
+
+    LogTailer(BootIndex bootIndex, int maxLines, int maxBytes, int scanLines) {
+        this.bootIndex = bootIndex;
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.scanLines = scanLines;
+    }
+
+    /**
+     * Read the last lines of the log file, in a single round trip.
+     */
+    public Tail start(WildFlyControllerClient client, Server server, User user, int numLines) throws Exception {
+        int wanted = numLines < 0 ? maxLines : Math.min(numLines, maxLines);
+        List<ModelNode> responses = client.callBatch(requests(server, user, wanted));
+        Header header = header(responses);
+        // The lines written while reading are read again by the next call rather than lost.
+        return tail(server, new Position(header.fingerprint(), -1, header.size()), lastPage(lines(responses.get(2))), false, false);
+    }
+
+    /**
+     * The last lines that fit in a page, the dropped lines are not returned.
+     */
+    private List<String> lastPage(List<String> lines) {
+        int first = lines.size();
+        long bytes = 0;
+        while (first > 0) {
+            bytes += utf8Length(lines.get(first - 1)) + 1;
+            if (bytes > maxBytes) {
+                break;
+            }
+            first -= 1;
+        }
+        if (first == lines.size() && first > 0) {
+            // The last line is larger than a page, it is truncated.
+            first -= 1;
+        }
+        Page page = new Page(maxLines, maxBytes);
+        lines.subList(first, lines.size()).forEach(page::accept);
+        return page.lines;
+    }
+
+    /**
+     * Read the first page of the log file.
+     */
+    public Tail page(WildFlyControllerClient client, Server server, User user) throws Exception {
+        Header header = header(client.callBatch(headerRequests(server, user)));
+        Page page = new Page(maxLines, maxBytes);
+        Position next = stream(client, server, user, header.fingerprint(), 0, page);
+        return tail(server, next, page.lines, false, page.full);
+    }
+
+    /**
+     * Push the lines written since the cursor to a consumer, the lines are not
+     * kept in memory. The new lines are read from the end of the file, or
+     * from a single read of the file when they are not in its last
+     * {@code org.wildfly.mcp.log.scan.page.lines} lines.
+     *
+     * @param cursor The cursor, null to read the file from the start.
+     * @param rotation Called when the log file has been rotated since the
+     * cursor, before the lines of the new file are pushed.
+     * @return The cursor to use to read the next lines.
+     */
+    public String follow(WildFlyControllerClient client, Server server, User user, String cursor, Consumer<String> consumer,
+            Runnable rotation) throws Exception {
+        LineConsumer all = line -> {
+            consumer.accept(line);
+            return true;
+        };
+        if (cursor == null) {
+            Header header = header(client.callBatch(headerRequests(server, user)));
+            return encode(stream(client, server, user, header.fingerprint(), 0, all));
+        }
+        Position position = decode(cursor);
+        List<ModelNode> responses = client.callBatch(requests(server, user, scanLines));
+        Header header = header(responses);
+        if (!sameFile(position, header)) {
+            rotation.run();
+            return encode(stream(client, server, user, header.fingerprint(), 0, all));
+        }
+        Position next = read(client, server, user, position, header, scanLines, lines(responses.get(2)), all);
+        return encode(next == null ? stream(client, server, user, header.fingerprint(), position.size(), all) : next);
+    }
+
+    /**
+     * Push all the lines of the log file to a consumer. The file is read in a
+     * single pass, only a line is in memory.
+     */
+    public void scan(WildFlyControllerClient client, Server server, User user, Consumer<String> consumer) throws Exception {
+        scan(client, server, user, consumer, () -> false);
+    }
+
+    /**
+     * Push all the lines of the log file to a consumer, until done.
+     *
+     * @param done Tells if the consumer doesn't need more lines, the file is
+     * then no longer read.
+     */
+    public void scan(WildFlyControllerClient client, Server server, User user, Consumer<String> consumer, BooleanSupplier done) throws Exception {
+        stream(client, server, user, null, 0, line -> {
+            if (done.getAsBoolean()) {
+                return false;
+            }
+            consumer.accept(line);
+            return true;
+        });
+    }
+
+    /**
+     * Push the last lines of the log file to a consumer. The lines are read
+     * from the end of the file by pages, only a page is in memory.
+     */
+    public void last(WildFlyControllerClient client, Server server, User user, int numLines, Consumer<String> consumer) throws Exception {
+        last(client, server, user, numLines, consumer, () -> false);
+    }
+
+    /**
+     * Push the last lines of the log file to a consumer, until done.
+     *
+     * @param done Tells if the consumer doesn't need more lines, the next
+     * pages are then not read.
+     */
+    public void last(WildFlyControllerClient client, Server server, User user, int numLines, Consumer<String> consumer,
+            BooleanSupplier done) throws Exception {
+        // The oldest page first, the pages are counted from the end of the file.
+        for (int end = numLines; end > 0 && !done.getAsBoolean(); end -= scanLines) {
+            int lines = Math.min(scanLines, end);
+            for (String line : lines(client.call(new ReadLogFileLinesRequest(server, user, end - lines, lines, true)))) {
+                if (done.getAsBoolean()) {
+                    return;
+                }
+                consumer.accept(line);
+            }
+        }
+    }
+
+    /**
+     * Read the last lines logged since the last server start. The lines
+     * written since the previous call are indexed, the last lines of the file
+     * are read with the header.
+     *
+     * @return The lines, null if the log file doesn't contain a server start.
+     */
+    public Tail lastBoot(WildFlyControllerClient client, Server server, User user) throws Exception {
+        List<ModelNode> responses = client.callBatch(requests(server, user, maxLines));
+        Header header = header(responses);
+        List<String> last = lines(responses.get(2));
+        BootIndex.Indexed indexed = bootIndex.update(server, header.fingerprint(), header.size(), (line, size, consumer) -> {
+            LineConsumer all = text -> {
+                consumer.accept(text);
+                return true;
+            };
+            Position from = new Position(header.fingerprint(), line, size);
+            Position next = read(client, server, user, from, header, maxLines, last, all);
+            return (next == null ? stream(client, server, user, header.fingerprint(), size, all) : next).size();
+        });
+        if (indexed.last() == null) {
+            return null;
+        }
+        int wanted = Math.min(indexed.lines() - indexed.last().line(), maxLines);
+        List<String> lines;
+        if (indexed.size() == header.size() && header.size() == header.end()) {
+            // The last lines read with the header end at the indexed position.
+            lines = last.subList(Math.max(0, last.size() - wanted), last.size());
+        } else {
+            lines = lines(client.call(new ReadLogFileLinesRequest(server, user, indexed.lines() - wanted, wanted)));
+        }
+        return tail(server, new Position(header.fingerprint(), indexed.lines(), indexed.size()), lastPage(lines), false, false);
+    }
+
+    /**
+     * Read the lines written since the cursor.
+     */
+    public Tail poll(WildFlyControllerClient client, Server server, User user, String cursor) throws Exception {
+        Position position = decode(cursor);
+        // A single round trip: the header detects a rotation, the last lines of the file hold the new lines.
+        List<ModelNode> responses = client.callBatch(requests(server, user, maxLines));
+        Header header = header(responses);
+        Page page = new Page(maxLines, maxBytes);
+        if (!sameFile(position, header)) {
+            Position next = stream(client, server, user, header.fingerprint(), 0, page);
+            return tail(server, next, page.lines, true, page.full);
+        }
+        Position next = read(client, server, user, position, header, maxLines, lines(responses.get(2)), page);
+        if (next == null && position.line() >= 0) {
+            // The next page is read after the line of the cursor, an extra line tells if more lines are available.
+            List<String> lines = lines(client.call(new ReadLogFileLinesRequest(server, user, position.line(), maxLines + 1)));
+            next = push(header.fingerprint(), position, lines, page);
+        } else if (next == null) {
+            next = stream(client, server, user, header.fingerprint(), position.size(), page);
+        }
+        return tail(server, next, page.lines, false, page.full);
+    }
+
+    /**
+     * Push the lines written after a position, they are the last lines of the
+     * file whose size is the number of bytes written since the position. More
+     * lines are read from the end of the file until they go back to the
+     * position, as long as the new lines are at most 4 pages.
+     *
+     * @param requested The number of requested last lines.
+     * @param last The last lines of the file, read with the header.
+     * @return The position after the last consumed line, null if the new lines
+     * are not found in the last lines of the file.
+     */
+    private Position read(WildFlyControllerClient client, Server server, User user, Position from, Header header, int requested,
+            List<String> last, LineConsumer consumer) throws Exception {
+        while (from.size() >= 0 && header.size() >= 0 && header.size() - from.size() <= 4L * maxBytes) {
+            int first = firstNew(last, header.size() - from.size(), header.end() - from.size());
+            if (first >= 0) {
+                return push(header.fingerprint(), from, last.subList(first, last.size()), consumer);
+            }
+            if (first == NOT_FOUND || last.size() < requested) {
+                return null;
+            }
+            // The number of lines is estimated from the length of the read lines.
+            long bytes = 0;
+            for (String line : last) {
+                bytes += utf8Length(line) + 1;
+            }
+            requested = (int) Math.min(Integer.MAX_VALUE, Math.max(2L * requested, 2 * (header.end() - from.size()) * last.size() / bytes));
+            List<ModelNode> responses = client.callBatch(List.of(new ReadLogFileAttributeRequest(server, user, "file-size"),
+                    new ReadLogFileLinesRequest(server, user, 0, requested, true),
+                    new ReadLogFileAttributeRequest(server, user, "file-size")));
+            header = new Header(responses.get(0).get("result").asLong(-1), responses.get(2).get("result").asLong(-1), header.firstLines());
+            last = lines(responses.get(1));
+        }
+        return null;
+    }
+
+    /**
+     * The index of the first new line in the last lines of the file, the new
+     * lines are the last lines whose size is between the sizes of the file
+     * written since the position.
+     *
+     * @return The index, MORE_LINES if the lines don't go back to the
+     * position, NOT_FOUND if no line or several lines end at the position (the
+     * lines don't end with a single new line character or many lines have
+     * been written while reading).
+     */
+    private static int firstNew(List<String> last, long min, long max) {
+        int found = MORE_LINES;
+        long bytes = 0;
+        for (int i = last.size(); i >= 0; i--) {
+            if (bytes > max) {
+                return found == MORE_LINES ? NOT_FOUND : found;
+            }
+            if (bytes >= min) {
+                if (found != MORE_LINES) {
+                    return NOT_FOUND;
+                }
+                found = i;
+            }
+            if (i > 0) {
+                bytes += utf8Length(last.get(i - 1)) + 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Push the lines that follow a position.
+     *
+     * @return The position after the last consumed line.
+     */
+    private static Position push(String fingerprint, Position from, List<String> lines, LineConsumer consumer) {
+        int line = from.line();
+        long size = from.size();
+        for (String text : lines) {
+            if (!consumer.accept(text)) {
+                break;
+            }
+            line = line < 0 ? -1 : line + 1;
+            size = size < 0 ? -1 : size + utf8Length(text) + 1;
+        }
+        return new Position(fingerprint, line, size);
+    }
+
+    /**
+     * Push the lines that end after a position. The file is read in a single
+     * pass from the stream attached to the response of the server, the lines
+     * before the position are skipped by the MCP server. Only the complete
+     * lines are read, a line being written is read by the next call.
+     *
+     * @param from The position in bytes.
+     * @return The position after the last consumed line.
+     */
+    private Position stream(WildFlyControllerClient client, Server server, User user, String fingerprint, long from,
+            LineConsumer consumer) throws Exception {
+        try (OperationResponse response = client.callOperation(new ReadLogFileAttributeRequest(server, user, "stream"))) {
+            ModelNode result = response.getResponseNode();
+            if (result.hasDefined("outcome") && !"success".equals(result.get("outcome").asString())) {
+                throw new IllegalStateException(result.get("failure-description").asString());
+            }
+            try (InputStream in = response.getInputStream(result.get("result").asString()).getStream()) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                boolean truncated = false;
+                int line = 0;
+                long size = 0;
+                long offset = 0;
+                int read;
+                while ((read = in.read(chunk)) >= 0) {
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (chunk[i] != '\n') {
+                            continue;
+                        }
+                        offset += i + 1 - start;
+                        truncated |= append(buffer, chunk, start, i);
+                        if (offset > from && !consumer.accept(text(buffer, truncated))) {
+                            return new Position(fingerprint, line, size);
+                        }
+                        line += 1;
+                        size = offset;
+                        buffer.reset();
+                        truncated = false;
+                        start = i + 1;
+                    }
+                    offset += read - start;
+                    truncated |= append(buffer, chunk, start, read);
+                }
+                return new Position(fingerprint, line, size);
+            }
+        }
+    }
+
+    /**
+     * A line is bounded to a page, the end of a larger line is dropped.
+     *
+     * @return true if bytes have been dropped.
+     */
+    private boolean append(ByteArrayOutputStream buffer, byte[] chunk, int start, int end) {
+        int length = Math.max(0, Math.min(end - start, maxBytes - buffer.size()));
+        buffer.write(chunk, start, length);
+        return length < end - start;
+    }
+
+    private static String text(ByteArrayOutputStream buffer, boolean truncated) {
+        byte[] bytes = buffer.toByteArray();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        return truncated ? line + " [truncated]" : line;
+    }
+
+    /**
+     * The size and the first lines of the file.
+     */
+    private static List<ManagementRequest> headerRequests(Server server, User user) {
+        return List.of(new ReadLogFileAttributeRequest(server, user, "file-size"),
+                new ReadLogFileLinesRequest(server, user, 0, FINGERPRINT_LINES));
+    }
+
+    /**
+     * The header and the last lines of the file.
+     */
+    private static List<ManagementRequest> requests(Server server, User user, int lastLines) {
+        List<ManagementRequest> requests = new ArrayList<>(headerRequests(server, user));
+        requests.add(new ReadLogFileLinesRequest(server, user, 0, lastLines, true));
+        requests.add(new ReadLogFileAttributeRequest(server, user, "file-size"));
+        return requests;
+    }
+
+    private static Header header(List<ModelNode> responses) {
+        long size = responses.get(0).get("result").asLong(-1);
+        List<String> lines = lines(responses.get(1));
+        return new Header(size, responses.size() > 3 ? responses.get(3).get("result").asLong(-1) : size,
+                lines.subList(0, Math.min(lines.size(), FINGERPRINT_LINES)));
+    }
+
+    /**
+     * A file is the file of the position if it starts with the same lines and
+     * it has not shrunk. The hash of a file with less lines than the
+     * fingerprint is compared to the same number of lines.
+     */
+    private static boolean sameFile(Position position, Header header) {
+        if (header.size() >= 0 && header.size() < position.size()) {
+            return false;
+        }
+        String fingerprint = position.fingerprint();
+        int dash = fingerprint.indexOf('-');
+        int count;
+        try {
+            count = dash < 0 ? 0 : Integer.parseInt(fingerprint.substring(0, dash));
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        List<String> lines = header.firstLines();
+        return count <= lines.size() && fingerprint.equals(fingerprint(lines.subList(0, count)));
+    }
+
+    private Tail tail(Server server, Position next, List<String> lines, boolean rotated, boolean more) {
+        if (next.line() >= 0 && next.size() >= 0) {
+            bootIndex.observe(server, next.fingerprint(), next.line() - lines.size(), lines, next.size());
+        }
+        return new Tail(lines, encode(next), rotated, more);
+    }
+
+    private String truncate(String line) {
+        // A single line larger than a page, the end of the line is dropped.
+        int end = Math.max(0, Math.min(line.length(), maxBytes / 3));
+        if (end > 0 && Character.isHighSurrogate(line.charAt(end - 1))) {
+            end -= 1;
+        }
+        return line.substring(0, end) + " [truncated]";
+    }
+
+    static long utf8Length(String line) {
+        long length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // A surrogate pair is encoded with 4 bytes.
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static List<String> lines(ModelNode response) {
+        if (response.hasDefined("outcome") && !"success".equals(response.get("outcome").asString())) {
+            throw new IllegalStateException(response.get("failure-description").asString());
+        }
+        List<String> lines = new ArrayList<>();
+        for (ModelNode line : response.get("result").asListOrEmpty()) {
+            lines.add(line.asString());
+        }
+        return lines;
+    }
+
+    /**
+     * @return The number of lines and a hash of the lines, e.g. 4-1a2b...
+     */
+    private static String fingerprint(List<String> firstLines) {
+        if (firstLines.isEmpty()) {
+            return "empty";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String line : firstLines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return firstLines.size() + "-" + HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String encode(Position position) {
+        String value = position.line() + ":" + position.size() + ":" + position.fingerprint();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Position decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = value.split(":", 3);
+            return new Position(parts[2], Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor + ", use `start` to get a new cursor.");
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Persistent cache of resource descriptions. The resource descriptions only
+ * depend on the server version, they are stored on disk (one compressed file
+ * per version and operation) and shared by all the servers running the same
+ * version. The most recently used descriptions are also kept in memory. The
+ * size of the files is bounded, the least recently used files (by last
+ * modification time, updated when a file is read) are deleted.
+ * <p>
+ * The version of a server is taken from the responses that contain it (e.g.
+ * the root resource read by the other tools), it is only read by the cache
+ * when it is not known. It is forgotten when the server can't be reached, the
+ * server can be restarted with another version.
+ * <p>
+ * The descriptions returned to a user can be filtered by its roles, so the
+ * descriptions are cached per user. A user is expected to have the same roles
+ * on the servers running the same version.
+ *
+ * @author jdenise
+ */
+public class MetaModelCache {
+
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.MetaModelCache");
+
+    private static final String SUFFIX = ".dmr.gz";
+
+    private final Path directory;
+    private final long maxSize;
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    private final Map<String, ModelNode> descriptions;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MetaModelCache() {
+        this(cacheDirectory(), Long.getLong("org.wildfly.mcp.metamodel.cache.max.size", 64 * 1024 * 1024),
+                Integer.getInteger("org.wildfly.mcp.metamodel.memory.max.entries", 64));
+    }
+
+    /**
+     * @param maxSize The maximum size in bytes of the files of the cache.
+     */
+    MetaModelCache(Path directory, long maxSize, int maxEntries) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        descriptions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ModelNode> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static Path cacheDirectory() {
+        String dir = System.getProperty("org.wildfly.mcp.metamodel.cache.dir",
+                Paths.get(System.getProperty("user.home"), ".wildfly-mcp", "metamodel").toString());
+        return dir.isBlank() ? null : Paths.get(dir);
+    }
+
+    /**
+     * Read a resource description.
+     *
+     * @param server The target server.
+     * @param user The user that executes the operation.
+     * @param op The read-resource-description operation.
+     * @param serverInfo Retrieves the version of the server, only called when
+     * the version of the server is not known.
+     * @param call Executes the operation, only called when the description is
+     * not cached.
+     * @return The operation response, it can be modified by the caller.
+     */
+    public ModelNode read(Server server, User user, ModelNode op, Callable<ServerInfo> serverInfo, Callable<ModelNode> call) throws Exception {
+        if (directory == null) {
+            return call.call();
+        }
+        String version = getVersion(server, serverInfo);
+        if (version == null) {
+            return call.call();
+        }
+        String name = hash(user, op);
+        String key = version + "/" + name;
+        ModelNode cached = getDescription(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.clone();
+        }
+        Path file = directory.resolve(version).resolve(name + SUFFIX);
+        if (Files.exists(file)) {
+            try {
+                ModelNode response = load(file);
+                // The most recently used files are kept.
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                putDescription(key, response);
+                hits.increment();
+                return response.clone();
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Ignoring corrupted cache file " + file, ex);
+            }
+        }
+        misses.increment();
+        ModelNode response;
+        try {
+            response = call.call();
+        } catch (Exception ex) {
+            if (CircuitBreakers.isConnectionFailure(ex)) {
+                versions.remove(server.host + ":" + server.port);
+            }
+            throw ex;
+        }
+        if (response != null && "success".equals(response.get("outcome").asStringOrNull())) {
+            putDescription(key, response.clone());
+            try {
+                store(file, response);
+                evict();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Can't write cache file " + file, ex);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Record the version of a server, read from a response that contains it.
+     */
+    public void setVersion(Server server, ServerInfo info) {
+        String key = server.host + ":" + server.port;
+        String name = versionName(info);
+        if (name == null) {
+            versions.remove(key);
+        } else {
+            versions.put(key, name);
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the size of the cache is
+     * below its maximum, the most recent file is kept.
+     */
+    private void evict() throws IOException {
+        // A single eviction at a time, the concurrent ones would delete the same files.
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            record Entry(Path file, long size, long modified) {
+
+            }
+            List<Entry> entries = new ArrayList<>();
+            long size = 0;
+            try (Stream<Path> files = Files.walk(directory, 2)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith(SUFFIX)) {
+                        try {
+                            Entry entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                            entries.add(entry);
+                            size += entry.size();
+                        } catch (IOException ex) {
+                            // Deleted concurrently.
+                        }
+                    }
+                }
+            }
+            if (size <= maxSize) {
+                return;
+            }
+            entries.sort(Comparator.comparingLong(Entry::modified));
+            for (int i = 0; i < entries.size() - 1 && size > maxSize; i++) {
+                Files.deleteIfExists(entries.get(i).file());
+                size -= entries.get(i).size();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private ModelNode getDescription(String key) {
+        lock.lock();
+        try {
+            return descriptions.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putDescription(String key, ModelNode response) {
+        lock.lock();
+        try {
+            descriptions.put(key, response);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private String getVersion(Server server, Callable<ServerInfo> serverInfo) {
+        String key = server.host + ":" + server.port;
+        String version = versions.get(key);
+        if (version != null) {
+            return version;
+        }
+        ServerInfo info;
+        try {
+            info = serverInfo.call();
+        } catch (Exception ex) {
+            LOGGER.log(Level.FINE, "Can't retrieve the version of the server " + key, ex);
+            return null;
+        }
+        String name = versionName(info);
+        if (name != null) {
+            versions.put(key, name);
+        }
+        return name;
+    }
+
+    private static String versionName(ServerInfo info) {
+        if (info == null || !isDefined(info.productVersion) || !isDefined(info.coreVersion)) {
+            return null;
+        }
+        return (info.productName + "-" + info.productVersion + "-" + info.coreVersion).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static boolean isDefined(String value) {
+        return value != null && !value.isEmpty() && !"undefined".equals(value);
+    }
+
+    private static String hash(User user, ModelNode op) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (user != null && user.userName != null) {
+                digest.update((user.userName + "@").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest(op.toJSONString(true).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static ModelNode load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+            ModelNode node = new ModelNode();
+            node.readExternal(in);
+            return node;
+        }
+    }
+
+    private static void store(Path file, ModelNode response) throws IOException {
+        Files.createDirectories(file.getParent());
+        // Written to a temporary file first, a concurrent reader never sees a partial file.
+        Path tmp = Files.createTempFile(file.getParent(), "description", ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+                    DataOutputStream data = new DataOutputStream(out)) {
+                response.writeExternal(data);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
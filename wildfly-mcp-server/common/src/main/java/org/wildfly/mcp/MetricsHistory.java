@@ -0,0 +1,345 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In memory history of the sampled metrics of each server. Each series is
+ * stored in a fixed size ring buffer of primitive timestamps and values, once
+ * full the oldest samples are overwritten. The samples are also aggregated at
+ * ingest in 10 seconds, 1 minute and 10 minutes buckets, so a long period is
+ * returned from the aggregated buckets without reading the samples again.
+ * <p>
+ * A sample takes 16 bytes and a bucket 48 bytes. The number of buckets per
+ * resolution is bounded so that the maximum number of series of a server
+ * fits in its memory budget. A resolution is only kept if its buckets cover a
+ * longer period than the samples and the finer resolutions.
+ *
+ * @author jdenise
+ */
+public class MetricsHistory {
+
+    static final long[] RESOLUTIONS = {10000, 60000, 600000};
+    // A timestamp and a value.
+    static final int SAMPLE_BYTES = 16;
+    // A start, a count, the minimum, maximum, sum and last value.
+    static final int BUCKET_BYTES = 48;
+
+    /**
+     * The samples of a series, oldest first. The samples are the raw samples
+     * if the resolution is 0, otherwise aggregated buckets: the values are
+     * the averages and the times are the start of the buckets.
+     *
+     * @param min The minimum of each bucket, the values for raw samples.
+     * @param max The maximum of each bucket, the values for raw samples.
+     * @param last The last value of each bucket, the values for raw samples.
+     * @param counts The number of samples of each bucket, null for raw
+     * samples.
+     */
+    public record Points(String series, long resolution, long[] times, double[] values, double[] min, double[] max,
+            double[] last, long[] counts) {
+
+        public int size() {
+            return times.length;
+        }
+    }
+
+    private static final class Series {
+
+        private final long[] times;
+        private final double[] values;
+        private final MetricsRollup[] rollups;
+        // The slot of the next sample.
+        private int next;
+        private int size;
+
+        private Series(int capacity, int[] rollupCapacities) {
+            times = new long[capacity];
+            values = new double[capacity];
+            List<MetricsRollup> kept = new ArrayList<>(RESOLUTIONS.length);
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                if (rollupCapacities[i] > 0) {
+                    kept.add(new MetricsRollup(RESOLUTIONS[i], rollupCapacities[i]));
+                }
+            }
+            rollups = kept.toArray(new MetricsRollup[0]);
+        }
+
+        private void add(long time, double value) {
+            if (size > 0) {
+                // Keep the samples ordered if the clock goes backward.
+                time = Math.max(time, times[next == 0 ? times.length - 1 : next - 1]);
+            }
+            for (MetricsRollup rollup : rollups) {
+                rollup.add(time, value);
+            }
+            times[next] = time;
+            values[next] = value;
+            next = next + 1 == times.length ? 0 : next + 1;
+            if (size < times.length) {
+                size += 1;
+            }
+        }
+
+        /**
+         * The raw samples if they cover the range with at most maxPoints
+         * samples, otherwise the finest buckets that do. If none does, the
+         * buckets of the coarsest resolution are merged.
+         */
+        private Points points(String name, long from, long to, int maxPoints) {
+            int start = next - size < 0 ? next - size + times.length : next - size;
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                long time = times[(start + i) % times.length];
+                if (time >= from && time <= to) {
+                    count += 1;
+                }
+            }
+            if (count > maxPoints || (size == times.length && times[start] > from)) {
+                for (MetricsRollup rollup : rollups) {
+                    if (rollup.covers(from) && rollup.count(from, to) <= maxPoints) {
+                        return toPoints(name, rollup.getResolution(), rollup.select(from, to), 1);
+                    }
+                }
+                MetricsRollup coarsest = rollups[rollups.length - 1];
+                MetricsRollup.Buckets buckets = coarsest.select(from, to);
+                int factor = Math.max(1, (buckets.size() + maxPoints - 1) / Math.max(1, maxPoints));
+                return toPoints(name, coarsest.getResolution(), buckets, factor);
+            }
+            long[] selectedTimes = new long[count];
+            double[] selectedValues = new double[count];
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                int slot = (start + i) % times.length;
+                if (times[slot] >= from && times[slot] <= to) {
+                    selectedTimes[j] = times[slot];
+                    selectedValues[j] = values[slot];
+                    j += 1;
+                }
+            }
+            return new Points(name, 0, selectedTimes, selectedValues, selectedValues, selectedValues, selectedValues, null);
+        }
+    }
+
+    /**
+     * @param factor The number of consecutive buckets merged in a single
+     * bucket.
+     */
+    static Points toPoints(String name, long resolution, MetricsRollup.Buckets buckets, int factor) {
+        int count = (buckets.size() + factor - 1) / factor;
+        Points points = new Points(name, resolution * factor, new long[count], new double[count], new double[count],
+                new double[count], new double[count], new long[count]);
+        for (int i = 0; i < count; i++) {
+            int first = i * factor;
+            int end = Math.min(buckets.size(), first + factor);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            long samples = 0;
+            for (int j = first; j < end; j++) {
+                min = Math.min(min, buckets.min()[j]);
+                max = Math.max(max, buckets.max()[j]);
+                sum += buckets.sum()[j];
+                samples += buckets.counts()[j];
+            }
+            points.times()[i] = buckets.starts()[first];
+            points.values()[i] = sum / samples;
+            points.min()[i] = min;
+            points.max()[i] = max;
+            points.last()[i] = buckets.last()[end - 1];
+            points.counts()[i] = samples;
+        }
+        return points;
+    }
+
+    private static final class Recording {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Series> series = new HashMap<>();
+        private long start = Long.MAX_VALUE;
+        private long dropped;
+    }
+
+    private final Map<String, Recording> recordings = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final int[] rollupCapacities;
+    private final int maxSeries;
+
+    public MetricsHistory() {
+        this(Integer.getInteger("org.wildfly.mcp.sampler.capacity", 720),
+                Long.getLong("org.wildfly.mcp.sampler.interval", 5000),
+                Integer.getInteger("org.wildfly.mcp.sampler.rollup.capacity", 1008),
+                Integer.getInteger("org.wildfly.mcp.sampler.max.series", 1000),
+                Long.getLong("org.wildfly.mcp.sampler.max.memory", 32 * 1024 * 1024));
+    }
+
+    /**
+     * The sampling interval is not known, all the resolutions are kept.
+     */
+    MetricsHistory(int capacity, int rollupCapacity, int maxSeries) {
+        this(capacity, 0, rollupCapacity, maxSeries, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity The number of samples kept per series.
+     * @param interval The sampling interval in milliseconds.
+     * @param rollupCapacity The maximum number of buckets kept per series and
+     * resolution.
+     * @param maxSeries The maximum number of series per server, the samples
+     * of the next series are dropped.
+     * @param maxMemory The memory in bytes of the history of a server, the
+     * number of buckets is lowered so that maxSeries series fit.
+     */
+    MetricsHistory(int capacity, long interval, int rollupCapacity, int maxSeries, long maxMemory) {
+        this.capacity = capacity;
+        this.rollupCapacities = rollupCapacities(capacity, interval, rollupCapacity, maxSeries, maxMemory);
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * The buckets that fit in the memory budget of a series are shared evenly
+     * by the resolutions, finest first. A resolution whose share doesn't cover
+     * a longer period than the samples and the finer resolutions is not kept,
+     * its share goes to the coarser resolutions.
+     *
+     * @return The number of buckets per series of each resolution, 0 if the
+     * resolution is not kept. The coarsest resolution has at least a bucket.
+     */
+    static int[] rollupCapacities(int capacity, long interval, int rollupCapacity, int maxSeries, long maxMemory) {
+        long remaining = Math.max(0, maxMemory / Math.max(1, maxSeries) - (long) capacity * SAMPLE_BYTES) / BUCKET_BYTES;
+        int[] capacities = new int[RESOLUTIONS.length];
+        long covered = capacity * interval;
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            int buckets = (int) Math.min(rollupCapacity, remaining / (RESOLUTIONS.length - i));
+            if (i == RESOLUTIONS.length - 1) {
+                buckets = Math.max(1, buckets);
+            } else if (buckets * RESOLUTIONS[i] <= covered) {
+                continue;
+            }
+            capacities[i] = buckets;
+            remaining -= buckets;
+            covered = buckets * RESOLUTIONS[i];
+        }
+        return capacities;
+    }
+
+    /**
+     * @return The number of buckets per series of each resolution, 0 if the
+     * resolution is not kept.
+     */
+    public int[] getRollupCapacities() {
+        return rollupCapacities.clone();
+    }
+
+    private static String key(Server server) {
+        return server.host + ":" + server.port;
+    }
+
+    /**
+     * Record a sample of the server, the first count names and values are
+     * recorded with the same timestamp.
+     */
+    public void record(Server server, long time, List<String> names, double[] values, int count) {
+        Recording recording = recordings.computeIfAbsent(key(server), k -> new Recording());
+        recording.lock.lock();
+        try {
+            recording.start = Math.min(recording.start, time);
+            for (int i = 0; i < count; i++) {
+                Series series = recording.series.get(names.get(i));
+                if (series == null) {
+                    if (recording.series.size() == maxSeries) {
+                        recording.dropped += 1;
+                        continue;
+                    }
+                    series = new Series(capacity, rollupCapacities);
+                    recording.series.put(names.get(i), series);
+                }
+                series.add(time, values[i]);
+            }
+        } finally {
+            recording.lock.unlock();
+        }
+    }
+
+    /**
+     * @param prefixes The prefixes of the series names, all the series if
+     * empty.
+     * @param maxPoints The maximum number of points per series, the samples
+     * are aggregated in buckets if needed.
+     * @return The samples recorded between from and to (inclusive) of the
+     * matching series, sorted by name.
+     */
+    public List<Points> query(Server server, List<String> prefixes, long from, long to, int maxPoints) {
+        List<Points> result = new ArrayList<>();
+        Recording recording = recordings.get(key(server));
+        if (recording == null) {
+            return result;
+        }
+        recording.lock.lock();
+        try {
+            for (Map.Entry<String, Series> entry : recording.series.entrySet()) {
+                if (matches(entry.getKey(), prefixes)) {
+                    result.add(entry.getValue().points(entry.getKey(), from, to, maxPoints));
+                }
+            }
+        } finally {
+            recording.lock.unlock();
+        }
+        result.sort((p1, p2) -> p1.series().compareTo(p2.series()));
+        return result;
+    }
+
+    private static boolean matches(String name, List<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The time of the first sample recorded for the server,
+     * Long.MAX_VALUE if none.
+     */
+    public long getStart(Server server) {
+        Recording recording = recordings.get(key(server));
+        if (recording == null) {
+            return Long.MAX_VALUE;
+        }
+        recording.lock.lock();
+        try {
+            return recording.start;
+        } finally {
+            recording.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of samples dropped because the server has too many
+     * series.
+     */
+    public long getDropped(Server server) {
+        Recording recording = recordings.get(key(server));
+        if (recording == null) {
+            return 0;
+        }
+        recording.lock.lock();
+        try {
+            return recording.dropped;
+        } finally {
+            recording.lock.unlock();
+        }
+    }
+}
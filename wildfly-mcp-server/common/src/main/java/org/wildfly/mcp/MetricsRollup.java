@@ -0,0 +1,176 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.Arrays;
+
+/**
+ * Fixed resolution aggregation of a series: the minimum, maximum, sum, last
+ * value and count of the samples of each time bucket. The buckets are updated
+ * as the samples are added, the last bucket being the current one. The
+ * buckets are kept in a ring buffer that grows up to its capacity, then the
+ * oldest buckets are overwritten.
+ *
+ * @author jdenise
+ */
+public final class MetricsRollup {
+
+    /**
+     * Aggregated buckets, oldest first.
+     */
+    public record Buckets(long[] starts, double[] min, double[] max, double[] sum, double[] last, long[] counts) {
+
+        public int size() {
+            return starts.length;
+        }
+    }
+
+    private final long resolution;
+    private final int capacity;
+    private long[] starts;
+    private double[] mins;
+    private double[] maxs;
+    private double[] sums;
+    private double[] lasts;
+    private long[] counts;
+    // The slot of the current bucket.
+    private int current = -1;
+    private int size;
+
+    /**
+     * @param resolution The bucket size in milliseconds.
+     * @param capacity The maximum number of buckets.
+     */
+    public MetricsRollup(long resolution, int capacity) {
+        this.resolution = resolution;
+        this.capacity = capacity;
+        int initial = Math.min(capacity, 16);
+        starts = new long[initial];
+        mins = new double[initial];
+        maxs = new double[initial];
+        sums = new double[initial];
+        lasts = new double[initial];
+        counts = new long[initial];
+    }
+
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Add a sample. A sample older than the current bucket is added to the
+     * current bucket.
+     */
+    public void add(long time, double value) {
+        add(time, value, value, value, value, 1);
+    }
+
+    /**
+     * Add an aggregate of samples, e.g. the samples of a segment file, to the
+     * bucket of its time.
+     */
+    public void add(long time, double min, double max, double sum, double last, long count) {
+        long start = Math.floorDiv(time, resolution) * resolution;
+        if (current < 0 || start > starts[current]) {
+            if (size == starts.length && size < capacity) {
+                grow();
+            }
+            current = current + 1 == starts.length ? 0 : current + 1;
+            size = Math.min(size + 1, starts.length);
+            starts[current] = start;
+            mins[current] = min;
+            maxs[current] = max;
+            sums[current] = sum;
+            counts[current] = count;
+        } else {
+            mins[current] = Math.min(mins[current], min);
+            maxs[current] = Math.max(maxs[current], max);
+            sums[current] += sum;
+            counts[current] += count;
+        }
+        lasts[current] = last;
+    }
+
+    private void grow() {
+        // Not wrapped yet, the buckets are in order.
+        int length = Math.min(capacity, starts.length * 2);
+        starts = Arrays.copyOf(starts, length);
+        mins = Arrays.copyOf(mins, length);
+        maxs = Arrays.copyOf(maxs, length);
+        sums = Arrays.copyOf(sums, length);
+        lasts = Arrays.copyOf(lasts, length);
+        counts = Arrays.copyOf(counts, length);
+    }
+
+    private int slot(int index) {
+        int slot = current - size + 1 + index;
+        return slot < 0 ? slot + starts.length : slot;
+    }
+
+    /**
+     * @return true if the bucket of the given time, and the next ones, are
+     * kept.
+     */
+    public boolean covers(long from) {
+        return size < capacity || starts[slot(0)] <= from;
+    }
+
+    // The index of the first bucket that ends after the given time.
+    private int lowerBound(long from) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[slot(middle)] + resolution <= from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The index after the last bucket that starts before or at the given time.
+    private int upperBound(long to) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[slot(middle)] <= to) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The number of buckets overlapping the range.
+     */
+    public int count(long from, long to) {
+        return Math.max(0, upperBound(to) - lowerBound(from));
+    }
+
+    /**
+     * @return The buckets overlapping the range.
+     */
+    public Buckets select(long from, long to) {
+        int first = lowerBound(from);
+        int count = Math.max(0, upperBound(to) - first);
+        Buckets buckets = new Buckets(new long[count], new double[count], new double[count], new double[count],
+                new double[count], new long[count]);
+        for (int i = 0; i < count; i++) {
+            int slot = slot(first + i);
+            buckets.starts()[i] = starts[slot];
+            buckets.min()[i] = mins[slot];
+            buckets.max()[i] = maxs[slot];
+            buckets.sum()[i] = sums[slot];
+            buckets.last()[i] = lasts[slot];
+            buckets.counts()[i] = counts[slot];
+        }
+        return buckets;
+    }
+}
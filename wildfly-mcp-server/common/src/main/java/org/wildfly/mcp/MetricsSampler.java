@@ -0,0 +1,424 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.mcp.WildFlyControllerClient.GetMemoryMXBean;
+import org.wildfly.mcp.WildFlyControllerClient.GetOperatingSystemMXBean;
+
+/**
+ * Background sampler of the metrics of the configured servers. At each
+ * interval the JVM memory and CPU usage are read in a single composite
+ * operation, and the selected metrics of the /metrics endpoint are scraped.
+ * If JMX is enabled, the JVM metrics (memory, CPU, threads, class loading,
+ * garbage collectors and buffer pools) are instead read from the platform
+ * MBeans with a single bulk read per MBean over a long lived
+ * {@link JMXSession}.
+ * The per second rate of the counters is recorded in addition to their value,
+ * and the mean of the summaries and histograms (e.g. the mean request
+ * duration) over the interval. The samples are recorded in the
+ * {@link MetricsHistory}, and in the {@link MetricsStore} if enabled, and are
+ * scored by the {@link AnomalyDetector}. The sampler is disabled unless servers are
+ * configured.
+ *
+ * @author jdenise
+ */
+public class MetricsSampler {
+
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.MetricsSampler");
+
+    /**
+     * Retrieve the content of the /metrics endpoint of a server.
+     */
+    public interface MetricsSource {
+
+        String getMetrics(Server server) throws Exception;
+    }
+
+    private static final ObjectName MEMORY = objectName("java.lang:type=Memory");
+    private static final ObjectName OPERATING_SYSTEM = objectName("java.lang:type=OperatingSystem");
+    private static final ObjectName THREADING = objectName("java.lang:type=Threading");
+    private static final ObjectName CLASS_LOADING = objectName("java.lang:type=ClassLoading");
+    private static final ObjectName GARBAGE_COLLECTORS = objectName("java.lang:type=GarbageCollector,name=*");
+    private static final ObjectName BUFFER_POOLS = objectName("java.nio:type=BufferPool,name=*");
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * An MBean whose attributes are recorded in the series of the same index,
+     * the cumulative ones with their rate.
+     */
+    private record MBean(ObjectName name, String[] attributes, String[] series, boolean[] cumulative) {
+
+    }
+
+    private static final class Target {
+
+        private final Server server;
+        private final JMXSession session;
+        // The garbage collectors and buffer pools, read again when the session reconnects.
+        private List<MBean> mbeans;
+        private long connections;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final PrometheusParser parser;
+        // The series names of the server, interned by its single sampling thread.
+        private final PrometheusParser.Interner interner;
+        private final StringBuilder name = new StringBuilder();
+        private final CounterRates rates = new CounterRates();
+        private final double[] rate = new double[4];
+        // The series of the sample being collected, reused by each sample.
+        private final List<String> names = new ArrayList<>();
+        private double[] values = new double[32];
+        private boolean[] cumulative = new boolean[32];
+        private int count;
+        // The sum or the count of a summary or histogram and its increase, until the other one is read.
+        private String pending;
+        private boolean pendingSum;
+        private double pendingDelta;
+
+        private Target(Server server, PrometheusParser.Filter filter, JMXSession session) {
+            this.server = server;
+            this.interner = new PrometheusParser.Interner();
+            this.parser = filter.prefixes().isEmpty() ? null : new PrometheusParser(filter, interner);
+            this.session = session;
+        }
+
+        private void add(String series, double value, boolean isCumulative) {
+            if (count == names.size()) {
+                names.add(series);
+            } else {
+                names.set(count, series);
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                cumulative = Arrays.copyOf(cumulative, count * 2);
+            }
+            values[count] = value;
+            cumulative[count] = isCumulative;
+            count += 1;
+        }
+
+        private void add(ModelNode result, String attribute, String series) {
+            if (result.hasDefined(attribute)) {
+                add(series, result.get(attribute).asDouble(), false);
+            }
+        }
+
+        /**
+         * Add the value of a cumulative series and its per second rate as
+         * rate(series).
+         *
+         * @return true if the rate has been added.
+         */
+        private boolean addCumulative(String series, double value, long nanos) {
+            add(series, value, true);
+            if (!rates.update(series, value, nanos, rate)) {
+                return false;
+            }
+            name.setLength(0);
+            name.append("rate(").append(series).append(')');
+            add(interner.intern(name, 0, name.length()), rate[CounterRates.RATE], false);
+            return true;
+        }
+    }
+
+    private final WildFlyControllerClient client;
+    private final MetricsSource source;
+    private final MetricsHistory history;
+    private final MetricsStore store;
+    private final AnomalyDetector detector;
+    private final List<Target> targets = new ArrayList<>();
+    private final long interval;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+
+    public MetricsSampler(WildFlyControllerClient client, MetricsSource source, MetricsHistory history, MetricsStore store,
+            AnomalyDetector detector) {
+        this(client, source, history, store, detector,
+                Boolean.getBoolean("org.wildfly.mcp.sampler.jmx") ? server -> new JMXSession(server, new User()) : null,
+                System.getProperty("org.wildfly.mcp.sampler.servers"),
+                System.getProperty("org.wildfly.mcp.sampler.metrics"),
+                Long.getLong("org.wildfly.mcp.sampler.interval", 5000));
+    }
+
+    /**
+     * @param sessions Create the JMX session of a server, the JVM metrics are
+     * read with management operations if null.
+     * @param servers Comma separated host:port of the sampled servers.
+     * @param metrics Comma separated prefixes of the metrics scraped from the
+     * /metrics endpoint, the endpoint is not scraped if null or empty.
+     * @param interval The sampling interval in milliseconds.
+     */
+    MetricsSampler(WildFlyControllerClient client, MetricsSource source, MetricsHistory history, MetricsStore store,
+            AnomalyDetector detector, Function<Server, JMXSession> sessions, String servers, String metrics, long interval) {
+        this.client = client;
+        this.source = source;
+        this.history = history;
+        this.store = store;
+        this.detector = detector;
+        this.interval = Math.max(100, interval);
+        PrometheusParser.Filter filter = PrometheusParser.Filter.of(metrics, null, null);
+        if (servers != null) {
+            for (String server : servers.split(",")) {
+                if (server.isBlank()) {
+                    continue;
+                }
+                int index = server.lastIndexOf(':');
+                Server target = index < 0 ? new Server(server.trim(), null)
+                        : new Server(server.substring(0, index).trim(), server.substring(index + 1).trim());
+                targets.add(new Target(target, filter, sessions == null ? null : sessions.apply(target)));
+            }
+        }
+    }
+
+    public void start() {
+        if (targets.isEmpty() || scheduler != null) {
+            return;
+        }
+        workers = Executors.newVirtualThreadPerTaskExecutor();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wildfly-mcp-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, 0, interval, TimeUnit.MILLISECONDS);
+        LOGGER.info("Sampling the metrics of " + targets.size() + " servers every " + interval + "ms");
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+        for (Target target : targets) {
+            if (target.session != null) {
+                target.session.close();
+            }
+        }
+    }
+
+    private void tick() {
+        for (Target target : targets) {
+            // A server that didn't answer the previous sample is skipped, it doesn't delay the other ones.
+            if (target.busy.compareAndSet(false, true)) {
+                workers.execute(() -> {
+                    try {
+                        sample(target);
+                    } catch (Exception ex) {
+                        LOGGER.log(Level.FINE, "Error sampling the metrics of " + target.server.host + ":" + target.server.port, ex);
+                    } finally {
+                        target.busy.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return true if the metrics of the server are sampled.
+     */
+    public boolean isSampled(Server server) {
+        for (Target target : targets) {
+            if (target.server.host.equals(server.host) && target.server.port.equals(server.port)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sample the metrics of all the servers now, in the calling thread.
+     */
+    void sampleAll() throws Exception {
+        for (Target target : targets) {
+            sample(target);
+        }
+    }
+
+    private void sample(Target target) throws Exception {
+        long time = System.currentTimeMillis();
+        target.count = 0;
+        target.pending = null;
+        long nanos = System.nanoTime();
+        if (target.session == null) {
+            sampleOperations(target);
+        } else {
+            sampleMBeans(target, nanos);
+        }
+        if (target.parser != null) {
+            target.parser.parse(source.getMetrics(target.server), (name, type, labelNames, labelValues, labelCount, value) -> {
+                // The series names of the previous scrapes are reused.
+                String series = PrometheusParser.series(target.interner, target.name, name, labelNames, labelValues, labelCount);
+                boolean cumulative = CounterRates.isCumulative(type, labelNames, labelCount);
+                if (!cumulative) {
+                    target.add(series, value, false);
+                } else if (target.addCumulative(series, value, nanos)) {
+                    addMean(target, name, series);
+                }
+            });
+        }
+        history.record(target.server, time, target.names, target.values, target.count);
+        detector.record(target.server, time, target.names, target.values, target.cumulative, target.count);
+        try {
+            store.append(target.server, time, target.names, target.values, target.count);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Can't store the metrics of " + target.server.host + ":" + target.server.port, ex);
+        }
+    }
+
+    private void sampleOperations(Target target) throws Exception {
+        User user = new User();
+        List<ModelNode> responses = client.callBatch(List.of(new GetMemoryMXBean(target.server, user),
+                new GetOperatingSystemMXBean(target.server, user)));
+        ModelNode memory = responses.get(0).get("result");
+        target.add(memory.get("heap-memory-usage"), "used", "jvm_memory_heap_used_bytes");
+        target.add(memory.get("heap-memory-usage"), "committed", "jvm_memory_heap_committed_bytes");
+        target.add(memory.get("heap-memory-usage"), "max", "jvm_memory_heap_max_bytes");
+        target.add(memory.get("non-heap-memory-usage"), "used", "jvm_memory_nonheap_used_bytes");
+        target.add(memory.get("non-heap-memory-usage"), "committed", "jvm_memory_nonheap_committed_bytes");
+        ModelNode os = responses.get(1).get("result");
+        target.add(os, "process-cpu-load", "os_process_cpu_load");
+        target.add(os, "system-cpu-load", "os_system_cpu_load");
+        target.add(os, "system-load-average", "os_system_load_average");
+    }
+
+    private static void sampleMBeans(Target target, long nanos) throws Exception {
+        JMXSession session = target.session;
+        AttributeList memory = session.getAttributes(MEMORY, "HeapMemoryUsage", "NonHeapMemoryUsage");
+        // The names of the garbage collectors and buffer pools are read again after a reconnection.
+        if (target.mbeans == null || target.connections != session.getConnections()) {
+            target.connections = session.getConnections();
+            target.mbeans = queryMBeans(session, target.interner, target.name);
+        }
+        for (Attribute attribute : memory.asList()) {
+            CompositeData usage = (CompositeData) attribute.getValue();
+            if (attribute.getName().equals("HeapMemoryUsage")) {
+                target.add("jvm_memory_heap_used_bytes", ((Number) usage.get("used")).doubleValue(), false);
+                target.add("jvm_memory_heap_committed_bytes", ((Number) usage.get("committed")).doubleValue(), false);
+                addPositive(target, "jvm_memory_heap_max_bytes", usage.get("max"), false, nanos);
+            } else {
+                target.add("jvm_memory_nonheap_used_bytes", ((Number) usage.get("used")).doubleValue(), false);
+                target.add("jvm_memory_nonheap_committed_bytes", ((Number) usage.get("committed")).doubleValue(), false);
+            }
+        }
+        for (MBean mbean : target.mbeans) {
+            for (Attribute attribute : session.getAttributes(mbean.name(), mbean.attributes()).asList()) {
+                for (int i = 0; i < mbean.attributes().length; i++) {
+                    if (mbean.attributes()[i].equals(attribute.getName())) {
+                        Object value = attribute.getValue();
+                        // The collection time is in milliseconds.
+                        if (attribute.getName().equals("CollectionTime") && value instanceof Number number) {
+                            value = number.doubleValue() / 1000;
+                        }
+                        addPositive(target, mbean.series()[i], value, mbean.cumulative()[i], nanos);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a numeric value, the negative values are undefined.
+     */
+    private static void addPositive(Target target, String series, Object value, boolean cumulative, long nanos) {
+        if (!(value instanceof Number number) || number.doubleValue() < 0) {
+            return;
+        }
+        if (cumulative) {
+            target.addCumulative(series, number.doubleValue(), nanos);
+        } else {
+            target.add(series, number.doubleValue(), false);
+        }
+    }
+
+    private static List<MBean> queryMBeans(JMXSession session, PrometheusParser.Interner interner, StringBuilder builder) throws Exception {
+        List<MBean> mbeans = new ArrayList<>();
+        mbeans.add(new MBean(OPERATING_SYSTEM, new String[]{"ProcessCpuLoad", "SystemCpuLoad", "SystemLoadAverage"},
+                new String[]{"os_process_cpu_load", "os_system_cpu_load", "os_system_load_average"}, new boolean[3]));
+        mbeans.add(new MBean(THREADING, new String[]{"ThreadCount", "DaemonThreadCount", "PeakThreadCount"},
+                new String[]{"jvm_threads_live", "jvm_threads_daemon", "jvm_threads_peak"}, new boolean[3]));
+        mbeans.add(new MBean(CLASS_LOADING, new String[]{"LoadedClassCount", "TotalLoadedClassCount", "UnloadedClassCount"},
+                new String[]{"jvm_classes_loaded", "jvm_classes_loaded_total", "jvm_classes_unloaded_total"},
+                new boolean[]{false, true, true}));
+        String[] labelNames = new String[1];
+        String[] labelValues = new String[1];
+        for (ObjectName name : session.queryNames(GARBAGE_COLLECTORS)) {
+            labelNames[0] = "gc";
+            labelValues[0] = name.getKeyProperty("name");
+            mbeans.add(new MBean(name, new String[]{"CollectionCount", "CollectionTime"},
+                    new String[]{PrometheusParser.series(interner, builder, "jvm_gc_collections_total", labelNames, labelValues, 1),
+                        PrometheusParser.series(interner, builder, "jvm_gc_collection_seconds_total", labelNames, labelValues, 1)},
+                    new boolean[]{true, true}));
+        }
+        for (ObjectName name : session.queryNames(BUFFER_POOLS)) {
+            labelNames[0] = "pool";
+            labelValues[0] = name.getKeyProperty("name");
+            mbeans.add(new MBean(name, new String[]{"Count", "MemoryUsed", "TotalCapacity"},
+                    new String[]{PrometheusParser.series(interner, builder, "jvm_buffer_pool_count", labelNames, labelValues, 1),
+                        PrometheusParser.series(interner, builder, "jvm_buffer_pool_used_bytes", labelNames, labelValues, 1),
+                        PrometheusParser.series(interner, builder, "jvm_buffer_pool_capacity_bytes", labelNames, labelValues, 1)},
+                    new boolean[3]));
+        }
+        return mbeans;
+    }
+
+    /**
+     * Record the mean of a summary or histogram over the interval, e.g. the
+     * mean duration of the requests, as mean(series) when its sum and its
+     * count are consecutive.
+     */
+    private static void addMean(Target target, String name, String series) {
+        boolean isSum = name.endsWith("_sum");
+        if (!isSum && !name.endsWith("_count")) {
+            target.pending = null;
+            return;
+        }
+        String pending = target.pending;
+        if (pending == null || target.pendingSum == isSum) {
+            target.pending = target.rate[CounterRates.RESET] == 0 ? series : null;
+            target.pendingSum = isSum;
+            target.pendingDelta = target.rate[CounterRates.DELTA];
+            return;
+        }
+        target.pending = null;
+        String sum = isSum ? series : pending;
+        String count = isSum ? pending : series;
+        double sumDelta = isSum ? target.rate[CounterRates.DELTA] : target.pendingDelta;
+        double countDelta = isSum ? target.pendingDelta : target.rate[CounterRates.DELTA];
+        int base = isSum ? name.length() - "_sum".length() : name.length() - "_count".length();
+        // The series of the sum and of the count only differ by the suffix of the name.
+        if (sum.length() != count.length() - 2 || !sum.regionMatches(0, count, 0, base)
+                || !sum.regionMatches(base + 4, count, base + 6, count.length() - base - 6)
+                || countDelta <= 0 || target.rate[CounterRates.RESET] != 0) {
+            return;
+        }
+        target.name.setLength(0);
+        target.name.append("mean(").append(count, 0, base).append(count, base + 6, count.length()).append(')');
+        target.add(target.interner.intern(target.name, 0, target.name.length()), sumDelta / countDelta, false);
+    }
+}
@@ -0,0 +1,738 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On disk store of the sampled metrics, so the history survives the restarts
+ * of the MCP server. The samples of a server are appended to memory mapped
+ * segment files, a new segment is started every hour or when the current one
+ * is full. The samples are bit packed: the timestamps are encoded as the
+ * difference between consecutive deltas and the values as the XOR with the
+ * previous value of the series, so a regular sampling of slowly changing
+ * metrics takes a few bits per sample. A closed segment is truncated to its
+ * committed length. The segments older than the retention are deleted.
+ * <p>
+ * When a segment is closed, the count, minimum, maximum, sum and last value of
+ * each of its series are written to a summary file, a query reads the
+ * summary of a segment instead of decoding it if the segment is in the range
+ * and in a single bucket. The segments are decoded without holding the lock
+ * of the writer, up to the length committed when the query started.
+ *
+ * @author jdenise
+ */
+public class MetricsStore {
+
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.MetricsStore");
+
+    private static final int MAGIC = 0x57464d53;
+    private static final int VERSION = 1;
+    // magic, version, committed bits, first time, last time.
+    private static final int HEADER = 32;
+    private static final int COMMITTED = 8;
+    private static final int FIRST_TIME = 16;
+    private static final int LAST_TIME = 24;
+    private static final int ID_BITS = 20;
+    private static final long SEGMENT_DURATION = 3600000;
+    private static final String SUFFIX = ".seg";
+    private static final String SUMMARY_SUFFIX = ".sum";
+    private static final long[] BUCKETS = {1000, 5000, 10000, 30000, 60000, 300000, 600000, 1800000, 3600000, 21600000, 86400000};
+
+    /**
+     * Bit level access to a buffer, after the segment header.
+     */
+    static final class BitBuffer {
+
+        private final ByteBuffer buffer;
+        private long position;
+
+        BitBuffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void write(long value, int bits) {
+            while (bits > 0) {
+                int index = HEADER + (int) (position >>> 3);
+                int offset = (int) (position & 7);
+                int n = Math.min(8 - offset, bits);
+                int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+                int current = offset == 0 ? 0 : buffer.get(index);
+                buffer.put(index, (byte) (current | (chunk << (8 - offset - n))));
+                position += n;
+                bits -= n;
+            }
+        }
+
+        long read(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int index = HEADER + (int) (position >>> 3);
+                int offset = (int) (position & 7);
+                int n = Math.min(8 - offset, bits);
+                int chunk = ((buffer.get(index) & 0xFF) >>> (8 - offset - n)) & ((1 << n) - 1);
+                value = (value << n) | chunk;
+                position += n;
+                bits -= n;
+            }
+            return value;
+        }
+
+        long readSigned(int bits) {
+            return (read(bits) << (64 - bits)) >> (64 - bits);
+        }
+    }
+
+    private static final class SeriesState {
+
+        private long bits;
+        private int leading = -1;
+        private int trailing;
+    }
+
+    /**
+     * The state of the encoding of a segment, identical when writing and
+     * reading the segment.
+     */
+    static final class Codec {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<SeriesState> states = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] previousIds = new int[16];
+        private int previousCount;
+        private long previousTime;
+        private long previousDelta;
+        private boolean started;
+
+        void writeTime(BitBuffer out, long time) {
+            if (!started) {
+                out.write(time, 64);
+                started = true;
+            } else {
+                long delta = time - previousTime;
+                long deltaOfDelta = delta - previousDelta;
+                if (deltaOfDelta == 0) {
+                    out.write(0, 1);
+                } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+                    out.write(0b10, 2);
+                    out.write(deltaOfDelta & 0x7F, 7);
+                } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+                    out.write(0b110, 3);
+                    out.write(deltaOfDelta & 0x1FF, 9);
+                } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+                    out.write(0b1110, 4);
+                    out.write(deltaOfDelta & 0xFFF, 12);
+                } else {
+                    out.write(0b1111, 4);
+                    out.write(deltaOfDelta, 64);
+                }
+                previousDelta = delta;
+            }
+            previousTime = time;
+        }
+
+        long readTime(BitBuffer in) {
+            if (!started) {
+                previousTime = in.read(64);
+                started = true;
+                return previousTime;
+            }
+            long deltaOfDelta;
+            if (in.read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.readSigned(7);
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.readSigned(9);
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.readSigned(12);
+            } else {
+                deltaOfDelta = in.read(64);
+            }
+            previousDelta += deltaOfDelta;
+            previousTime += previousDelta;
+            return previousTime;
+        }
+
+        void writeCount(BitBuffer out, int count) {
+            if (count == previousCount) {
+                out.write(0, 1);
+            } else {
+                out.write(1, 1);
+                out.write(count, ID_BITS);
+            }
+            if (previousIds.length < count) {
+                previousIds = Arrays.copyOf(previousIds, Math.max(count, previousIds.length * 2));
+            }
+            previousCount = count;
+        }
+
+        int readCount(BitBuffer in) {
+            int count = in.read(1) == 0 ? previousCount : (int) in.read(ID_BITS);
+            if (previousIds.length < count) {
+                previousIds = Arrays.copyOf(previousIds, Math.max(count, previousIds.length * 2));
+            }
+            previousCount = count;
+            return count;
+        }
+
+        /**
+         * Write the series of the i-th sample of a record, a single bit if it
+         * is the same series as in the previous record.
+         */
+        int writeSeries(BitBuffer out, int i, String name) {
+            Integer id = ids.get(name);
+            if (id != null && i < previousIds.length && previousIds[i] == id) {
+                out.write(0, 1);
+                return id;
+            }
+            out.write(1, 1);
+            if (id == null) {
+                if (names.size() == (1 << ID_BITS) - 1) {
+                    throw new IndexOutOfBoundsException("Too many series");
+                }
+                id = names.size();
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.write(id, ID_BITS);
+                out.write(bytes.length, 16);
+                for (byte b : bytes) {
+                    out.write(b & 0xFF, 8);
+                }
+                names.add(name);
+                states.add(new SeriesState());
+                ids.put(name, id);
+            } else {
+                out.write(id, ID_BITS);
+            }
+            previousIds[i] = id;
+            return id;
+        }
+
+        int readSeries(BitBuffer in, int i) {
+            if (in.read(1) == 0) {
+                return previousIds[i];
+            }
+            int id = (int) in.read(ID_BITS);
+            if (id == names.size()) {
+                byte[] bytes = new byte[(int) in.read(16)];
+                for (int b = 0; b < bytes.length; b++) {
+                    bytes[b] = (byte) in.read(8);
+                }
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+                states.add(new SeriesState());
+            }
+            previousIds[i] = id;
+            return id;
+        }
+
+        void writeValue(BitBuffer out, int id, double value) {
+            SeriesState state = states.get(id);
+            long bits = Double.doubleToRawLongBits(value);
+            long xor = bits ^ state.bits;
+            state.bits = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                return;
+            }
+            out.write(1, 1);
+            int leading = Math.min(63, Long.numberOfLeadingZeros(xor));
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (state.leading >= 0 && leading >= state.leading && trailing >= state.trailing) {
+                // The meaningful bits fit in the window of the previous value.
+                out.write(0, 1);
+                out.write(xor >>> state.trailing, 64 - state.leading - state.trailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                out.write(1, 1);
+                out.write(leading, 6);
+                out.write(significant - 1, 6);
+                out.write(xor >>> trailing, significant);
+                state.leading = leading;
+                state.trailing = trailing;
+            }
+        }
+
+        double readValue(BitBuffer in, int id) {
+            SeriesState state = states.get(id);
+            if (in.read(1) == 1) {
+                if (in.read(1) == 0) {
+                    state.bits ^= in.read(64 - state.leading - state.trailing) << state.trailing;
+                } else {
+                    int leading = (int) in.read(6);
+                    int significant = (int) in.read(6) + 1;
+                    int trailing = 64 - leading - significant;
+                    state.bits ^= in.read(significant) << trailing;
+                    state.leading = leading;
+                    state.trailing = trailing;
+                }
+            }
+            return Double.longBitsToDouble(state.bits);
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+    }
+
+    /**
+     * The aggregate of the committed samples of a series of a segment.
+     */
+    private static final class Summary {
+
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private double last;
+
+        private void add(double value) {
+            count += 1;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            last = value;
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final BitBuffer bits;
+        private final Codec codec = new Codec();
+        // The summary of each series, by id.
+        private final List<Summary> summaries = new ArrayList<>();
+        private final long firstTime;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer, long firstTime) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.bits = new BitBuffer(buffer);
+            this.firstTime = firstTime;
+        }
+
+        private void close() {
+            buffer.force();
+            try {
+                // The unused end of the mapped segment is not kept on disk.
+                channel.truncate(HEADER + (buffer.getLong(COMMITTED) + 7) / 8);
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Can't truncate the segment " + file, ex);
+            }
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Error closing a segment", ex);
+            }
+            writeSummary(this);
+        }
+
+        private Summary summary(int id) {
+            while (summaries.size() <= id) {
+                summaries.add(new Summary());
+            }
+            return summaries.get(id);
+        }
+    }
+
+    /**
+     * A segment to read, the samples after the committed length are not
+     * read.
+     */
+    private record Snapshot(Path file, ByteBuffer buffer, long committed, long first, long last) {
+
+    }
+
+    private static final class Writer {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Path directory;
+        private Segment segment;
+
+        private Writer(Path directory) {
+            this.directory = directory;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retention;
+    private final Map<String, Writer> writers = new ConcurrentHashMap<>();
+
+    public MetricsStore() {
+        this(storeDirectory(), Integer.getInteger("org.wildfly.mcp.sampler.store.segment.size", 4 * 1024 * 1024),
+                LogStore.parseBucket(System.getProperty("org.wildfly.mcp.sampler.store.retention", "7d")));
+    }
+
+    /**
+     * @param directory The directory of the store, null to disable the
+     * store.
+     * @param segmentSize The size of the segment files.
+     * @param retention The time the samples are kept.
+     */
+    MetricsStore(Path directory, int segmentSize, Duration retention) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retention = retention.toMillis();
+    }
+
+    private static Path storeDirectory() {
+        String dir = System.getProperty("org.wildfly.mcp.sampler.store.dir");
+        return dir == null || dir.isBlank() ? null : Paths.get(dir);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    private Writer writer(Server server) {
+        return writers.computeIfAbsent(server.host + ":" + server.port,
+                k -> new Writer(directory.resolve(k.replaceAll("[^A-Za-z0-9._-]", "_"))));
+    }
+
+    /**
+     * Append a sample of the server, the first count names and values are
+     * stored with the same timestamp.
+     */
+    public void append(Server server, long time, List<String> names, double[] values, int count) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        Writer writer = writer(server);
+        writer.lock.lock();
+        try {
+            // The segments are aligned on the hours, a segment is in a single bucket of an hour or more.
+            if (writer.segment == null || Math.floorDiv(time, SEGMENT_DURATION) != Math.floorDiv(writer.segment.firstTime, SEGMENT_DURATION)) {
+                roll(writer, time);
+            }
+            try {
+                write(writer.segment, time, names, values, count);
+            } catch (IndexOutOfBoundsException ex) {
+                // The segment is full, the partial record is not committed.
+                roll(writer, time);
+                try {
+                    write(writer.segment, time, names, values, count);
+                } catch (IndexOutOfBoundsException ex2) {
+                    throw new IOException("The sample doesn't fit in a segment of " + segmentSize + " bytes", ex2);
+                }
+            }
+        } finally {
+            writer.lock.unlock();
+        }
+    }
+
+    private static void write(Segment segment, long time, List<String> names, double[] values, int count) {
+        BitBuffer out = segment.bits;
+        Codec codec = segment.codec;
+        codec.writeTime(out, time);
+        codec.writeCount(out, count);
+        for (int i = 0; i < count; i++) {
+            codec.writeValue(out, codec.writeSeries(out, i, names.get(i)), values[i]);
+        }
+        // Committed once the record is complete, a reader never decodes a partial record.
+        segment.buffer.putLong(COMMITTED, out.position);
+        segment.buffer.putLong(LAST_TIME, time);
+        for (int i = 0; i < count; i++) {
+            segment.summary(codec.previousIds[i]).add(values[i]);
+        }
+    }
+
+    private static Path summaryFile(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + SUMMARY_SUFFIX);
+    }
+
+    private static void writeSummary(Segment segment) {
+        Path file = summaryFile(segment.file);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                // The summary of these committed bits only.
+                out.writeLong(segment.buffer.getLong(COMMITTED));
+                out.writeInt(segment.summaries.size());
+                for (int id = 0; id < segment.summaries.size(); id++) {
+                    Summary summary = segment.summaries.get(id);
+                    out.writeUTF(segment.codec.name(id));
+                    out.writeLong(summary.count);
+                    out.writeDouble(summary.min);
+                    out.writeDouble(summary.max);
+                    out.writeDouble(summary.sum);
+                    out.writeDouble(summary.last);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            // The segment is decoded by the queries.
+            LOGGER.log(Level.WARNING, "Can't write the summary of the segment " + segment.file, ex);
+        }
+    }
+
+    /**
+     * Add the summary of a segment to the rollups, in the bucket of the first
+     * sample of the segment.
+     *
+     * @return false if the segment has no valid summary, nothing is added.
+     */
+    private static boolean readSummary(Snapshot segment, List<String> prefixes, long resolution, Map<String, MetricsRollup> rollups) {
+        Path file = summaryFile(segment.file());
+        if (!Files.exists(file)) {
+            return false;
+        }
+        List<String> names = new ArrayList<>();
+        List<Summary> summaries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != segment.committed()) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                names.add(in.readUTF());
+                Summary summary = new Summary();
+                summary.count = in.readLong();
+                summary.min = in.readDouble();
+                summary.max = in.readDouble();
+                summary.sum = in.readDouble();
+                summary.last = in.readDouble();
+                summaries.add(summary);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Can't read the summary " + file, ex);
+            return false;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            Summary summary = summaries.get(i);
+            if (summary.count > 0 && matches(names.get(i), prefixes)) {
+                rollups.computeIfAbsent(names.get(i), k -> new MetricsRollup(resolution, Integer.MAX_VALUE))
+                        .add(segment.first(), summary.min, summary.max, summary.sum, summary.last, summary.count);
+            }
+        }
+        return true;
+    }
+
+    private void roll(Writer writer, long time) throws IOException {
+        if (writer.segment != null) {
+            writer.segment.close();
+            writer.segment = null;
+        }
+        Files.createDirectories(writer.directory);
+        deleteExpired(writer.directory, time - retention);
+        long name = time;
+        Path file;
+        while (Files.exists(file = writer.directory.resolve(String.format("%019d", name) + SUFFIX))) {
+            name += 1;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(COMMITTED, 0);
+            buffer.putLong(FIRST_TIME, time);
+            buffer.putLong(LAST_TIME, time);
+            writer.segment = new Segment(file, channel, buffer, time);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static void deleteExpired(Path directory, long limit) {
+        for (Path file : segments(directory).values()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                channel.read(header, 0);
+                if (header.getLong(LAST_TIME) >= limit) {
+                    continue;
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Can't read the segment " + file, ex);
+                continue;
+            }
+            try {
+                Files.delete(file);
+                Files.deleteIfExists(summaryFile(file));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Can't delete the expired segment " + file, ex);
+            }
+        }
+    }
+
+    // The segment files by first timestamp, the name of a segment is the time of its first sample.
+    private static TreeMap<Long, Path> segments(Path directory) {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException ex) {
+                    // Not a segment.
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Can't list the segments of " + directory, ex);
+        }
+        return segments;
+    }
+
+    /**
+     * Read the samples stored between from and to (inclusive), the samples
+     * of each series are aggregated in at most maxPoints buckets.
+     *
+     * @param prefixes The prefixes of the series names, all the series if
+     * empty.
+     * @return The matching series, sorted by name.
+     */
+    public List<MetricsHistory.Points> query(Server server, List<String> prefixes, long from, long to, int maxPoints) throws IOException {
+        List<MetricsHistory.Points> result = new ArrayList<>();
+        if (directory == null || from > to) {
+            return result;
+        }
+        Writer writer = writer(server);
+        List<Snapshot> snapshots = new ArrayList<>();
+        // A segment doesn't span hours, the segments started before the hour of from or after to are not opened.
+        long hour = from < Long.MIN_VALUE + SEGMENT_DURATION ? Long.MIN_VALUE : Math.floorDiv(from, SEGMENT_DURATION) * SEGMENT_DURATION;
+        Map<Long, Path> candidates = segments(writer.directory).subMap(hour, true, to, true);
+        // Only the headers of the segments are read under the lock, the segments in the range are mapped up to their committed length.
+        writer.lock.lock();
+        try {
+            for (Path file : candidates.values()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER);
+                    if (channel.read(header, 0) < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                        LOGGER.fine("Ignoring the invalid segment " + file);
+                        continue;
+                    }
+                    long first = header.getLong(FIRST_TIME);
+                    long last = header.getLong(LAST_TIME);
+                    long committed = header.getLong(COMMITTED);
+                    if (committed == 0 || last < from || first > to) {
+                        continue;
+                    }
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER + (committed + 7) / 8);
+                    snapshots.add(new Snapshot(file, buffer, committed, first, last));
+                }
+            }
+        } finally {
+            writer.lock.unlock();
+        }
+        if (snapshots.isEmpty()) {
+            return result;
+        }
+        // The headers give the time range of the segments, the bucket size is computed first.
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Snapshot snapshot : snapshots) {
+            start = Math.min(start, Math.max(snapshot.first(), from));
+            end = Math.max(end, Math.min(snapshot.last(), to));
+        }
+        // The finest bucket size that fits, the buckets of the largest size are merged if needed.
+        long resolution = BUCKETS[BUCKETS.length - 1];
+        for (long size : BUCKETS) {
+            if (Math.floorDiv(end, size) - Math.floorDiv(start, size) < maxPoints) {
+                resolution = size;
+                break;
+            }
+        }
+        Map<String, MetricsRollup> rollups = new TreeMap<>();
+        for (Snapshot snapshot : snapshots) {
+            boolean summarized = snapshot.first() >= from && snapshot.last() <= to
+                    && Math.floorDiv(snapshot.first(), resolution) == Math.floorDiv(snapshot.last(), resolution)
+                    && readSummary(snapshot, prefixes, resolution, rollups);
+            if (!summarized) {
+                read(snapshot.buffer(), snapshot.committed(), prefixes, from, to, resolution, rollups);
+            }
+        }
+        for (Map.Entry<String, MetricsRollup> entry : rollups.entrySet()) {
+            MetricsRollup.Buckets buckets = entry.getValue().select(from, to);
+            int factor = Math.max(1, (buckets.size() + maxPoints - 1) / Math.max(1, maxPoints));
+            result.add(MetricsHistory.toPoints(entry.getKey(), resolution, buckets, factor));
+        }
+        return result;
+    }
+
+    private static void read(ByteBuffer buffer, long committed, List<String> prefixes, long from, long to, long resolution,
+            Map<String, MetricsRollup> rollups) {
+        BitBuffer in = new BitBuffer(buffer);
+        Codec codec = new Codec();
+        // The aggregation of each series of the segment, null if the series doesn't match.
+        List<MetricsRollup> selected = new ArrayList<>();
+        while (in.position < committed) {
+            long time = codec.readTime(in);
+            int count = codec.readCount(in);
+            for (int i = 0; i < count; i++) {
+                int id = codec.readSeries(in, i);
+                double value = codec.readValue(in, id);
+                while (selected.size() <= id) {
+                    String name = codec.name(selected.size());
+                    selected.add(matches(name, prefixes) ? rollups.computeIfAbsent(name, k -> new MetricsRollup(resolution, Integer.MAX_VALUE)) : null);
+                }
+                MetricsRollup rollup = selected.get(id);
+                if (rollup != null && time >= from && time <= to) {
+                    rollup.add(time, value);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(String name, List<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void close() {
+        for (Writer writer : writers.values()) {
+            writer.lock.lock();
+            try {
+                if (writer.segment != null) {
+                    writer.segment.close();
+                    writer.segment = null;
+                }
+            } finally {
+                writer.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.ModelControllerClientConfiguration;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Pool of {@link ModelControllerClient} connections keyed by host, port and
+ * user. A connection is leased for the duration of a call and returned to the
+ * pool afterward, so the remoting connection and the SASL handshake are only
+ * paid once per server.
+ *
+ * @author jdenise
+ */
+public class ModelControllerClientPool implements AutoCloseable {
+
+    static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.ModelControllerClientPool");
+
+    record Key(String host, String port, String userName, String userPassword) {
+
+        static Key of(Server server, User user) {
+            return user == null ? new Key(server.host, server.port, null, null)
+                    : new Key(server.host, server.port, user.userName, user.userPassword);
+        }
+
+        @Override
+        public String toString() {
+            return (userName == null ? "" : userName + "@") + host + ":" + port;
+        }
+    }
+
+    private static final class Entry {
+
+        private final ModelControllerClient client;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Entry(ModelControllerClient client) {
+            this.client = client;
+        }
+    }
+
+    private static final class ServerPool {
+
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+
+        private ServerPool(int maxPerServer) {
+            permits = new Semaphore(maxPerServer, true);
+        }
+    }
+
+    /**
+     * A connection borrowed from the pool. Closing the lease returns the
+     * connection to the pool, unless it has been invalidated.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final ServerPool pool;
+        private final Entry entry;
+        private boolean invalid;
+        private boolean released;
+
+        private Lease(ServerPool pool, Entry entry) {
+            this.pool = pool;
+            this.entry = entry;
+        }
+
+        public ModelControllerClient client() {
+            return entry.client;
+        }
+
+        /**
+         * Mark the connection as broken, it will be closed instead of being
+         * returned to the pool.
+         */
+        public void invalidate() {
+            invalid = true;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            release(pool, entry, invalid);
+        }
+    }
+
+    private final Map<Key, ServerPool> pools = new ConcurrentHashMap<>();
+    private final Function<Key, ModelControllerClient> factory;
+    private final int maxPerServer;
+    private final long idleTimeout;
+    private final long validationInterval;
+    private final long borrowTimeout;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ModelControllerClientPool() {
+        this(ModelControllerClientPool::createClient,
+                Integer.getInteger("org.wildfly.mcp.pool.max.per.server", 4),
+                Long.getLong("org.wildfly.mcp.pool.idle.timeout", 60000),
+                Long.getLong("org.wildfly.mcp.pool.validation.interval", 30000),
+                Long.getLong("org.wildfly.mcp.pool.borrow.timeout", 30000));
+    }
+
+    ModelControllerClientPool(Function<Key, ModelControllerClient> factory, int maxPerServer,
+            long idleTimeout, long validationInterval, long borrowTimeout) {
+        this.factory = factory;
+        this.maxPerServer = maxPerServer;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.borrowTimeout = borrowTimeout;
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wildfly-mcp-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static ModelControllerClient createClient(Key key) {
+        final ModelControllerClientConfiguration.Builder builder = new ModelControllerClientConfiguration.Builder()
+                .setHostName(key.host())
+                .setPort(Integer.parseInt(key.port()));
+        if (key.userName() != null) {
+            builder.setHandler(new ClientCallbackHandler(key.userName(), key.userPassword()));
+        }
+        return ModelControllerClient.Factory.create(builder.build());
+    }
+
+    public Lease borrow(Server server, User user) throws IOException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The connection pool is closed");
+        }
+        Key key = Key.of(server, user);
+        ServerPool pool = pools.computeIfAbsent(key, k -> new ServerPool(maxPerServer));
+        if (!pool.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Timeout waiting for a connection to the server " + server.host + ":" + server.port
+                    + ", " + maxPerServer + " connections already in use.");
+        }
+        try {
+            Entry entry;
+            while ((entry = pool.idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - entry.lastUsed < validationInterval || isAlive(entry.client)) {
+                    return new Lease(pool, entry);
+                }
+                LOGGER.fine("Discarding stale connection to " + key);
+                closeQuietly(entry.client);
+            }
+            return new Lease(pool, new Entry(factory.apply(key)));
+        } catch (RuntimeException ex) {
+            pool.permits.release();
+            throw ex;
+        }
+    }
+
+    private void release(ServerPool pool, Entry entry, boolean invalid) {
+        try {
+            if (invalid || closed) {
+                closeQuietly(entry.client);
+            } else {
+                entry.lastUsed = System.currentTimeMillis();
+                pool.idle.offerFirst(entry);
+            }
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    private static boolean isAlive(ModelControllerClient client) {
+        try {
+            ModelNode reply = client.execute(Operations.createOperation("whoami"));
+            return Operations.isSuccessfulOutcome(reply);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    void evictIdle() {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        for (ServerPool pool : pools.values()) {
+            for (Entry entry : pool.idle) {
+                // remove() only succeeds for one thread, a concurrent borrow wins otherwise.
+                if (entry.lastUsed < limit && pool.idle.remove(entry)) {
+                    closeQuietly(entry.client);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of idle connections currently kept for the server.
+     */
+    int idleCount(Server server, User user) {
+        ServerPool pool = pools.get(Key.of(server, user));
+        return pool == null ? 0 : pool.idle.size();
+    }
+
+    private static void closeQuietly(ModelControllerClient client) {
+        try {
+            client.close();
+        } catch (Exception ex) {
+            LOGGER.log(Level.FINE, "Error closing connection", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        for (ServerPool pool : pools.values()) {
+            Entry entry;
+            while ((entry = pool.idle.pollFirst()) != null) {
+                closeQuietly(entry.client);
+            }
+        }
+        pools.clear();
+    }
+}
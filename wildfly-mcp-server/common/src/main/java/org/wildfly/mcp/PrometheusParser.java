@@ -0,0 +1,433 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parser of the Prometheus and OpenMetrics text formats. The samples are
+ * filtered while parsing: the labels of a sample are only parsed if its name
+ * and type match. The metric and label names, and the label values, are
+ * interned in the table of the parser, so parsing the same metrics again with
+ * the same parser doesn't allocate new strings for them. Not thread safe, a
+ * parser is used by a single thread at a time.
+ *
+ * @author jdenise
+ */
+public final class PrometheusParser {
+
+    public static final List<String> TYPES = List.of("counter", "gauge", "histogram", "summary", "untyped", "info", "stateset",
+            "gaugehistogram", "unknown");
+
+    /**
+     * Receives the selected samples. The label arrays are reused, only the
+     * first labelCount entries are set.
+     */
+    public interface SampleConsumer {
+
+        void accept(String name, String type, String[] labelNames, String[] labelValues, int labelCount, double value);
+    }
+
+    /**
+     * A label matcher: {@code label=value}, {@code label!=value},
+     * {@code label=~regex} or {@code label!~regex}.
+     */
+    public record LabelMatcher(String label, String value, Pattern pattern, boolean negated) {
+
+        boolean matches(String actual) {
+            boolean matches = pattern == null ? value.equals(actual == null ? "" : actual)
+                    : pattern.matcher(actual == null ? "" : actual).matches();
+            return matches != negated;
+        }
+    }
+
+    /**
+     * The selection of the samples, empty lists and null values select all
+     * the samples.
+     *
+     * @param prefixes The prefixes of the metric names.
+     * @param type The metric type.
+     */
+    public record Filter(List<String> prefixes, List<LabelMatcher> matchers, String type) {
+
+        /**
+         * @param prefixes Comma separated metric name prefixes.
+         * @param labels Comma separated label matchers, e.g.
+         * {@code area="heap",id=~"G1.*"}.
+         * @param type A metric type.
+         */
+        public static Filter of(String prefixes, String labels, String type) {
+            List<String> names = new ArrayList<>();
+            if (prefixes != null) {
+                for (String prefix : prefixes.split(",")) {
+                    if (!prefix.isBlank()) {
+                        names.add(prefix.trim());
+                    }
+                }
+            }
+            List<LabelMatcher> matchers = new ArrayList<>();
+            if (labels != null && !labels.isBlank()) {
+                String selector = labels.trim();
+                if (selector.startsWith("{") && selector.endsWith("}")) {
+                    selector = selector.substring(1, selector.length() - 1);
+                }
+                Matcher m = SELECTOR.matcher(selector);
+                int end = 0;
+                while (m.find() && m.start() == end) {
+                    String value = m.group(3) != null ? m.group(3).replace("\\\"", "\"").replace("\\\\", "\\") : m.group(4);
+                    String op = m.group(2);
+                    matchers.add(new LabelMatcher(m.group(1), value, op.endsWith("~") ? Pattern.compile(value) : null, op.startsWith("!")));
+                    end = m.end();
+                }
+                if (end != selector.length()) {
+                    throw new IllegalArgumentException("Invalid label matchers " + labels + ", expected for example area=\"heap\",id=~\"G1.*\"");
+                }
+            }
+            String lower = type == null || type.isBlank() ? null : type.trim().toLowerCase(Locale.ROOT);
+            if (lower != null && !TYPES.contains(lower)) {
+                throw new IllegalArgumentException("Unknown metric type " + type + ", expected one of " + TYPES);
+            }
+            return new Filter(names, matchers, lower);
+        }
+
+        private boolean matchesName(String name) {
+            if (prefixes.isEmpty()) {
+                return true;
+            }
+            for (String prefix : prefixes) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Pattern SELECTOR = Pattern.compile(
+            "\\s*([a-zA-Z_][a-zA-Z0-9_]*)\\s*(=~|!~|!=|=)\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|([^,\\s\"]*))\\s*,?");
+    private static final List<String> SUFFIXES = List.of("_bucket", "_count", "_sum", "_created", "_total", "_info", "_gcount", "_gsum");
+
+    private final Filter filter;
+    private final Interner interner;
+    // The metric families declared by the TYPE lines.
+    private final Map<String, String> types = new HashMap<>();
+    private final StringBuilder escaped = new StringBuilder();
+    private String[] labelNames = new String[8];
+    private String[] labelValues = new String[8];
+
+    public PrometheusParser(Filter filter) {
+        this(filter, new Interner());
+    }
+
+    /**
+     * @param interner The table of the interned strings, shared with the
+     * series names built by the caller.
+     */
+    PrometheusParser(Filter filter, Interner interner) {
+        this.filter = filter;
+        this.interner = interner;
+    }
+
+    public void parse(String text, SampleConsumer consumer) {
+        int length = text.length();
+        int position = 0;
+        while (position < length) {
+            int end = text.indexOf('\n', position);
+            if (end < 0) {
+                end = length;
+            }
+            parseLine(text, position, end, consumer);
+            position = end + 1;
+        }
+    }
+
+    private void parseLine(String text, int start, int end, SampleConsumer consumer) {
+        int i = skipSpaces(text, start, end);
+        if (i == end) {
+            return;
+        }
+        if (text.charAt(i) == '#') {
+            // # TYPE name type, the other comments are ignored.
+            i = skipSpaces(text, i + 1, end);
+            if (text.startsWith("TYPE", i)) {
+                int nameStart = skipSpaces(text, i + 4, end);
+                int nameEnd = nameEnd(text, nameStart, end);
+                int typeStart = skipSpaces(text, nameEnd, end);
+                int typeEnd = typeStart;
+                while (typeEnd < end && !Character.isWhitespace(text.charAt(typeEnd))) {
+                    typeEnd++;
+                }
+                types.put(interner.intern(text, nameStart, nameEnd), interner.intern(text, typeStart, typeEnd));
+            }
+            return;
+        }
+        int nameEnd = nameEnd(text, i, end);
+        if (nameEnd == i) {
+            return;
+        }
+        String name = interner.intern(text, i, nameEnd);
+        if (!filter.matchesName(name)) {
+            return;
+        }
+        String type = typeOf(name);
+        if (filter.type() != null && !filter.type().equals(type)) {
+            return;
+        }
+        i = nameEnd;
+        int labelCount = 0;
+        if (i < end && text.charAt(i) == '{') {
+            i++;
+            while (true) {
+                i = skipSpaces(text, i, end);
+                if (i >= end) {
+                    return;
+                }
+                if (text.charAt(i) == '}') {
+                    i++;
+                    break;
+                }
+                int labelEnd = nameEnd(text, i, end);
+                String label = interner.intern(text, i, labelEnd);
+                i = skipSpaces(text, labelEnd, end);
+                if (i >= end || text.charAt(i) != '=') {
+                    return;
+                }
+                i = skipSpaces(text, i + 1, end);
+                if (i >= end || text.charAt(i) != '"') {
+                    return;
+                }
+                i = parseQuoted(text, i + 1, end);
+                if (i < 0) {
+                    return;
+                }
+                if (labelCount == labelNames.length) {
+                    labelNames = Arrays.copyOf(labelNames, labelCount * 2);
+                    labelValues = Arrays.copyOf(labelValues, labelCount * 2);
+                }
+                labelNames[labelCount] = label;
+                labelValues[labelCount] = interner.intern(escaped, 0, escaped.length());
+                labelCount++;
+                i = skipSpaces(text, i, end);
+                if (i < end && text.charAt(i) == ',') {
+                    i++;
+                }
+            }
+        }
+        for (LabelMatcher matcher : filter.matchers()) {
+            String actual = null;
+            for (int l = 0; l < labelCount; l++) {
+                if (labelNames[l].equals(matcher.label())) {
+                    actual = labelValues[l];
+                    break;
+                }
+            }
+            if (!matcher.matches(actual)) {
+                return;
+            }
+        }
+        int valueStart = skipSpaces(text, i, end);
+        int valueEnd = valueStart;
+        while (valueEnd < end && !Character.isWhitespace(text.charAt(valueEnd))) {
+            valueEnd++;
+        }
+        if (valueStart == valueEnd) {
+            return;
+        }
+        double value;
+        try {
+            value = parseValue(text, valueStart, valueEnd);
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        consumer.accept(name, type, labelNames, labelValues, labelCount, value);
+    }
+
+    /**
+     * @param interner The table the series name is interned in.
+     * @param builder A buffer, cleared first.
+     * @return The interned name of the series of a sample, e.g.
+     * {@code name{label="value"}}.
+     */
+    static String series(Interner interner, StringBuilder builder, String name, String[] labelNames, String[] labelValues, int labelCount) {
+        builder.setLength(0);
+        builder.append(name);
+        if (labelCount > 0) {
+            builder.append('{');
+            for (int i = 0; i < labelCount; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(labelNames[i]).append("=\"").append(labelValues[i]).append('"');
+            }
+            builder.append('}');
+        }
+        return interner.intern(builder, 0, builder.length());
+    }
+
+    private String typeOf(String name) {
+        String type = types.get(name);
+        if (type != null) {
+            return type;
+        }
+        type = "untyped";
+        for (String suffix : SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                String family = types.get(name.substring(0, name.length() - suffix.length()));
+                if (family != null) {
+                    type = family;
+                    break;
+                }
+            }
+        }
+        // The next samples of the metric are resolved with a single lookup.
+        types.put(name, type);
+        return type;
+    }
+
+    /**
+     * Unescape a quoted label value into the escaped buffer.
+     *
+     * @return The position after the closing quote, -1 if the value is not
+     * terminated.
+     */
+    private int parseQuoted(String text, int i, int end) {
+        escaped.setLength(0);
+        while (i < end) {
+            char c = text.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i < end) {
+                char next = text.charAt(i++);
+                escaped.append(next == 'n' ? '\n' : next);
+            } else {
+                escaped.append(c);
+            }
+        }
+        return -1;
+    }
+
+    private static double parseValue(String text, int start, int end) {
+        if (text.startsWith("+Inf", start) && end - start == 4) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (text.startsWith("-Inf", start) && end - start == 4) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(text.substring(start, end));
+    }
+
+    private static int skipSpaces(String text, int i, int end) {
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t' || text.charAt(i) == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nameEnd(String text, int i, int end) {
+        while (i < end) {
+            char c = text.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == ':')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Table of interned strings, a lookup compares the characters in place.
+     * Not thread safe, a table is used by a single parser or sampled server.
+     * The table grows up to its maximum capacity, it is then cleared and the
+     * next strings are interned again.
+     */
+    static final class Interner {
+
+        private final int maxCapacity;
+        private String[] table;
+        private int size;
+
+        Interner() {
+            this(1 << 16);
+        }
+
+        /**
+         * @param maxCapacity The maximum number of slots, a power of two. At
+         * most half of the slots are used.
+         */
+        Interner(int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            this.table = new String[Math.min(64, maxCapacity)];
+        }
+
+        String intern(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            int mask = table.length - 1;
+            for (int slot = (hash ^ (hash >>> 16)) & mask;; slot = (slot + 1) & mask) {
+                String candidate = table[slot];
+                if (candidate == null) {
+                    String value = text.subSequence(start, end).toString();
+                    table[slot] = value;
+                    size++;
+                    if (size * 2 > table.length) {
+                        grow();
+                    }
+                    return value;
+                }
+                if (candidate.hashCode() == hash && equals(candidate, text, start, end)) {
+                    return candidate;
+                }
+            }
+        }
+
+        private void grow() {
+            if (table.length >= maxCapacity) {
+                // The strings of the next parsings are interned again.
+                Arrays.fill(table, null);
+                size = 0;
+                return;
+            }
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String value : old) {
+                if (value != null) {
+                    int hash = value.hashCode();
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = value;
+                }
+            }
+        }
+
+        private static boolean equals(String candidate, CharSequence text, int start, int end) {
+            if (candidate.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < candidate.length(); i++) {
+                if (candidate.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Cache of the responses of read-only management operations. Each cached
+ * operation has its own time to live. The entries of a server are invalidated
+ * as soon as a write operation is sent to this server.
+ *
+ * @author jdenise
+ */
+public class ResponseCache {
+
+    public record CacheStats(int size, long hits, long misses, long evictions, long invalidations) {
+
+    }
+
+    /**
+     * The generation of a server is incremented by each write operation. A
+     * response is only cached if no write happened during the read.
+     */
+    public record Ticket(String server, String key, long generation, long ttl) {
+
+    }
+
+    private record Entry(String server, ModelNode response, long expiresAt) {
+
+    }
+
+    private static final Map<String, Long> DEFAULT_TTLS = Map.of(
+            "read-resource", 5000L,
+            "read-children-names", 5000L,
+            "read-resource-description", 60000L,
+            "browse-content", 30000L);
+
+    private static final Set<String> READ_ONLY_OPERATIONS = Set.of("browse-content", "whoami", "query",
+            "resolve-expression", "resolve-internet-address", "validate-address", "validate-operation");
+
+    private final Map<String, Entry> entries;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<String, Long> ttls;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongSupplier clock;
+
+    public ResponseCache() {
+        this(Integer.getInteger("org.wildfly.mcp.cache.max.entries", 256), configuredTtls(), System::currentTimeMillis);
+    }
+
+    ResponseCache(int maxEntries, Map<String, Long> ttls, LongSupplier clock) {
+        this.ttls = ttls;
+        this.clock = clock;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static Map<String, Long> configuredTtls() {
+        Map<String, Long> ttls = new ConcurrentHashMap<>();
+        for (Map.Entry<String, Long> entry : DEFAULT_TTLS.entrySet()) {
+            ttls.put(entry.getKey(), Long.getLong("org.wildfly.mcp.cache.ttl." + entry.getKey(), entry.getValue()));
+        }
+        return ttls;
+    }
+
+    private static String key(Server server) {
+        return server.host + ":" + server.port;
+    }
+
+    /**
+     * @return true if the operation doesn't modify the server.
+     */
+    public static boolean isReadOnly(ModelNode op) {
+        String name = op.get("operation").asString();
+        if ("composite".equals(name)) {
+            for (ModelNode step : op.get("steps").asListOrEmpty()) {
+                if (!isReadOnly(step)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return name.startsWith("read-") || READ_ONLY_OPERATIONS.contains(name);
+    }
+
+    /**
+     * Check if an operation can be served from the cache.
+     *
+     * @return The ticket to use to cache the response once received, null if
+     * the operation is not cached.
+     */
+    public Ticket lookup(Server server, User user, ModelNode op) {
+        Long ttl = ttls.get(op.get("operation").asString());
+        if (ttl == null || ttl <= 0 || op.get("include-runtime").asBoolean(false)) {
+            return null;
+        }
+        String serverKey = key(server);
+        String key = (user == null || user.userName == null ? "" : user.userName + "@") + serverKey + op.toJSONString(true);
+        return new Ticket(serverKey, key, generation(serverKey).get(), ttl);
+    }
+
+    /**
+     * @return A copy of the cached response, null if not cached or expired.
+     */
+    public ModelNode get(Ticket ticket) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(ticket.key());
+            if (entry != null && entry.expiresAt() <= clock.getAsLong()) {
+                entries.remove(ticket.key());
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response().clone();
+    }
+
+    public void put(Ticket ticket, ModelNode response) {
+        if (!"success".equals(response.get("outcome").asStringOrNull())) {
+            return;
+        }
+        Entry entry = new Entry(ticket.server(), response.clone(), clock.getAsLong() + ticket.ttl());
+        lock.lock();
+        try {
+            // A write has been done since the read started, the response could be stale.
+            if (generation(ticket.server()).get() == ticket.generation()) {
+                entries.put(ticket.key(), entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidate the cached responses of the server. Called before a write
+     * operation is sent and once it completes.
+     */
+    public void invalidate(Server server) {
+        String serverKey = key(server);
+        lock.lock();
+        try {
+            generation(serverKey).incrementAndGet();
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().server().equals(serverKey)) {
+                    it.remove();
+                    invalidations.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AtomicLong generation(String server) {
+        return generations.computeIfAbsent(server, k -> new AtomicLong());
+    }
+
+    public CacheStats getStats() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return new CacheStats(size, hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scan the log lines for security related events: authentication failures,
+ * authorization denials, path traversal and injection attempts, TLS
+ * failures, Elytron warnings and errors. The lines are pushed one by one and
+ * matched against all the signatures at once, a signature is counted once per
+ * log record whatever the number of its lines (e.g. a stack trace) that
+ * match. The hits are aggregated per signature, source address, user and time
+ * window.
+ *
+ * @author jdenise
+ */
+public class SecurityScanner {
+
+    /**
+     * A signature of a security event.
+     *
+     * @param name The name of the signature.
+     * @param keywords Case insensitive keywords, a line containing one of the
+     * keywords is a hit.
+     * @param categories Logging categories, a record of one of the categories
+     * or of a sub category logged at WARN level or above is a hit.
+     * @param codes Message code prefixes, a record with one of the message
+     * codes logged at WARN level or above is a hit.
+     */
+    public record Signature(String name, List<String> keywords, List<String> categories, List<String> codes) {
+
+        public Signature(String name, List<String> keywords) {
+            this(name, keywords, List.of(), List.of());
+        }
+    }
+
+    public static final List<Signature> SIGNATURES = List.of(
+            new Signature("authentication-failure", List.of("authentication failed", "authentication failure", "login failed",
+                    "failed to authenticate", "invalid password", "bad credentials", "invalid credentials", "password verification failed",
+                    "failedloginexception", "authenticationexception", "user not found", "unknown user")),
+            new Signature("authorization-denied", List.of("permission check failed", "authorization failed", "access denied",
+                    "accessdeniedexception", "not authorized", "unauthorized", "forbidden", "wflyejb0364", "securityexception",
+                    "identity does not have required login permission")),
+            new Signature("path-traversal", List.of("../", "..\\", "..%2f", "..%5c", "%2e%2e", "%252e%252e", "/etc/passwd",
+                    "/etc/shadow", "web-inf/web.xml", "win.ini")),
+            new Signature("injection", List.of("${jndi:", "%24%7bjndi", "<script", "%3cscript", "union select", "union%20select",
+                    "' or '1'='1", "/bin/sh", "cmd.exe", "<!entity")),
+            new Signature("tls-failure", List.of("sslhandshakeexception", "handshake failure", "certificate_unknown", "unknown_ca",
+                    "bad_certificate", "certificate expired", "no cipher suites in common")),
+            new Signature("elytron", List.of(), List.of("org.wildfly.security"), List.of("ELY")));
+
+    private static final int MIN_RECORD_LEVEL = LogLineParser.rank("WARN");
+
+    private static final Pattern ADDRESS = Pattern.compile("\\b((?:\\d{1,3}\\.){3}\\d{1,3}|(?:[0-9a-fA-F]{1,4}:){7}[0-9a-fA-F]{1,4})\\b");
+    private static final Pattern USER = Pattern.compile(
+            "\\b(?:user(?:name)?|principal|identity|login)\\b['\"]?\\s*(?:[=:]|is)?\\s*['\"\\[]?([\\w.@\\\\-]+)", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_SAMPLE = 300;
+
+    private record Key(int signature, String source, String user, long window) {
+
+    }
+
+    private static final class Finding {
+
+        private final String sample;
+        private long count;
+        private LocalDateTime first;
+        private LocalDateTime last;
+
+        private Finding(String sample) {
+            this.sample = sample.length() > MAX_SAMPLE ? sample.substring(0, MAX_SAMPLE) + "..." : sample;
+        }
+    }
+
+    private static final KeywordMatcher MATCHER;
+
+    static {
+        List<List<String>> keywords = new ArrayList<>();
+        for (Signature signature : SIGNATURES) {
+            keywords.add(signature.keywords());
+        }
+        MATCHER = new KeywordMatcher(keywords);
+    }
+
+    private final long window;
+    private final int maxFindings;
+    private final Map<Key, Finding> findings = new HashMap<>();
+    private final long[] hits = new long[SIGNATURES.size()];
+    private final BitSet matches = new BitSet();
+    // The signatures already counted in the current record.
+    private final BitSet counted = new BitSet();
+    private String header;
+    private String parsedHeader;
+    private LogLineParser.Entry parsedEntry;
+    private LocalDateTime time;
+    private long lineCount;
+    private long dropped;
+
+    /**
+     * @param window The size of the time windows.
+     * @param maxFindings The maximum number of distinct findings, the next
+     * hits are only counted per signature.
+     */
+    public SecurityScanner(Duration window, int maxFindings) {
+        this.window = Math.max(1, window.toMillis());
+        this.maxFindings = maxFindings;
+    }
+
+    public void accept(String line) {
+        lineCount += 1;
+        boolean matched = MATCHER.match(line, matches);
+        if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+            // A record header, only parsed if the record contains a hit.
+            header = line;
+            counted.clear();
+            matched |= matchRecord(line);
+        }
+        if (!matched) {
+            return;
+        }
+        LogLineParser.Entry entry = parseHeader();
+        time = entry == null ? time : entry.time();
+        Matcher address = ADDRESS.matcher(line);
+        String source = address.find() ? address.group(1) : null;
+        Matcher user = USER.matcher(line);
+        String userName = user.find() ? user.group(1) : null;
+        long windowStart = time == null ? Long.MIN_VALUE : Math.floorDiv(time.toInstant(ZoneOffset.UTC).toEpochMilli(), window) * window;
+        for (int signature = matches.nextSetBit(0); signature >= 0; signature = matches.nextSetBit(signature + 1)) {
+            if (counted.get(signature)) {
+                continue;
+            }
+            counted.set(signature);
+            hits[signature] += 1;
+            Key key = new Key(signature, source, userName, windowStart);
+            Finding finding = findings.get(key);
+            if (finding == null) {
+                if (findings.size() == maxFindings) {
+                    dropped += 1;
+                    continue;
+                }
+                finding = new Finding(line);
+                findings.put(key, finding);
+            }
+            finding.count += 1;
+            if (finding.first == null) {
+                finding.first = time;
+            }
+            finding.last = time;
+        }
+    }
+
+    private LogLineParser.Entry parseHeader() {
+        if (header != parsedHeader) {
+            parsedEntry = header == null ? null : LogLineParser.parse(header);
+            parsedHeader = header;
+        }
+        return parsedEntry;
+    }
+
+    /**
+     * Match the category and the message code of a record header against the
+     * signatures, the header is only parsed if it contains one of them.
+     */
+    private boolean matchRecord(String line) {
+        boolean matched = false;
+        for (int i = 0; i < SIGNATURES.size(); i++) {
+            Signature signature = SIGNATURES.get(i);
+            if (!contains(line, signature)) {
+                continue;
+            }
+            LogLineParser.Entry entry = parseHeader();
+            if (entry == null || entry.levelRank() < MIN_RECORD_LEVEL) {
+                return matched;
+            }
+            for (String category : signature.categories()) {
+                if (entry.category().equals(category) || entry.category().startsWith(category + ".")) {
+                    matches.set(i);
+                }
+            }
+            for (String code : signature.codes()) {
+                if (entry.code() != null && entry.code().startsWith(code)) {
+                    matches.set(i);
+                }
+            }
+            matched |= matches.get(i);
+        }
+        return matched;
+    }
+
+    private static boolean contains(String line, Signature signature) {
+        for (String category : signature.categories()) {
+            if (line.contains(category)) {
+                return true;
+            }
+        }
+        for (String code : signature.codes()) {
+            if (line.contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return The number of hits of a signature.
+     */
+    public long getHits(String signature) {
+        for (int i = 0; i < SIGNATURES.size(); i++) {
+            if (SIGNATURES.get(i).name().equals(signature)) {
+                return hits[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown signature " + signature);
+    }
+
+    /**
+     * @param top The maximum number of findings.
+     * @return The hits per signature and the findings with the most hits.
+     */
+    public String format(int top) {
+        StringBuilder builder = new StringBuilder("Hits per signature:\n");
+        for (int i = 0; i < SIGNATURES.size(); i++) {
+            builder.append(hits[i]).append("\t").append(SIGNATURES.get(i).name()).append("\n");
+        }
+        List<Map.Entry<Key, Finding>> entries = new ArrayList<>(findings.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e2.getValue().count, e1.getValue().count));
+        builder.append("Findings (hits, signature, source, user, first, last, sample):\n");
+        for (int i = 0; i < Math.min(top, entries.size()); i++) {
+            Key key = entries.get(i).getKey();
+            Finding finding = entries.get(i).getValue();
+            builder.append(finding.count).append("\t").append(SIGNATURES.get(key.signature()).name())
+                    .append("\t").append(key.source() == null ? "-" : key.source())
+                    .append("\t").append(key.user() == null ? "-" : key.user())
+                    .append("\t").append(finding.first == null ? "-" : finding.first)
+                    .append("\t").append(finding.last == null ? "-" : finding.last)
+                    .append("\t").append(finding.sample).append("\n");
+        }
+        if (entries.size() > top) {
+            builder.append("(").append(entries.size() - top).append(" other findings)\n");
+        }
+        if (dropped > 0) {
+            builder.append("(").append(dropped).append(" hits not aggregated, more than ").append(maxFindings).append(" findings)\n");
+        }
+        return builder.toString();
+    }
+}
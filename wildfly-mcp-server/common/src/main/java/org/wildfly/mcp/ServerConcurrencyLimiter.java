@@ -0,0 +1,126 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bound the number of concurrent calls done to a given WildFly server, so a
+ * single overloaded server can't be hammered by many agents at the same time.
+ *
+ * @author jdenise
+ */
+public class ServerConcurrencyLimiter {
+
+    public static class ServerBusyException extends Exception {
+
+        ServerBusyException(String message) {
+            super(message);
+        }
+    }
+
+    public record ServerStats(String server, int maxConcurrentCalls, int inFlight, long acquired, long rejected,
+            double averageQueueTimeMs, double maxQueueTimeMs) {
+
+    }
+
+    private static final class Limit {
+
+        private final Semaphore permits;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queueTime = new LongAdder();
+        private final AtomicLong maxQueueTime = new AtomicLong();
+
+        private Limit(int maxConcurrentCalls) {
+            permits = new Semaphore(maxConcurrentCalls, true);
+        }
+    }
+
+    /**
+     * A permit to call a server, must be closed once the call is complete.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final Limit limit;
+        private boolean released;
+
+        private Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                limit.permits.release();
+            }
+        }
+    }
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private final int maxConcurrentCalls;
+    private final long queueTimeout;
+
+    public ServerConcurrencyLimiter() {
+        // A call holds a pooled connection, more concurrent calls than connections would queue in the pool.
+        this(Integer.getInteger("org.wildfly.mcp.server.max.concurrent.calls",
+                Integer.getInteger("org.wildfly.mcp.pool.max.per.server", 4)),
+                Long.getLong("org.wildfly.mcp.server.queue.timeout", 10000));
+    }
+
+    ServerConcurrencyLimiter(int maxConcurrentCalls, long queueTimeout) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.queueTimeout = queueTimeout;
+    }
+
+    private static String key(Server server) {
+        return server.host + ":" + server.port;
+    }
+
+    public Permit acquire(Server server) throws ServerBusyException, InterruptedException {
+        Limit limit = limits.computeIfAbsent(key(server), k -> new Limit(maxConcurrentCalls));
+        long start = System.nanoTime();
+        boolean acquired = limit.permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+        long waited = System.nanoTime() - start;
+        limit.queueTime.add(waited);
+        limit.maxQueueTime.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            limit.rejected.increment();
+            throw new ServerBusyException("Too many concurrent calls to the server " + server.host + ":" + server.port
+                    + " (limit is " + maxConcurrentCalls + "), retry later.");
+        }
+        limit.acquired.increment();
+        return new Permit(limit);
+    }
+
+    public <T> T call(Server server, Callable<T> call) throws Exception {
+        try (Permit permit = acquire(server)) {
+            return call.call();
+        }
+    }
+
+    public List<ServerStats> getStats() {
+        List<ServerStats> stats = new ArrayList<>();
+        for (Map.Entry<String, Limit> entry : limits.entrySet()) {
+            Limit limit = entry.getValue();
+            long acquired = limit.acquired.sum();
+            long attempts = acquired + limit.rejected.sum();
+            double average = attempts == 0 ? 0 : limit.queueTime.sum() / (double) attempts / 1_000_000;
+            stats.add(new ServerStats(entry.getKey(), maxConcurrentCalls,
+                    maxConcurrentCalls - limit.permits.availablePermits(), acquired, limit.rejected.sum(),
+                    average, limit.maxQueueTime.get() / 1_000_000.0));
+        }
+        return stats;
+    }
+}
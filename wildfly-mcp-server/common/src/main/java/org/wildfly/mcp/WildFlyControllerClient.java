@@ -12,10 +12,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import org.jboss.as.cli.CommandLineException;
-import org.jboss.as.controller.client.ModelControllerClient;
-import org.jboss.as.controller.client.ModelControllerClientConfiguration;
+import org.jboss.as.controller.client.Operation;
 import org.jboss.as.controller.client.OperationBuilder;
 import org.jboss.as.controller.client.OperationMessageHandler;
 import org.jboss.as.controller.client.OperationResponse;
@@ -26,7 +30,7 @@ import org.jboss.dmr.ModelNode;
  *
  * @author jdenise
  */
-public class WildFlyControllerClient {
+public class WildFlyControllerClient implements AutoCloseable {
 
     public static class Deployment {
 
@@ -199,6 +203,17 @@ public class WildFlyControllerClient {
         }
     }
 
+    public static class ReadMXBeanAttributeRequest extends ReadAttributeRequest {
+
+        ReadMXBeanAttributeRequest(Server server, User user, String type, String attribute) {
+            super(server, user, attribute);
+            address.add("core-service");
+            address.add("platform-mbean");
+            address.add("type");
+            address.add(type);
+        }
+    }
+
     public static class ReadServerStateRequest extends ReadAttributeRequest {
 
         ReadServerStateRequest(Server server, User user) {
@@ -222,6 +237,13 @@ public class WildFlyControllerClient {
         }
     }
 
+    public static class ReadRootResourceRequest extends ManagementRequest {
+
+        ReadRootResourceRequest(Server server, User user) {
+            super("read-resource", server, user);
+        }
+    }
+
     public static class ReadConfigAsXmlRequest extends ManagementRequest {
 
         ReadConfigAsXmlRequest(Server server, User user) {
@@ -243,6 +265,10 @@ public class WildFlyControllerClient {
         public int lines;
 
         GetLoggingFileRequest(Server server, String numLines, User user) {
+            this(server, numLines, user, "server.log");
+        }
+
+        GetLoggingFileRequest(Server server, String numLines, User user, String file) {
             super("read-log-file", server, user);
             if (numLines == null || numLines.isEmpty()) {
                 numLines = "200";
@@ -251,7 +277,7 @@ public class WildFlyControllerClient {
             address.add("subsystem");
             address.add("logging");
             address.add("log-file");
-            address.add("server.log");
+            address.add(file);
         }
 
         @Override
@@ -260,6 +286,84 @@ public class WildFlyControllerClient {
         }
     }
 
+    /**
+     * Read an attribute of a log file, e.g. its size.
+     */
+    public static class ReadLogFileAttributeRequest extends ReadAttributeRequest {
+
+        ReadLogFileAttributeRequest(Server server, User user, String attribute) {
+            this(server, user, "server.log", attribute);
+        }
+
+        ReadLogFileAttributeRequest(Server server, User user, String file, String attribute) {
+            super(server, user, attribute);
+            address.add("subsystem");
+            address.add("logging");
+            address.add("log-file");
+            address.add(file);
+        }
+    }
+
+    /**
+     * Read lines of the server log file, counted from the start of the file,
+     * or from its end for the last lines.
+     */
+    public static class ReadLogFileLinesRequest extends ManagementRequest {
+
+        public final int skip;
+        public final int lines;
+        public final boolean tail;
+
+        ReadLogFileLinesRequest(Server server, User user, int skip, int lines) {
+            this(server, user, "server.log", skip, lines);
+        }
+
+        ReadLogFileLinesRequest(Server server, User user, int skip, int lines, boolean tail) {
+            this(server, user, "server.log", skip, lines, tail);
+        }
+
+        ReadLogFileLinesRequest(Server server, User user, String file, int skip, int lines) {
+            this(server, user, file, skip, lines, false);
+        }
+
+        ReadLogFileLinesRequest(Server server, User user, String file, int skip, int lines, boolean tail) {
+            super("read-log-file", server, user);
+            this.skip = skip;
+            this.lines = lines;
+            this.tail = tail;
+            address.add("subsystem");
+            address.add("logging");
+            address.add("log-file");
+            address.add(file);
+        }
+
+        @Override
+        protected void addArguments(ModelNode op) {
+            op.get("skip").set(skip);
+            op.get("lines").set(lines);
+            op.get("tail").set(tail);
+        }
+    }
+
+    /**
+     * The log files of the logging subsystem, with their size and their last
+     * modification time.
+     */
+    public static class GetLogFilesRequest extends ManagementRequest {
+
+        GetLogFilesRequest(Server server, User user) {
+            super("read-children-resources", server, user);
+            address.add("subsystem");
+            address.add("logging");
+        }
+
+        @Override
+        protected void addArguments(ModelNode op) {
+            op.get("child-type").set("log-file");
+            op.get("include-runtime").set(true);
+        }
+    }
+
     public static class GetLoggersRequest extends ManagementRequest {
 
         GetLoggersRequest(Server server, User user) {
@@ -287,17 +391,30 @@ public class WildFlyControllerClient {
 
     static final Logger LOGGER = Logger.getLogger("org.wildfly.mcp.WildFlyManagementClient");
 
-    private ModelControllerClient buildController(Server server, User user) {
-        final ModelControllerClientConfiguration.Builder builder = new ModelControllerClientConfiguration.Builder()
-                .setHostName(server.host)
-                .setPort(Integer.parseInt(server.port));
-        if (user.userName != null) {
-            builder.setHandler(new ClientCallbackHandler(user.userName, user.userPassword));
-        }
-        return ModelControllerClient.Factory.create(builder.build());
+    private final ModelControllerClientPool pool;
+    private final ServerConcurrencyLimiter limiter;
+    private final CircuitBreakers breakers;
+    private final ResponseCache cache;
+    private final long operationTimeout;
+
+    public WildFlyControllerClient() {
+        this(new ServerConcurrencyLimiter(), new CircuitBreakers(), new ResponseCache());
     }
 
-    public ModelNode call(ManagementRequest request) throws Exception {
+    public WildFlyControllerClient(ServerConcurrencyLimiter limiter, CircuitBreakers breakers, ResponseCache cache) {
+        this(new ModelControllerClientPool(), limiter, breakers, cache, Long.getLong("org.wildfly.mcp.operation.timeout", 120000));
+    }
+
+    WildFlyControllerClient(ModelControllerClientPool pool, ServerConcurrencyLimiter limiter, CircuitBreakers breakers,
+            ResponseCache cache, long operationTimeout) {
+        this.pool = pool;
+        this.limiter = limiter;
+        this.breakers = breakers;
+        this.cache = cache;
+        this.operationTimeout = operationTimeout;
+    }
+
+    static ModelNode toOperation(ManagementRequest request) {
         ModelNode addr;
         if (request.address.isEmpty()) {
             addr = new ModelNode().setEmptyList();
@@ -306,34 +423,328 @@ public class WildFlyControllerClient {
         }
         ModelNode dmr = Operations.createOperation(request.operation, addr);
         request.addArguments(dmr);
-        ModelControllerClient client = buildController(request.server, request.user);
-        return client.execute(dmr);
+        return dmr;
+    }
+
+    public ModelNode call(ManagementRequest request) throws Exception {
+        return call(request.server, request.user, toOperation(request));
+    }
 
+    /**
+     * Execute the requests in a single composite operation. The requests must
+     * target the same server.
+     *
+     * @return The response of each request, in the order of the requests. Each
+     * response has the same structure as the response returned by
+     * {@link #call(ManagementRequest)}.
+     */
+    public List<ModelNode> callBatch(List<? extends ManagementRequest> requests) throws Exception {
+        if (requests.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ManagementRequest first = requests.get(0);
+        ModelNode composite = Operations.createCompositeOperation();
+        ModelNode steps = composite.get("steps");
+        for (ManagementRequest request : requests) {
+            if (!request.server.host.equals(first.server.host) || !request.server.port.equals(first.server.port)) {
+                throw new IllegalArgumentException("A batch of requests must target a single server");
+            }
+            steps.add(toOperation(request));
+        }
+        return splitCompositeResponse(call(first.server, first.user, composite), requests.size());
+    }
+
+    /**
+     * Execute the requests concurrently, each request is a separate
+     * operation. Unlike {@link #callBatch(List)}, the requests can target
+     * different servers and a slow response doesn't delay the other ones. The
+     * timeout covers the whole call, including the wait for the permits and
+     * the connections of the requests.
+     *
+     * @return The response of each request, in the order of the requests.
+     */
+    public List<ModelNode> callAll(List<? extends ManagementRequest> requests) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(operationTimeout);
+        List<CompletableFuture<ModelNode>> futures = new ArrayList<>(requests.size());
+        for (ManagementRequest request : requests) {
+            futures.add(callAsync(request));
+        }
+        List<ModelNode> responses = new ArrayList<>(requests.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    responses.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException ex) {
+                    ManagementRequest request = requests.get(i);
+                    futures.get(i).cancel(true);
+                    // Only the server that didn't answer in time is counted, the other requests are cancelled.
+                    TimeoutException timeout = new TimeoutException("The operation " + request.operation + " didn't complete in "
+                            + operationTimeout + "ms on the server " + request.server.host + ":" + request.server.port);
+                    breakers.onFailure(request.server, timeout);
+                    throw timeout;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            if (responses.size() < futures.size()) {
+                for (CompletableFuture<ModelNode> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return responses;
+    }
+
+    static List<ModelNode> splitCompositeResponse(ModelNode response, int size) {
+        List<ModelNode> responses = new ArrayList<>(size);
+        ModelNode result = response.get("result");
+        for (int i = 1; i <= size; i++) {
+            String step = "step-" + i;
+            if (result.isDefined() && result.has(step)) {
+                responses.add(result.get(step));
+            } else {
+                // The composite failed before the step was executed.
+                ModelNode failed = new ModelNode();
+                failed.get("outcome").set("failed");
+                failed.get("failure-description").set(response.get("failure-description"));
+                responses.add(failed);
+            }
+        }
+        return responses;
     }
 
     public ModelNode call(Server server, User user, ModelNode op) throws Exception {
-        ModelControllerClient client = buildController(server, user);
-        ModelNode mn = client.execute(op);
-        return mn;
+        CompletableFuture<ModelNode> future = callAsync(server, user, op);
+        try {
+            return future.get(operationTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            TimeoutException timeout = new TimeoutException("The operation " + op.get("operation").asString() + " didn't complete in "
+                    + operationTimeout + "ms on the server " + server.host + ":" + server.port);
+            breakers.onFailure(server, timeout);
+            throw timeout;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    public CompletableFuture<ModelNode> callAsync(ManagementRequest request) {
+        return callAsync(request.server, request.user, toOperation(request));
+    }
+
+    /**
+     * Execute the operation asynchronously. The calling thread blocks until
+     * a concurrency permit and a pooled connection are available (bounded by
+     * the limiter queue timeout and the pool borrow timeout), it doesn't wait
+     * for the response. The pooled connection is returned to the pool when
+     * the operation completes.
+     * Cancelling the returned future cancels the operation on the server.
+     * The responses of read-only operations can be served from the cache.
+     */
+    public CompletableFuture<ModelNode> callAsync(Server server, User user, ModelNode op) {
+        boolean readOnly = ResponseCache.isReadOnly(op);
+        ResponseCache.Ticket ticket = null;
+        if (readOnly) {
+            ticket = cache.lookup(server, user, op);
+            ModelNode cached = ticket == null ? null : cache.get(ticket);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        } else {
+            cache.invalidate(server);
+        }
+        ResponseCache.Ticket cacheTicket = ticket;
+        ServerConcurrencyLimiter.Permit permit;
+        ModelControllerClientPool.Lease lease;
+        try {
+            // Fail fast when the server is known to be unreachable, without waiting for a permit.
+            breakers.before(server);
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        try {
+            permit = limiter.acquire(server);
+        } catch (Exception ex) {
+            breakers.abandon(server);
+            return CompletableFuture.failedFuture(ex);
+        }
+        try {
+            lease = pool.borrow(server, user);
+        } catch (Exception ex) {
+            breakers.abandon(server);
+            permit.close();
+            return CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<ModelNode> operation;
+        try {
+            operation = lease.client().executeAsync(op, OperationMessageHandler.DISCARD);
+        } catch (RuntimeException ex) {
+            lease.invalidate();
+            lease.close();
+            breakers.onFailure(server, ex);
+            permit.close();
+            return CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<ModelNode> result = new CompletableFuture<>();
+        operation.whenComplete((response, failure) -> {
+            if (!readOnly) {
+                cache.invalidate(server);
+            }
+            if (failure == null) {
+                if (cacheTicket != null) {
+                    cache.put(cacheTicket, response);
+                }
+                lease.close();
+                breakers.onSuccess(server);
+                permit.close();
+                result.complete(response);
+            } else {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                if (cause instanceof IOException) {
+                    lease.invalidate();
+                }
+                lease.close();
+                breakers.onFailure(server, cause);
+                permit.close();
+                result.completeExceptionally(cause);
+            }
+        });
+        result.whenComplete((response, failure) -> {
+            if (result.isCancelled()) {
+                operation.cancel(true);
+            }
+        });
+        return result;
     }
+
+    /**
+     * Execute an operation whose response has attached streams. The pooled
+     * connection is held until the returned response is closed.
+     */
     public OperationResponse callOperation(Server server, User user, ModelNode op) throws Exception {
-        ModelControllerClient client = buildController(server, user);
-        OperationBuilder opBuilder = new OperationBuilder(op);
-        OperationResponse mn = client.executeOperation(opBuilder.build(), OperationMessageHandler.DISCARD);
-        return mn;
+        return callOperation(server, user, new OperationBuilder(op));
     }
+
+    public OperationResponse callOperation(ManagementRequest request) throws Exception {
+        return callOperation(request.server, request.user, toOperation(request));
+    }
+
     public OperationResponse callOperation(Server server, User user, ModelNode op, String deploymentPath) throws Exception {
-        ModelControllerClient client = buildController(server, user);
         OperationBuilder opBuilder = new OperationBuilder(op);
         opBuilder.addFileAsAttachment(new File(deploymentPath));
-        OperationResponse mn = client.executeOperation(opBuilder.build(), OperationMessageHandler.DISCARD);
-        return mn;
+        return callOperation(server, user, opBuilder);
+    }
+
+    private OperationResponse callOperation(Server server, User user, OperationBuilder opBuilder) throws Exception {
+        Operation operation = opBuilder.build();
+        boolean readOnly = ResponseCache.isReadOnly(operation.getOperation());
+        if (readOnly) {
+            return doCallOperation(server, user, operation);
+        }
+        cache.invalidate(server);
+        try {
+            return doCallOperation(server, user, operation);
+        } finally {
+            cache.invalidate(server);
+        }
+    }
+
+    /**
+     * The response of an operation executed on a pooled connection. The
+     * attached streams are read from the connection, the connection is
+     * returned to the pool when the response is closed.
+     */
+    private static final class LeasedOperationResponse implements OperationResponse {
+
+        private final OperationResponse response;
+        private final ModelControllerClientPool.Lease lease;
+        private final ServerConcurrencyLimiter.Permit permit;
+
+        private LeasedOperationResponse(OperationResponse response, ModelControllerClientPool.Lease lease,
+                ServerConcurrencyLimiter.Permit permit) {
+            this.response = response;
+            this.lease = lease;
+            this.permit = permit;
+        }
+
+        @Override
+        public ModelNode getResponseNode() {
+            return response.getResponseNode();
+        }
+
+        @Override
+        public List<StreamEntry> getInputStreams() {
+            return response.getInputStreams();
+        }
+
+        @Override
+        public StreamEntry getInputStream(String uuid) {
+            return response.getInputStream(uuid);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                response.close();
+            } finally {
+                lease.close();
+                permit.close();
+            }
+        }
     }
+
+    /**
+     * The returned response holds the pooled connection, it must be closed
+     * once its attached streams have been read.
+     */
+    private OperationResponse doCallOperation(Server server, User user, Operation operation) throws Exception {
+        breakers.before(server);
+        ServerConcurrencyLimiter.Permit permit;
+        ModelControllerClientPool.Lease lease;
+        try {
+            permit = limiter.acquire(server);
+        } catch (Exception ex) {
+            breakers.abandon(server);
+            throw ex;
+        }
+        try {
+            lease = pool.borrow(server, user);
+        } catch (Exception ex) {
+            breakers.abandon(server);
+            permit.close();
+            throw ex;
+        }
+        try {
+            OperationResponse response = lease.client().executeOperation(operation, OperationMessageHandler.DISCARD);
+            breakers.onSuccess(server);
+            return new LeasedOperationResponse(response, lease, permit);
+        } catch (Exception ex) {
+            if (ex instanceof IOException) {
+                lease.invalidate();
+            }
+            lease.close();
+            breakers.onFailure(server, ex);
+            permit.close();
+            throw ex;
+        }
+    }
+
     public WildFlyDMRStatus getStatus(Server server, User user) throws Exception {
-        String serverState = call(new ReadServerStateRequest(server, user)).get("result").asString();
-        String runningMode = call(new ReadRunningModeRequest(server, user)).get("result").asString();
-        List<ModelNode> deployments = call(new ReadDeploymentsStatusRequest(server, user)).get("result").asList();
-        List<ModelNode> bootErrors = call(new ReadBootErrorsRequest(server, user)).get("result").asList();
+        List<ModelNode> responses = callBatch(List.of(new ReadServerStateRequest(server, user),
+                new ReadRunningModeRequest(server, user),
+                new ReadDeploymentsStatusRequest(server, user),
+                new ReadBootErrorsRequest(server, user)));
+        String serverState = responses.get(0).get("result").asString();
+        String runningMode = responses.get(1).get("result").asString();
+        List<ModelNode> deployments = responses.get(2).get("result").asList();
+        List<ModelNode> bootErrors = responses.get(3).get("result").asList();
         return new WildFlyDMRStatus(serverState, runningMode, bootErrors, deployments);
     }
 
@@ -365,4 +776,9 @@ public class WildFlyControllerClient {
             throw new CommandLineException("Exception reading stream ", ex);
         }
     }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
 }
@@ -21,27 +21,40 @@ import io.quarkiverse.mcp.server.Tool;
 import io.quarkiverse.mcp.server.ToolArg;
 import io.quarkiverse.mcp.server.ToolResponse;
 import io.quarkus.rest.client.reactive.Url;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.event.Observes;
 import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.core.Response;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import org.apache.http.auth.AuthenticationException;
 import org.apache.http.conn.HttpHostConnectException;
-import org.jboss.as.cli.CommandContext;
-import org.jboss.as.cli.CommandContextFactory;
 import org.jboss.as.controller.client.OperationResponse;
 import org.jboss.dmr.ModelNode;
 import org.jboss.dmr.ModelType;
@@ -53,6 +66,8 @@ import org.wildfly.mcp.WildFlyControllerClient.GetLoggingFileRequest;
 import org.wildfly.mcp.WildFlyControllerClient.GetMemoryMXBean;
 import org.wildfly.mcp.WildFlyControllerClient.GetOperatingSystemMXBean;
 import org.wildfly.mcp.WildFlyControllerClient.GetRuntimeMXBean;
+import org.wildfly.mcp.WildFlyControllerClient.ReadMXBeanAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadRootResourceRequest;
 import org.wildfly.mcp.WildFlyControllerClient.RemoveLoggerRequest;
 import org.wildfly.mcp.WildFlyControllerClient.CheckDeploymentRequest;
 import org.jboss.as.cli.CommandLineException;
@@ -86,13 +101,60 @@ public class WildFlyMCPServer {
 
     }
 
-    WildFlyControllerClient wildflyClient = new WildFlyControllerClient();
+    public record Diagnostics(
+            List<ServerConcurrencyLimiter.ServerStats> concurrency,
+            List<CircuitBreakers.BreakerStats> circuitBreakers,
+            ResponseCache.CacheStats responseCache) {
+
+    }
+
+    ServerConcurrencyLimiter limiter = new ServerConcurrencyLimiter();
+    CircuitBreakers breakers = new CircuitBreakers();
+    ResponseCache responseCache = new ResponseCache();
+    WildFlyControllerClient wildflyClient = new WildFlyControllerClient(limiter, breakers, responseCache);
+    CLIOperationBuilder operations = new CLIOperationBuilder();
+    MetaModelCache metaModelCache = new MetaModelCache();
+    LogTailer logTailer = new LogTailer();
+    LogStore logStore = new LogStore(logTailer);
+    // A histogram and the cursor of the log file after its last line.
+    private record HistogramState(LogHistogram histogram, String logCursor) {
+
+    }
+    // The last histograms of the log files, per server and cursor, to update them incrementally.
+    private final Map<String, HistogramState> histograms = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HistogramState> eldest) {
+            return size() > 32;
+        }
+    });
     @RestClient
     WildFlyMetricsClient wildflyMetricsClient;
     @RestClient
     WildFlyHealthClient wildflyHealthClient;
+    // The previous value of the counters, per server, to compute their rates.
+    private final Map<String, CounterRates> counterRates = new ConcurrentHashMap<>();
+    // The server and JVM information that doesn't change until the server is restarted.
+    private final Map<String, ServerSnapshot> serverSnapshots = new ConcurrentHashMap<>();
+    MetricsHistory metricsHistory = new MetricsHistory();
+    MetricsStore metricsStore = new MetricsStore();
+    AnomalyDetector anomalyDetector = new AnomalyDetector();
+    MetricsSampler sampler = new MetricsSampler(wildflyClient, server -> callRest(server,
+            () -> wildflyMetricsClient.getMetrics("http://" + server.host + ":" + server.port + "/metrics")), metricsHistory, metricsStore, anomalyDetector);
+
+    void startSampler(@Observes StartupEvent event) {
+        sampler.start();
+    }
+
+    @PreDestroy
+    void close() {
+        sampler.close();
+        metricsStore.close();
+        // Release the pooled management connections.
+        wildflyClient.close();
+    }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getWildFlyServerConfiguration(
             @ToolArg(name = "host", required = false) String host,
@@ -100,11 +162,11 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         try {
             User user = new User();
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
             // This call, if done with the Monitor role, will be filtered. No sensitive information present.
-            ModelNode mn = ctx.buildRequest(":read-resource(recursive=true)");
+            ModelNode mn = operations.build(":read-resource(recursive=true)");
             ModelNode node = wildflyClient.call(server, user, mn);
             ModelNode result = node.get("result");
+            metaModelCache.setVersion(server, toServerInfo(result, new ServerInfo()));
             // enforce some cleanup
             result.remove("extension");
             result.remove("core-service");
@@ -118,6 +180,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "Retrieve the JSON of the metamodel for the provided resource path.")
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getWildFlyMetaModel(
             @ToolArg(name = "host", required = false) String host,
@@ -126,10 +189,11 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         try {
             User user = new User();
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
             // This call, if done with the Monitor role, will be filtered. No sensitive information present.
-            ModelNode mn = ctx.buildRequest(resourcePath + ":read-resource-description(recursive=false)");
-            ModelNode node = wildflyClient.call(server, user, mn);
+            ModelNode mn = operations.build(resourcePath + ":read-resource-description(recursive=false)");
+            // The descriptions only depend on the server version and the user, they are cached.
+            ModelNode node = metaModelCache.read(server, user, mn, () -> getServerInfo(server, user, new ServerInfo()),
+                    () -> wildflyClient.call(server, user, mn));
             ModelNode result = node.get("result");
             cleanupUndefined(result);
             return buildResponse(result.toJSONString(false));
@@ -139,6 +203,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getDeploymentFilePaths(
             @ToolArg(name = "host", required = false) String host,
@@ -147,9 +212,8 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         try {
             User user = new User();
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
             name = (name == null || name.isEmpty()) ? "ROOT.war" : name;
-            ModelNode mn = ctx.buildRequest("/deployment=" + name + ":browse-content");
+            ModelNode mn = operations.buildTemplate("/deployment=?:browse-content", name);
             ModelNode node = wildflyClient.call(server, user, mn);
             ModelNode result = node.get("result");
             return buildResponse(result.toJSONString(false));
@@ -159,6 +223,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getDeploymentFileContent(
             @ToolArg(name = "host", required = false) String host,
@@ -169,11 +234,12 @@ public class WildFlyMCPServer {
         try {
             User user = new User();
             name = (name == null || name.isEmpty()) ? "ROOT.war" : name;
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
             // This call, if done with the Monitor role, will be filtered. No sensitive information present.
-            ModelNode mn = ctx.buildRequest("/deployment=" + name + ":read-content(path=" + path + ")");
-            OperationResponse value = wildflyClient.callOperation(server, user, mn);
-            String content = getAttachment(value);
+            ModelNode mn = operations.buildTemplate("/deployment=?:read-content(path=?)", name, path);
+            String content;
+            try (OperationResponse value = wildflyClient.callOperation(server, user, mn)) {
+                content = getAttachment(value);
+            }
             return buildResponse(content);
         } catch (Exception ex) {
             return handleException(ex, server, "retrieving the logging categories");
@@ -202,6 +268,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse invokeWildFlyCLIOperation(
             @ToolArg(name = "host", required = false) String host,
@@ -210,8 +277,7 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         try {
             User user = new User();
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
-            ModelNode mn = ctx.buildRequest(operation);
+            ModelNode mn = operations.build(operation);
             // TODO, implement possible rules if needed to disallow some operations.
             String value = wildflyClient.call(server, user, mn).toJSONString(false);
             return buildResponse(value);
@@ -221,6 +287,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "Deploy an application to a running WildFly server. If the deployment already exists, it will be replaced.")
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse deployWildFlyApplication(
             @ToolArg(name = "host", required = false) String host,
@@ -238,14 +305,12 @@ public class WildFlyMCPServer {
             ModelNode checkDeployment = wildflyClient.call(new CheckDeploymentRequest(server, user, name));
             boolean isAlreadyDeployed = "success".equals(checkDeployment.get("outcome").asString());
             ModelNode response;
-            CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
-            String op = ((isAlreadyDeployed
-                    ? ":full-replace-deployment(name=" + name + ","
-                    : "/deployment=" + name + ":add(")
-                    + "content=[{input-stream-index=0}],enabled=true,runtime-name=") + runtimeName + ")";
-            ModelNode mn = ctx.buildRequest(op);
-            OperationResponse value = wildflyClient.callOperation(server, user, mn, deploymentPath);
-            response = value.getResponseNode();
+            ModelNode mn = isAlreadyDeployed
+                    ? operations.buildTemplate(":full-replace-deployment(name=?,content=[{input-stream-index=0}],enabled=true,runtime-name=?)", name, runtimeName)
+                    : operations.buildTemplate("/deployment=?:add(content=[{input-stream-index=0}],enabled=true,runtime-name=?)", name, runtimeName);
+            try (OperationResponse value = wildflyClient.callOperation(server, user, mn, deploymentPath)) {
+                response = value.getResponseNode();
+            }
             if ("success".equals(response.get("outcome").asString())) {
                 return buildResponse((isAlreadyDeployed
                         ? "Successfully replaced existing deployment: "
@@ -263,6 +328,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "Undeploy an application deployed to a running WildFly server.")
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse undeployWildFlyApplication(@ToolArg(name = "host", required = false) String host,
             @ToolArg(name = "port", required = false) String port,
@@ -284,6 +350,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "Provision a WildFly server or WildFly Bootable JAR by inspecting the content of a deployment. The deployment is then deployed to the server ready to be run.")
+    @RunOnVirtualThread
     ToolResponse provisionWildFlyServerForDeployment(@ToolArg(name = "deploymentPath", required = true, description = "Absolute path to an existing deployment") String deploymentPath,
             @ToolArg(name = "targetDirectory", required = true, description = "Absolute path to a non existing directory. Note that the parent directory must exists.") String targetDirectory,
             @ToolArg(name = "addOns", required = false, description = "A list of Glow AddOns to enable") String[] addOns,
@@ -334,6 +401,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "Stop a running server")
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse shutdownServer(@ToolArg(name = "host", required = false) String host,
             @ToolArg(name = "port", required = false) String port,
@@ -356,6 +424,7 @@ public class WildFlyMCPServer {
 
     @Tool(description = "List the WildFly add-ons (extra server features such as add-user.sh, jboss-cli.sh command lines, openAPI and more) "
             + "that could be added when provisioning a WildFly server for the provided deployment.")
+    @RunOnVirtualThread
     ToolResponse getWildFlyProvisioningAddOns(
             @ToolArg(name = "deploymentPath", required = true, description = "Absolute path to an existing deployment") String deploymentPath) {
         try {
@@ -393,6 +462,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool(description = "List all the logging categories one can enable in the WildFly server")
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse listAvailableLoggingCategories(
             @ToolArg(name = "host", required = false) String host,
@@ -413,6 +483,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse enableWildFlyLoggingCategory(
             @ToolArg(name = "host", required = false) String host,
@@ -445,6 +516,7 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse removeWildFlyLoggingCategory(
             @ToolArg(name = "host", required = false) String host,
@@ -474,41 +546,415 @@ public class WildFlyMCPServer {
     }
 
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getWildFlyLogFileContent(
             @ToolArg(name = "host", required = false) String host,
             @ToolArg(name = "port", required = false) String port,
-            @ToolArg(name = "numberOfLines", description = "200 by default, use `-1` for all lines.", required = false) String numLines,
-            @ToolArg(name = "onlyForLastServerStart", description = "True by default.", required = false) Boolean lastStart) {
+            @ToolArg(name = "numberOfLines", description = "200 by default, use `-1` for all lines, the lines are returned by pages "
+                    + "and the returned cursor gives the next page.", required = false) String numLines,
+            @ToolArg(name = "onlyForLastServerStart", description = "True by default.", required = false) Boolean lastStart,
+            @ToolArg(name = "cursor", description = "To follow the log file, use `start` to get the last lines and a cursor. "
+                    + "Then use the returned cursor to only get the lines written since the previous call.", required = false) String cursor,
+            @ToolArg(name = "compact", description = "Return the repeated log records and stack traces once, with their number of occurrences. "
+                    + "False by default.", required = false) Boolean compact) {
         Server server = new Server(host, port);
         try {
             User user = new User();
-            ModelNode response = wildflyClient.call(new GetLoggingFileRequest(server, numLines, user));
-            StringBuilder builder = new StringBuilder();
-            List<String> lst = new ArrayList<>();
+            if (cursor != null && !cursor.isEmpty()) {
+                LogTailer.Tail tail = "start".equals(cursor)
+                        ? logTailer.start(wildflyClient, server, user, numLines == null || numLines.isEmpty() ? 200 : Integer.parseInt(numLines))
+                        : logTailer.poll(wildflyClient, server, user, cursor);
+                return buildResponse(logContent(tail.lines(), compact), describe(tail));
+            }
+            if ("-1".equals(numLines)) {
+                // The whole file is never loaded, it is returned page by page.
+                LogTailer.Tail tail = logTailer.page(wildflyClient, server, user);
+                return buildResponse(logContent(tail.lines(), compact), describe(tail));
+            }
             lastStart = lastStart == null ? Boolean.TRUE : lastStart;
             if (lastStart && numLines == null) {
-                for (ModelNode line : response.get("result").asList()) {
-                    if (line.asString().contains("WFLYSRV0049")) {
-                        lst = new ArrayList<>();
+                // The server starts are indexed, the last lines since the last start are read with the header of the file.
+                LogTailer.Tail tail = logTailer.lastBoot(wildflyClient, server, user);
+                if (tail != null) {
+                    return buildResponse(logContent(tail.lines(), compact));
+                }
+            }
+            ModelNode response = wildflyClient.call(new GetLoggingFileRequest(server, numLines, user));
+            List<ModelNode> lines = response.get("result").asList();
+            return buildResponse(logContent(() -> lines.stream().map(ModelNode::asString).iterator(), compact));
+        } catch (Exception ex) {
+            return handleException(ex, server, "retrieving the log file ");
+        }
+    }
+
+    @Tool(description = "Search the log file of the WildFly server. The log records are filtered by the MCP server, "
+            + "only the matching records and their context lines are returned.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse searchWildFlyLog(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "pattern", description = "A regular expression searched in the log records.", required = false) String pattern,
+            @ToolArg(name = "level", description = "The minimum level of the log records: TRACE, DEBUG, INFO, WARN, ERROR or FATAL.", required = false) String level,
+            @ToolArg(name = "category", description = "The logging category of the log records, sub categories are included.", required = false) String category,
+            @ToolArg(name = "messageCode", description = "A message code or a message code prefix, e.g. WFLYSRV0025 or WFLYCTL.", required = false) String messageCode,
+            @ToolArg(name = "from", description = "Only the log records logged at or after this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String from,
+            @ToolArg(name = "to", description = "Only the log records logged at or before this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String to,
+            @ToolArg(name = "linesBefore", description = "Number of context lines before each matching record. 0 by default.", required = false) Integer linesBefore,
+            @ToolArg(name = "linesAfter", description = "Number of context lines after each matching record. 0 by default.", required = false) Integer linesAfter,
+            @ToolArg(name = "numberOfLines", description = "Number of lines searched from the end of the log file. 2000 by default, use `-1` for all lines.", required = false) String numLines,
+            @ToolArg(name = "maxMatches", description = "Maximum number of matching records. 100 by default.", required = false) Integer maxMatches,
+            @ToolArg(name = "logFiles", description = "Comma separated names of the log files to search, `*` matches any characters, "
+                    + "e.g. `server.log*` for the current and the rotated server log files. The log records of the files are merged in "
+                    + "timestamp order, numberOfLines applies to each file. server.log by default.", required = false) String logFiles) {
+        Server server = new Server(host, port);
+        try {
+            User user = new User();
+            LogSearch search = new LogSearch(new LogSearch.Criteria(
+                    pattern == null || pattern.isEmpty() ? null : Pattern.compile(pattern),
+                    level == null || level.isEmpty() ? null : level,
+                    category == null || category.isEmpty() ? null : category,
+                    messageCode == null || messageCode.isEmpty() ? null : messageCode,
+                    LogLineParser.parseTime(from),
+                    LogLineParser.parseTime(to),
+                    linesBefore == null ? 0 : linesBefore,
+                    linesAfter == null ? 0 : linesAfter,
+                    maxMatches == null ? 100 : maxMatches));
+            String searched = "";
+            if (logFiles != null && !logFiles.isEmpty()) {
+                List<LogFiles.LogFile> files = LogFiles.select(LogFiles.list(wildflyClient, server, user), logFiles);
+                if (files.isEmpty()) {
+                    return buildErrorResponse("No log file matches " + logFiles + ", use the getWildFlyLogFiles tool to list the log files.");
+                }
+                List<String> names = new ArrayList<>();
+                for (LogFiles.LogFile file : LogFiles.read(wildflyClient, server, user, files,
+                        numLines == null || numLines.isEmpty() ? 2000 : Integer.parseInt(numLines),
+                        LogLineParser.parseTime(from), LogLineParser.parseTime(to), search::accept, search::isTruncated)) {
+                    names.add(file.name());
+                }
+                searched = " of the log files " + String.join(", ", names);
+            } else if ("-1".equals(numLines)) {
+                logTailer.scan(wildflyClient, server, user, search::accept, search::isTruncated);
+            } else {
+                logTailer.last(wildflyClient, server, user, numLines == null || numLines.isEmpty() ? 2000 : Integer.parseInt(numLines),
+                        search::accept, search::isTruncated);
+            }
+            String content = search.finish();
+            return buildResponse("Found " + search.getMatches() + " matching log records in " + search.getLineCount() + " lines" + searched
+                    + (search.isTruncated() ? ", the search stopped after " + search.getMatches() + " matches" : "")
+                    + ". Matching lines: `" + content + "`");
+        } catch (Exception ex) {
+            return handleException(ex, server, "searching the log file ");
+        }
+    }
+
+    @Tool(description = "Count the log records of the WildFly server, optionally grouped by level, category, thread or message code "
+            + "and by time buckets. The log records are kept in memory by the MCP server, only the new log records are read from the server.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse queryWildFlyLog(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "level", description = "The minimum level of the log records: TRACE, DEBUG, INFO, WARN, ERROR or FATAL.", required = false) String level,
+            @ToolArg(name = "category", description = "The logging category of the log records, sub categories are included.", required = false) String category,
+            @ToolArg(name = "messageCode", description = "A message code or a message code prefix, e.g. WFLYSRV0025 or WFLYCTL.", required = false) String messageCode,
+            @ToolArg(name = "from", description = "Only the log records logged at or after this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String from,
+            @ToolArg(name = "to", description = "Only the log records logged at or before this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String to,
+            @ToolArg(name = "groupBy", description = "Group the log records by `level`, `category`, `thread` or `messageCode`.", required = false) String groupBy,
+            @ToolArg(name = "timeBucket", description = "Group the log records by time buckets of this size, e.g. `30s`, `5m`, `1h` or `1d`.", required = false) String timeBucket) {
+        Server server = new Server(host, port);
+        try {
+            User user = new User();
+            LogStore.Result result = logStore.query(wildflyClient, server, user, new LogStore.Query(
+                    LogLineParser.parseTime(from),
+                    LogLineParser.parseTime(to),
+                    level == null || level.isEmpty() ? null : level,
+                    category == null || category.isEmpty() ? null : category,
+                    messageCode == null || messageCode.isEmpty() ? null : messageCode,
+                    LogStore.GroupBy.of(groupBy),
+                    LogStore.parseBucket(timeBucket)));
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<LocalDateTime, Map<String, Long>> bucket : result.counts().entrySet()) {
+                List<Map.Entry<String, Long>> groups = new ArrayList<>(bucket.getValue().entrySet());
+                groups.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+                for (Map.Entry<String, Long> group : groups) {
+                    if (bucket.getKey() != null) {
+                        builder.append(bucket.getKey()).append("\t");
                     }
-                    lst.add(line.asString());
+                    if (group.getKey() != null) {
+                        builder.append(group.getKey()).append("\t");
+                    }
+                    builder.append(group.getValue()).append("\n");
                 }
-                for (String line : lst) {
-                    builder.append(line).append("\n");
+            }
+            return buildResponse(result.count() + " matching log records out of " + result.records() + " log records"
+                    + (builder.isEmpty() ? "." : ": `" + builder.toString() + "`"));
+        } catch (Exception ex) {
+            return handleException(ex, server, "querying the log records ");
+        }
+    }
+
+    @Tool(description = "Scan the log file of the WildFly server for security events: authentication failures, authorization denials, "
+            + "path traversal and injection attempts, TLS failures, Elytron warnings and errors. The hits are aggregated by the MCP server per signature, source address, "
+            + "user and time window, only the aggregated findings are returned.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse scanWildFlyLogSecurity(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "numberOfLines", description = "Number of lines scanned from the end of the log file. All the lines by default.", required = false) String numLines,
+            @ToolArg(name = "timeWindow", description = "The size of the time windows used to aggregate the hits, e.g. `1m`, `5m` or `1h`. 5m by default.", required = false) String timeWindow,
+            @ToolArg(name = "maxFindings", description = "Maximum number of returned findings. 50 by default.", required = false) Integer maxFindings,
+            @ToolArg(name = "logFiles", description = "Comma separated names of the log files to scan, `*` matches any characters. server.log by default.", required = false) String logFiles) {
+        Server server = new Server(host, port);
+        try {
+            User user = new User();
+            Duration window = LogStore.parseBucket(timeWindow);
+            SecurityScanner scanner = new SecurityScanner(window == null ? Duration.ofMinutes(5) : window,
+                    Integer.getInteger("org.wildfly.mcp.security.scan.max.findings", 10000));
+            boolean all = numLines == null || numLines.isEmpty() || "-1".equals(numLines);
+            if (logFiles != null && !logFiles.isEmpty()) {
+                List<LogFiles.LogFile> files = LogFiles.select(LogFiles.list(wildflyClient, server, user), logFiles);
+                if (files.isEmpty()) {
+                    return buildErrorResponse("No log file matches " + logFiles + ", use the getWildFlyLogFiles tool to list the log files.");
                 }
+                LogFiles.read(wildflyClient, server, user, files, all ? -1 : Integer.parseInt(numLines), null, null, scanner::accept);
+            } else if (all) {
+                logTailer.scan(wildflyClient, server, user, scanner::accept);
             } else {
-                for (ModelNode line : response.get("result").asList()) {
-                    builder.append(line.asString()).append("\n");
+                logTailer.last(wildflyClient, server, user, Integer.parseInt(numLines), scanner::accept);
+            }
+            return buildResponse("Scanned " + scanner.getLineCount() + " lines. " + scanner.format(maxFindings == null ? 50 : maxFindings));
+        } catch (Exception ex) {
+            return handleException(ex, server, "scanning the log file ");
+        }
+    }
+
+    @Tool(description = "List the log files of the WildFly server, including the rotated log files, with their size and last modification time.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse getWildFlyLogFiles(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port) {
+        Server server = new Server(host, port);
+        try {
+            User user = new User();
+            StringBuilder builder = new StringBuilder();
+            for (LogFiles.LogFile file : LogFiles.list(wildflyClient, server, user)) {
+                builder.append(file.name()).append("\t").append(file.size()).append(" bytes\t")
+                        .append(file.lastModified() == null ? "unknown" : file.lastModified().withNano(0)).append("\n");
+            }
+            return buildResponse("WildFly server log files (name, size, last modification time): `" + builder.toString() + "`");
+        } catch (Exception ex) {
+            return handleException(ex, server, "listing the log files ");
+        }
+    }
+
+    private static String selectMetrics(String metrics, PrometheusParser.Filter filter) {
+        StringBuilder builder = new StringBuilder("name\tlabels\ttype\tvalue\n");
+        int[] count = new int[1];
+        new PrometheusParser(filter).parse(metrics, (name, type, labelNames, labelValues, labelCount, value) -> {
+            builder.append(name).append('\t');
+            for (int i = 0; i < labelCount; i++) {
+                if (i > 0) {
+                    builder.append(',');
                 }
+                builder.append(labelNames[i]).append('=').append(labelValues[i]);
             }
-            return buildResponse("WildFly server log file Content: `" + builder.toString() + "`");
+            builder.append('\t').append(type).append('\t');
+            appendValue(builder, value).append('\n');
+            count[0]++;
+        });
+        return count[0] == 0 ? "No metric matches the filters." : builder.toString();
+    }
+
+    private String selectRates(Server server, String url, PrometheusParser.Filter filter) throws Exception {
+        CounterRates counters = counterRates.computeIfAbsent(server.host + ":" + server.port, k -> new CounterRates());
+        StringBuilder builder = new StringBuilder();
+        int[] counts = new int[2];
+        long nanos = System.nanoTime();
+        selectRates(callRest(server, () -> wildflyMetricsClient.getMetrics(url)), nanos, filter, counters, builder, counts);
+        if (counts[0] == 0) {
+            return "No counter matches the filters.";
+        }
+        if (counts[1] > 0) {
+            // Their value is recorded, the next call returns their rate.
+            builder.append(counts[1]).append(" counter(s) have no previous value, call again to get their increase and rate.\n");
+        }
+        return "name\tlabels\tvalue\tincrease\tper second\tseconds\n" + builder;
+    }
+
+    /**
+     * @param nanos The time of the scrape, the counters are only locked
+     * while the scraped metrics are parsed.
+     * @param counts Receives the number of selected counters and the number
+     * of counters without a previous value.
+     */
+    private static void selectRates(String metrics, long nanos, PrometheusParser.Filter filter, CounterRates counters, StringBuilder builder,
+            int[] counts) {
+        builder.setLength(0);
+        counts[0] = 0;
+        counts[1] = 0;
+        StringBuilder series = new StringBuilder();
+        double[] rate = new double[4];
+        PrometheusParser.Interner interner = new PrometheusParser.Interner();
+        counters.lock();
+        try {
+            new PrometheusParser(filter, interner).parse(metrics, (name, type, labelNames, labelValues, labelCount, value) -> {
+                if (!CounterRates.isCumulative(type, labelNames, labelCount)) {
+                    return;
+                }
+                counts[0]++;
+                builder.append(name).append('\t');
+                for (int i = 0; i < labelCount; i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(labelNames[i]).append('=').append(labelValues[i]);
+                }
+                builder.append('\t');
+                appendValue(builder, value).append('\t');
+                if (counters.update(PrometheusParser.series(interner, series, name, labelNames, labelValues, labelCount), value, nanos, rate)) {
+                    appendValue(builder, rate[CounterRates.DELTA]);
+                    if (rate[CounterRates.RESET] == 1) {
+                        builder.append(" (reset)");
+                    }
+                    builder.append('\t').append(Math.round(rate[CounterRates.RATE] * 1000) / 1000.0)
+                            .append('\t').append(Math.round(rate[CounterRates.SECONDS] * 10) / 10.0).append('\n');
+                } else {
+                    counts[1]++;
+                    builder.append("no previous value\t-\t-\n");
+                }
+            });
+        } finally {
+            counters.unlock();
+        }
+    }
+
+    private static StringBuilder appendValue(StringBuilder builder, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return builder.append((long) value);
+        }
+        return builder.append(value);
+    }
+
+    private static String formatHistory(List<MetricsHistory.Points> history) {
+        StringBuilder builder = new StringBuilder();
+        for (MetricsHistory.Points points : history) {
+            if (points.resolution() == 0) {
+                builder.append(points.series()).append(": ").append(points.size()).append(" samples\ntime\tvalue\n");
+                for (int i = 0; i < points.size(); i++) {
+                    builder.append(Instant.ofEpochMilli(points.times()[i])).append('\t');
+                    appendValue(builder, points.values()[i]).append('\n');
+                }
+            } else {
+                builder.append(points.series()).append(": ").append(points.size()).append(" buckets of ")
+                        .append(points.resolution() / 1000).append("s\nstart\tavg\tmin\tmax\tlast\tsamples\n");
+                for (int i = 0; i < points.size(); i++) {
+                    builder.append(Instant.ofEpochMilli(points.times()[i])).append('\t');
+                    appendValue(builder, points.values()[i]).append('\t');
+                    appendValue(builder, points.min()[i]).append('\t');
+                    appendValue(builder, points.max()[i]).append('\t');
+                    appendValue(builder, points.last()[i]).append('\t').append(points.counts()[i]).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String formatAnomalies(List<AnomalyDetector.Anomaly> anomalies) {
+        StringBuilder builder = new StringBuilder("metric\tkind\tscore\tvalue\texpected\tsince\n");
+        for (AnomalyDetector.Anomaly anomaly : anomalies) {
+            builder.append(anomaly.series()).append('\t').append(anomaly.kind()).append('\t')
+                    .append(Math.round(anomaly.score() * 10) / 10.0).append('\t');
+            boolean slope = anomaly.kind().equals("growth") || anomaly.kind().equals("decline");
+            appendValue(builder, anomaly.value()).append(slope ? "/s\t" : "\t");
+            appendValue(builder, anomaly.expected()).append(slope ? "/s\t" : "\t");
+            builder.append(Instant.ofEpochMilli(anomaly.since())).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Tool(description = "Count the log records of the WildFly server per level, message code, logging category and exception class. "
+            + "Returns ranked tables and a cursor to update the counts with the log records written after the call.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse getWildFlyLogHistogram(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "from", description = "Only the log records logged at or after this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String from,
+            @ToolArg(name = "to", description = "Only the log records logged at or before this time, format is `yyyy-MM-dd HH:mm:ss`.", required = false) String to,
+            @ToolArg(name = "top", description = "Number of entries per table. 20 by default.", required = false) Integer top,
+            @ToolArg(name = "cursor", description = "The cursor returned by a previous call, only the log records written since the previous call "
+                    + "are read and added to its counts.", required = false) String cursor) {
+        Server server = new Server(host, port);
+        try {
+            User user = new User();
+            LocalDateTime fromTime = LogLineParser.parseTime(from);
+            LocalDateTime toTime = LogLineParser.parseTime(to);
+            LogHistogram histogram;
+            String logCursor = null;
+            if (cursor != null && !cursor.isEmpty()) {
+                HistogramState previous = histograms.get(server.host + ":" + server.port + "/" + cursor);
+                if (previous == null) {
+                    return buildErrorResponse("Unknown cursor " + cursor + ", call the tool without a cursor to count all the log records.");
+                }
+                LogHistogram counted = previous.histogram();
+                if ((fromTime != null && !fromTime.equals(counted.getFrom())) || (toTime != null && !toTime.equals(counted.getTo()))) {
+                    return buildErrorResponse("The cursor counts the log records from " + (counted.getFrom() == null ? "the start" : counted.getFrom())
+                            + " to " + (counted.getTo() == null ? "the end" : counted.getTo())
+                            + ", call the tool without a cursor to count the log records of another time range.");
+                }
+                histogram = counted.copy();
+                logCursor = previous.logCursor();
+            } else {
+                histogram = new LogHistogram(fromTime, toTime);
+            }
+            String nextLogCursor = logTailer.follow(wildflyClient, server, user, logCursor, histogram::accept, histogram::reset);
+            // The same position of the log file can be reached by histograms of different time ranges.
+            String next = Base64.getUrlEncoder().withoutPadding().encodeToString((histogram.getFrom() + "/" + histogram.getTo()
+                    + "/" + nextLogCursor).getBytes(StandardCharsets.UTF_8));
+            histograms.put(server.host + ":" + server.port + "/" + next, new HistogramState(histogram, nextLogCursor));
+            return buildResponse("Histogram of " + histogram.getRecordCount() + " log records in " + histogram.getLineCount() + " lines:\n"
+                    + histogram.format(top == null ? 20 : top), "Cursor: " + next);
         } catch (Exception ex) {
-            return handleException(ex, server, "retrieving the log file ");
+            return handleException(ex, server, "counting the log records ");
         }
     }
 
+    private static String logContent(Iterable<String> lines, Boolean compact) {
+        if (Boolean.TRUE.equals(compact)) {
+            LogCompactor compactor = new LogCompactor();
+            lines.forEach(compactor::accept);
+            String content = compactor.finish();
+            return "WildFly server log file Content, " + compactor.getRecordCount() + " log records compacted into "
+                    + compactor.getEventCount() + " distinct events: `" + content + "`";
+        }
+        int size = 0;
+        for (String line : lines) {
+            size += line.length() + 1;
+        }
+        StringBuilder builder = new StringBuilder(size + 34).append("WildFly server log file Content: `");
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        return builder.append("`").toString();
+    }
+
+    private static String describe(LogTailer.Tail tail) {
+        StringBuilder builder = new StringBuilder();
+        if (tail.rotated()) {
+            builder.append("The log file has been rotated, the lines are read from the start of the new log file. ");
+        }
+        if (tail.more()) {
+            builder.append("More lines are available, call again with the cursor. ");
+        }
+        return builder.append("Cursor: ").append(tail.cursor()).toString();
+    }
+
     @Tool()
+    @RunOnVirtualThread
     @RolesAllowed("admin")
     ToolResponse getWildFlyServerAndJVMInfo(
             @ToolArg(name = "host", required = false) String host,
@@ -516,44 +962,75 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         User user = new User();
         try {
+            String key = server.host + ":" + server.port;
+            ServerSnapshot snapshot = serverSnapshots.get(key);
+            ModelNode uptime = null;
+            ModelNode cpu = null;
+            ModelNode load = null;
+            ModelNode heap = null;
+            if (snapshot != null) {
+                // Only the volatile values are read, the start time tells if the server has been restarted.
+                List<ModelNode> responses = wildflyClient.callBatch(List.of(
+                        new ReadMXBeanAttributeRequest(server, user, "runtime", "start-time"),
+                        new ReadMXBeanAttributeRequest(server, user, "runtime", "uptime"),
+                        new ReadMXBeanAttributeRequest(server, user, "operating-system", "process-cpu-load"),
+                        new ReadMXBeanAttributeRequest(server, user, "operating-system", "system-load-average"),
+                        new ReadMXBeanAttributeRequest(server, user, "memory", "heap-memory-usage")));
+                if (responses.get(0).get("result").asLong() == snapshot.startTime()) {
+                    uptime = responses.get(1).get("result");
+                    cpu = responses.get(2).get("result");
+                    load = responses.get(3).get("result");
+                    heap = responses.get(4).get("result");
+                } else {
+                    snapshot = null;
+                }
+            }
+            if (snapshot == null) {
+                List<ModelNode> responses = wildflyClient.callBatch(List.of(new GetRuntimeMXBean(server, user),
+                        new GetOperatingSystemMXBean(server, user),
+                        new GetMemoryMXBean(server, user),
+                        new ReadRootResourceRequest(server, user)));
+                ModelNode runtime = responses.get(0).get("result");
+                snapshot = new ServerSnapshot(runtime.get("start-time").asLong(), runtime, responses.get(3).get("result"));
+                serverSnapshots.put(key, snapshot);
+                // The server may have been restarted with another version.
+                metaModelCache.setVersion(server, toServerInfo(snapshot.root(), new ServerInfo()));
+                uptime = runtime.get("uptime");
+                ModelNode os = responses.get(1).get("result");
+                cpu = os.has("process-cpu-load") ? os.get("process-cpu-load") : new ModelNode();
+                load = os.get("system-load-average");
+                heap = responses.get(2).get("result").get("heap-memory-usage");
+            }
             VMInfo info = new VMInfo();
-            ModelNode response = wildflyClient.call(new GetRuntimeMXBean(server, user));
-            ModelNode result = response.get("result");
-            info.name = result.get("name").asString();
-            for (ModelNode a : result.get("input-arguments").asList()) {
+            ModelNode runtime = snapshot.runtime();
+            info.name = runtime.get("name").asString();
+            for (ModelNode a : runtime.get("input-arguments").asList()) {
                 info.inputArguments.add(a.asString());
             }
-            info.specName = result.get("spec-name").asString();
-            info.specVendor = result.get("spec-vendor").asString();
-            info.specVersion = result.get("spec-version").asString();
-            info.startTime = new Date(result.get("start-time").asLong()).toString();
-            info.upTime = (result.get("uptime").asLong() / 1000) + "seconds";
-            info.vmName = result.get("vm-name").asString();
-            info.vmVendor = result.get("vm-vendor").asString();
-            info.vmVersion = result.get("vm-version").asString();
-
-            response = wildflyClient.call(new GetOperatingSystemMXBean(server, user));
-            result = response.get("result");
-            if (result.has("process-cpu-load")) {
-                double val = result.get("process-cpu-load").asLong();
+            info.specName = runtime.get("spec-name").asString();
+            info.specVendor = runtime.get("spec-vendor").asString();
+            info.specVersion = runtime.get("spec-version").asString();
+            info.startTime = new Date(snapshot.startTime()).toString();
+            info.upTime = (uptime.asLong() / 1000) + "seconds";
+            info.vmName = runtime.get("vm-name").asString();
+            info.vmVendor = runtime.get("vm-vendor").asString();
+            info.vmVersion = runtime.get("vm-version").asString();
+
+            if (cpu.isDefined()) {
+                double val = cpu.asLong();
                 info.consumedCPU = "" + (int) val + "%";
             } else {
                 info.consumedCPU = "not available";
             }
-            response = wildflyClient.call(new GetOperatingSystemMXBean(server, user));
-            result = response.get("result");
-            double val = result.get("system-load-average").asLong();
+            double val = load.asLong();
             info.systemLoadAverage = "" + (int) val + "%";
 
-            response = wildflyClient.call(new GetMemoryMXBean(server, user));
-            result = response.get("result");
-            double max = result.get("heap-memory-usage").get("max").asLong();
-            double used = result.get("heap-memory-usage").get("used").asLong();
+            double max = heap.get("max").asLong();
+            double used = heap.get("used").asLong();
             double res = (used * 100) / max;
             info.consumedMemory = "" + (int) res + "%";
-            ServerInfo serverInfo = new ServerInfo();
+            ServerInfo serverInfo = toServerInfo(snapshot.root(), new ServerInfo());
             serverInfo.vmInfo = info;
-            serverInfo = getServerInfo(server, user, serverInfo);
             return buildResponse(toJson(serverInfo));
 
         } catch (Exception ex) {
@@ -561,27 +1038,54 @@ public class WildFlyMCPServer {
         }
     }
 
+    /**
+     * The results of the runtime MXBean and of the root resource of a
+     * server, they are only read again when its start time changes. The nodes
+     * are only read.
+     */
+    private record ServerSnapshot(long startTime, ModelNode runtime, ModelNode root) {
+
+    }
+
     ServerInfo getServerInfo(Server server, User user, ServerInfo serverInfo) throws Exception {
-        CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
-        ModelNode mn = ctx.buildRequest(":read-resource(recursive=false)");
-        ModelNode node = wildflyClient.call(server, user, mn);
-        ModelNode res2 = node.get("result");
-        serverInfo.nodeName = res2.get("name").asString();
-        serverInfo.productName = res2.get("product-name").asString();
-        serverInfo.productVersion = res2.get("product-version").asString();
-        serverInfo.coreVersion = res2.get("release-version").asString();
+        ModelNode node = wildflyClient.call(new ReadRootResourceRequest(server, user));
+        toServerInfo(node.get("result"), serverInfo);
+        metaModelCache.setVersion(server, serverInfo);
+        return serverInfo;
+    }
+
+    private static ServerInfo toServerInfo(ModelNode root, ServerInfo serverInfo) {
+        serverInfo.nodeName = root.get("name").asString();
+        serverInfo.productName = root.get("product-name").asString();
+        serverInfo.productVersion = root.get("product-version").asString();
+        serverInfo.coreVersion = root.get("release-version").asString();
         return serverInfo;
     }
 
     @Tool()
+    @RunOnVirtualThread
     ToolResponse getWildFlyPrometheusMetrics(
             @ToolArg(name = "host", required = false) String host,
-            @ToolArg(name = "port", required = false) String port) {
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "namePrefix", description = "Comma separated prefixes of the metric names to return, e.g. `base_memory,vendor_memoryPool`.", required = false) String namePrefix,
+            @ToolArg(name = "labels", description = "Comma separated label matchers of the metrics to return, e.g. `area=\"heap\",name=~\"G1.*\"`. "
+                    + "The operators are `=`, `!=`, `=~` and `!~`.", required = false) String labels,
+            @ToolArg(name = "type", description = "The type of the metrics to return: counter, gauge, histogram, summary or untyped.", required = false) String type,
+            @ToolArg(name = "rates", description = "Set to true to return the increase and the per second rate of the counters (and histogram and summary counts) "
+                    + "since the previous call, instead of their cumulative value.", required = false) Boolean rates) {
         Server server = new Server(host, port);
         try {
+            PrometheusParser.Filter filter = PrometheusParser.Filter.of(namePrefix, labels, type);
             String url = "http://" + server.host + ":" + server.port + "/metrics";
             try {
-                return buildResponse(wildflyMetricsClient.getMetrics(url));
+                if (Boolean.TRUE.equals(rates)) {
+                    return buildResponse(selectRates(server, url, filter));
+                }
+                String metrics = callRest(server, () -> wildflyMetricsClient.getMetrics(url));
+                if (filter.prefixes().isEmpty() && filter.matchers().isEmpty() && filter.type() == null) {
+                    return buildResponse(metrics);
+                }
+                return buildResponse(selectMetrics(metrics, filter));
             } catch (ClientWebApplicationException ex) {
                 if (ex.getResponse().getStatus() == 404) {
                     return buildResponse("The WildFly metrics are not available in the WildFly server running on " + server.host + ":" + server.port);
@@ -594,12 +1098,83 @@ public class WildFlyMCPServer {
         }
     }
 
+    @Tool(description = "Get the metrics recorded in the background for the WildFly server running on the provided host and port arguments: "
+            + "JVM heap and non heap memory, CPU and system load, and the configured metrics of the /metrics endpoint. "
+            + "Use it instead of calling the other tools repeatedly to follow the evolution of the server.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse getWildFlyMetricsHistory(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "metrics", description = "Comma separated prefixes of the recorded metrics to return, e.g. `jvm_memory_heap,os_`. "
+                    + "All the recorded metrics by default.", required = false) String metrics,
+            @ToolArg(name = "duration", description = "The period to return, ending now, e.g. `5m`, `1h`, `7d`. "
+                    + "All the recorded samples by default.", required = false) String duration,
+            @ToolArg(name = "maxPoints", description = "The maximum number of points per metric, 100 by default. "
+                    + "Over longer periods the samples are returned aggregated (average, min, max, last value) per time bucket.", required = false) Integer maxPoints) {
+        Server server = new Server(host, port);
+        try {
+            if (!sampler.isSampled(server)) {
+                return buildErrorResponse("The metrics of the WildFly server running on " + server.host + ":" + server.port
+                        + " are not recorded. Add the server to the org.wildfly.mcp.sampler.servers system property of the MCP server.");
+            }
+            Duration period = LogStore.parseBucket(duration);
+            long from = period == null ? Long.MIN_VALUE : System.currentTimeMillis() - period.toMillis();
+            List<String> prefixes = PrometheusParser.Filter.of(metrics, null, null).prefixes();
+            int points = maxPoints == null || maxPoints <= 0 ? 100 : maxPoints;
+            // The samples recorded before the start of the MCP server are read from disk.
+            List<MetricsHistory.Points> history = metricsStore.isEnabled() && from < metricsHistory.getStart(server)
+                    ? metricsStore.query(server, prefixes, from, Long.MAX_VALUE, points)
+                    : metricsHistory.query(server, prefixes, from, Long.MAX_VALUE, points);
+            if (history.isEmpty()) {
+                return buildResponse("No metric recorded yet.");
+            }
+            return buildResponse(formatHistory(history));
+        } catch (Exception ex) {
+            return handleException(ex, server, "retrieving the recorded metrics");
+        }
+    }
+
+    @Tool(description = "Get the recorded metrics of the WildFly server running on the provided host and port arguments "
+            + "whose last sample is abnormal: a spike or a drop compared to their recent level and to the same hour of the previous days, "
+            + "or a sustained growth or decline (e.g. a heap that keeps growing). "
+            + "The scores are the distances to the expected values in standard deviations. "
+            + "Use it instead of reading the metrics history to check if something looks abnormal.")
+    @RunOnVirtualThread
+    @RolesAllowed("admin")
+    ToolResponse getWildFlyMetricsAnomalies(
+            @ToolArg(name = "host", required = false) String host,
+            @ToolArg(name = "port", required = false) String port,
+            @ToolArg(name = "minScore", description = "The minimum score of the returned metrics. "
+                    + "The threshold of the MCP server (4 by default) is used by default.", required = false) Double minScore) {
+        Server server = new Server(host, port);
+        try {
+            if (!sampler.isSampled(server)) {
+                return buildErrorResponse("The metrics of the WildFly server running on " + server.host + ":" + server.port
+                        + " are not recorded. Add the server to the org.wildfly.mcp.sampler.servers system property of the MCP server.");
+            }
+            List<AnomalyDetector.Anomaly> anomalies = anomalyDetector.getAnomalies(server,
+                    minScore == null ? anomalyDetector.getThreshold() : minScore);
+            if (anomalies.isEmpty()) {
+                return buildResponse("No anomaly detected.");
+            }
+            return buildResponse(formatAnomalies(anomalies));
+        } catch (Exception ex) {
+            return handleException(ex, server, "retrieving the metrics anomalies");
+        }
+    }
+
+    private <T> T callRest(Server server, Callable<T> call) throws Exception {
+        return limiter.call(server, () -> breakers.call(server, call));
+    }
+
     String toJson(Object value) throws JsonProcessingException {
         ObjectWriter ow = new ObjectMapper().writer();
         return ow.writeValueAsString(value);
     }
 
     @Tool()
+    @RunOnVirtualThread
     ToolResponse getWildFlyServerAndDeploymentsStatus(
             @ToolArg(name = "host", required = false) String host,
             @ToolArg(name = "port", required = false) String port) {
@@ -608,7 +1183,7 @@ public class WildFlyMCPServer {
         try {
             String url = "http://" + server.host + ":" + server.port + "/health";
             try {
-                return buildResponse(wildflyHealthClient.getHealth(url));
+                return buildResponse(callRest(server, () -> wildflyHealthClient.getHealth(url)));
             } catch (ClientWebApplicationException ex) {
                 if (ex.getResponse().getStatus() == 404) {
                     User user = new User();
@@ -630,6 +1205,18 @@ public class WildFlyMCPServer {
         }
     }
 
+    @Tool(description = "Get the diagnostics of this MCP server: for each WildFly server, the concurrent calls limit, "
+            + "the number of calls in flight, the number of rejected calls, the time spent waiting for the limit "
+            + "and the state of the circuit breaker that fails fast when the server is not reachable. "
+            + "Also reports the hits and misses of the management responses cache.")
+    ToolResponse getWildFlyMCPServerDiagnostics() {
+        try {
+            return buildResponse(toJson(new Diagnostics(limiter.getStats(), breakers.getStats(), responseCache.getStats())));
+        } catch (Exception ex) {
+            return buildErrorResponse(ex.getMessage());
+        }
+    }
+
     @Prompt(name = "wildfly-server-prometheus-metrics-chart", description = "WildFly, prometheus metrics chart")
     PromptMessage prometheusMetricsChart(@PromptArg(name = "host",
             description = "Optional WildFly server host name. By default localhost is used.",
@@ -658,7 +1245,8 @@ public class WildFlyMCPServer {
         Server server = new Server(host, port);
         String additionalCategories = (arg == null || arg.isEmpty()) ? "" : " " + arg;
         return PromptMessage.withUserRole(new TextContent("Using available tools, enable the org.wildfly.security" + additionalCategories + " logging categories of the Wildfly server running on host " + server.host + ", port " + server.port
-                + ". Then wait 10 seconds. Finally get the server log file, analyze it and report issues related to authentication failures."));
+                + ". Then wait 10 seconds. Finally scan the server log file for security events, analyze the findings and report issues related to authentication failures "
+                + "and potential attacks. Only retrieve the log lines around a finding if more details are needed."));
     }
 
     @Prompt(name = "wildfly-server-resources-consumption", description = "WildFly and JVM resource consumption status. Analyze the consumed resources.")
@@ -694,7 +1282,8 @@ public class WildFlyMCPServer {
                     required = false) String port) {
         Server server = new Server(host, port);
         return PromptMessage.withUserRole(new TextContent("Get the JVM memory consumption from the Wildfly server running on host " + server.host + ", port " + server.port
-                + ". You will repeat the invocation 3 times, being sure to wait 5 seconds between each invocation. "
+                + ". If its metrics are recorded, retrieve the recorded jvm_memory_heap metrics of the last 5 minutes in a single invocation. "
+                + "Otherwise, you will repeat the invocation 3 times, being sure to wait 5 seconds between each invocation. "
                 + "After all the 3 invocation have been completed you will organize the data in a table. "
                 + "Then you will use this table to create a graph to visually compare the data. "
                 + "Use the time in X axis, and mem consumption in Y axis"));
@@ -729,8 +1318,8 @@ public class WildFlyMCPServer {
                     description = "Optional WildFly server port. By default 9990 is used.",
                     required = false) String port) {
         Server server = new Server(host, port);
-        return PromptMessage.withUserRole(new TextContent("Retrieve the server log of the Wildfly server running on host " + server.host + ", port " + server.port + ". "
-                + "If you see lines containing ERROR, analyze the error and report the findings. If you don't see lines with ERROR, reply that the log file doesn't contain any errors."));
+        return PromptMessage.withUserRole(new TextContent("Search the server log of the Wildfly server running on host " + server.host + ", port " + server.port + " for the log records with the ERROR level, "
+                + "with 5 lines of context after each record. If errors are found, analyze the errors and report the findings. If no errors are found, reply that the log file doesn't contain any errors."));
     }
 
     @Prompt(name = "wildfly-server-log-analyzer", description = "WildFly server, analyze the log file.")
@@ -741,7 +1330,8 @@ public class WildFlyMCPServer {
                     description = "Optional WildFly server port. By default 9990 is used.",
                     required = false) String port) {
         Server server = new Server(host, port);
-        return PromptMessage.withUserRole(new TextContent("Retrieve the server log of the Wildfly server running on host " + server.host + ", port " + server.port + ". "
+        return PromptMessage.withUserRole(new TextContent("Count the log records of the Wildfly server running on host " + server.host + ", port " + server.port + " grouped by level, "
+                + "then the WARN log records grouped by message code, to get an overview of the log file. Then retrieve the server log. "
                 + "If you see lines containing ERROR or WARN, analyze the error and report the findings. If you don't see lines with ERROR nor WARN, provide a short summary of what the traces contain."));
     }
 
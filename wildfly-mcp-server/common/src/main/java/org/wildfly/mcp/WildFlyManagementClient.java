@@ -10,7 +10,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.ws.rs.ForbiddenException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,10 +29,7 @@ import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.jboss.as.cli.CommandFormatException;
 import org.jboss.as.cli.Util;
-import org.jboss.as.cli.operation.OperationFormatException;
-import org.jboss.as.cli.operation.OperationRequestAddress;
 import org.jboss.as.cli.operation.ParsedCommandLine;
-import org.jboss.as.cli.parsing.operation.OperationFormat;
 import org.jboss.dmr.ModelNode;
 
 /**
@@ -298,46 +294,13 @@ public class WildFlyManagementClient {
         }
     }
     
+    /**
+     * The argument values must be DMR values, they are not parsed as the CLI
+     * does.
+     */
     public static String toJSON(ParsedCommandLine parsedLine)
             throws CommandFormatException {
-        if (parsedLine.getFormat() != OperationFormat.INSTANCE) {
-            throw new OperationFormatException("The line does not follow the operation request format");
-        }
-        ModelNode request = new ModelNode();
-        ModelNode addressNode = request.get(Util.ADDRESS);
-        if (parsedLine.getAddress().isEmpty()) {
-            addressNode.setEmptyList();
-        } else {
-            Iterator<OperationRequestAddress.Node> iterator = parsedLine.getAddress().iterator();
-            while (iterator.hasNext()) {
-                OperationRequestAddress.Node node = iterator.next();
-                if (node.getName() != null) {
-                    addressNode.add(node.getType(), node.getName());
-                } else if (iterator.hasNext()) {
-                    throw new OperationFormatException(
-                            "The node name is not specified for type '"
-                            + node.getType() + "'");
-                }
-            }
-        }
-        
-        final String operationName = parsedLine.getOperationName();
-        if (operationName == null || operationName.isEmpty()) {
-            throw new OperationFormatException("The operation name is missing or the format of the operation request is wrong.");
-        }
-        request.get(Util.OPERATION).set(operationName);
-        for (String propName : parsedLine.getPropertyNames()) {
-            String value = parsedLine.getPropertyValue(propName);
-            if (propName == null || propName.trim().isEmpty()) {
-                throw new OperationFormatException("The argument name is not specified: '" + propName + "'");
-            }
-            if (value == null || value.trim().isEmpty()) {
-                throw new OperationFormatException("The argument value is not specified for " + propName + ": '" + value + "'");
-            }
-            final ModelNode toSet = ModelNode.fromString(value);
-            request.get(propName).set(toSet);
-        }
-        return request.toJSONString(false);
+        return CLIOperationBuilder.toOperation(parsedLine, false).toJSONString(false);
     }
 
     public WildFlyStatus getStatus(Server server, User user) throws Exception {
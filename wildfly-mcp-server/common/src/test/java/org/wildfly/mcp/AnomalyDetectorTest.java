@@ -0,0 +1,95 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AnomalyDetectorTest {
+
+    private static final Server SERVER = new Server("localhost", "9990");
+    private static final long START = 1749999600000L;
+
+    private static void record(AnomalyDetector detector, long time, double cpu, double heap, double requests) {
+        detector.record(SERVER, time, List.of("os_process_cpu_load", "jvm_memory_heap_used_bytes", "requests_total"),
+                new double[]{cpu, heap, requests}, new boolean[]{false, false, true}, 3);
+    }
+
+    @Test
+    public void testSpike() {
+        AnomalyDetector detector = new AnomalyDetector(0.05, 0.005, 30, 4, 100);
+        long time = START;
+        for (int i = 0; i < 100; i++) {
+            time += 5000;
+            record(detector, time, 0.1 + (i % 2) * 0.02, 1000 + (i % 3) * 10, i * 1000);
+            assertTrue(detector.getAnomalies(SERVER, 4).isEmpty());
+        }
+        // The scores below the threshold are kept, the counter is not scored.
+        List<AnomalyDetector.Anomaly> scored = detector.getAnomalies(SERVER, 0);
+        assertEquals(2, scored.size());
+        assertTrue(scored.get(0).score() < 4);
+        assertEquals(time, scored.get(0).since());
+        long spike = time + 5000;
+        record(detector, spike, 0.9, 1010, 1e9);
+        List<AnomalyDetector.Anomaly> anomalies = detector.getAnomalies(SERVER, 4);
+        assertEquals(1, anomalies.size());
+        AnomalyDetector.Anomaly anomaly = anomalies.get(0);
+        assertEquals("os_process_cpu_load", anomaly.series());
+        assertEquals("spike", anomaly.kind());
+        assertEquals(0.9, anomaly.value());
+        assertEquals(0.11, anomaly.expected(), 0.01);
+        assertTrue(anomaly.score() > 4);
+        assertEquals(spike, anomaly.since());
+        assertTrue(detector.getAnomalies(SERVER, 1000).isEmpty());
+
+        // The anomaly is reported while it lasts.
+        record(detector, spike + 5000, 0.9, 1010, 1e9);
+        assertEquals(spike, detector.getAnomalies(SERVER, 4).get(0).since());
+        record(detector, spike + 10000, 0.1, 1010, 1e9);
+        assertTrue(detector.getAnomalies(SERVER, 4).isEmpty());
+    }
+
+    @Test
+    public void testGrowth() {
+        AnomalyDetector detector = new AnomalyDetector(0.05, 0.005, 30, 4, 100);
+        long time = START;
+        // A heap that grows by 100 bytes per second, collected every minute, but not completely.
+        double heap = 1000;
+        for (int i = 1; i <= 1000; i++) {
+            time += 5000;
+            heap = i % 12 == 0 ? heap - 5000 : heap + 500;
+            record(detector, time, 0.1, heap, 0);
+        }
+        List<AnomalyDetector.Anomaly> anomalies = detector.getAnomalies(SERVER, 4);
+        assertEquals(1, anomalies.size());
+        AnomalyDetector.Anomaly anomaly = anomalies.get(0);
+        assertEquals("jvm_memory_heap_used_bytes", anomaly.series());
+        assertEquals("growth", anomaly.kind());
+        assertEquals(8.3, anomaly.value(), 2);
+    }
+
+    @Test
+    public void testSeasonal() {
+        AnomalyDetector detector = new AnomalyDetector(0.05, 0.005, 30, 4, 100);
+        long time = START;
+        // A load 10 times higher every day from 10:00 to 11:00.
+        int spikes = 0;
+        for (int day = 0; day < 3; day++) {
+            for (int minute = 0; minute < 24 * 60; minute++) {
+                time = START + day * 86400000L + minute * 60000L;
+                boolean busy = time % 86400000L >= 36000000L && time % 86400000L < 39600000L;
+                record(detector, time, (busy ? 1 : 0.1) + (minute % 2) * 0.01, 1000, 0);
+                if (!detector.getAnomalies(SERVER, 4).isEmpty() && time % 86400000L == 36000000L) {
+                    spikes++;
+                }
+            }
+        }
+        // Only the first day is a spike.
+        assertEquals(1, spikes);
+    }
+}
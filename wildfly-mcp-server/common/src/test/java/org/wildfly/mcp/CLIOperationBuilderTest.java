@@ -0,0 +1,104 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.jboss.as.cli.CommandContext;
+import org.jboss.as.cli.CommandContextFactory;
+import org.jboss.as.cli.CommandFormatException;
+import org.jboss.as.cli.operation.impl.DefaultCallbackHandler;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.Test;
+
+public class CLIOperationBuilderTest {
+
+    @Test
+    public void testSameOperationsAsCLI() throws Exception {
+        CLIOperationBuilder builder = new CLIOperationBuilder(10);
+        String[] requests = {":read-resource(recursive=true)",
+            "/subsystem=logging:read-resource-description(recursive=false)",
+            "/deployment=ROOT.war:read-content(path=WEB-INF/web.xml)",
+            "/deployment=foo.war:add(content=[{input-stream-index=0}],enabled=true,runtime-name=foo.war)",
+            ":write-attribute(name=foo,value=\"a b\")",
+            ":reload{allow-resource-service-restart=true}",
+            "read-attribute server-state"};
+        CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
+        try {
+            for (String request : requests) {
+                assertEquals(ctx.buildRequest(request), builder.build(request), request);
+            }
+        } finally {
+            ctx.terminateSession();
+        }
+    }
+
+    @Test
+    public void testToJSONOnlyAcceptsDMRValues() throws Exception {
+        CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
+        try {
+            String request = "/subsystem=logging/logger=org.foo:add(level=\"DEBUG\",handlers=[\"CONSOLE\"])";
+            assertEquals(ctx.buildRequest(request).toJSONString(false), WildFlyManagementClient.toJSON(parse(request)));
+            // Values that are not DMR values are only accepted by the CLI and the builder.
+            request = "/subsystem=logging/logger=org.foo:add(level=DEBUG,handlers=[CONSOLE])";
+            DefaultCallbackHandler parsedLine = parse(request);
+            assertThrows(IllegalArgumentException.class, () -> WildFlyManagementClient.toJSON(parsedLine));
+            assertEquals(ctx.buildRequest(request), new CLIOperationBuilder(10).build(request));
+        } finally {
+            ctx.terminateSession();
+        }
+    }
+
+    private static DefaultCallbackHandler parse(String request) throws CommandFormatException {
+        DefaultCallbackHandler parsedLine = new DefaultCallbackHandler(false);
+        parsedLine.parse(null, request, null);
+        return parsedLine;
+    }
+
+    @Test
+    public void testPlaceholders() throws Exception {
+        CLIOperationBuilder builder = new CLIOperationBuilder(10);
+        ModelNode op = builder.buildTemplate("/deployment=?:read-content(path=?)", "my app.war", "WEB-INF/a,b=c.xml");
+        assertEquals("my app.war", op.get("address").get(0).get("deployment").asString());
+        assertEquals("read-content", op.get("operation").asString());
+        assertEquals("WEB-INF/a,b=c.xml", op.get("path").asString());
+        // The cached template is not modified
+        op = builder.buildTemplate("/deployment=?:read-content(path=?)", "ROOT.war", "index.html");
+        assertEquals("ROOT.war", op.get("address").get(0).get("deployment").asString());
+        assertEquals("index.html", op.get("path").asString());
+        assertEquals(1, builder.getMisses());
+        assertEquals(1, builder.getHits());
+        assertThrows(CommandFormatException.class, () -> builder.buildTemplate("/deployment=?:browse-content"));
+    }
+
+    @Test
+    public void testNoPlaceholdersInRequests() throws Exception {
+        CLIOperationBuilder builder = new CLIOperationBuilder(10);
+        // A ? in a request provided by a user is a plain value.
+        ModelNode op = builder.build(":write-attribute(name=foo,value=?)");
+        assertEquals("?", op.get("value").asString());
+        op = builder.build("/subsystem=logging/logger=?:read-resource-description(recursive=false)");
+        assertEquals("?", op.get("address").get(1).get("logger").asString());
+        // The same request as a template.
+        op = builder.buildTemplate("/subsystem=logging/logger=?:read-resource-description(recursive=false)", "org.foo");
+        assertEquals("org.foo", op.get("address").get(1).get("logger").asString());
+        assertEquals("?", builder.build("/subsystem=logging/logger=?:read-resource-description(recursive=false)")
+                .get("address").get(1).get("logger").asString());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        CLIOperationBuilder builder = new CLIOperationBuilder(2);
+        builder.build(":read-resource");
+        builder.build(":whoami");
+        builder.build(":read-resource");
+        builder.build(":read-config-as-xml");
+        builder.build(":read-resource");
+        assertEquals(2, builder.getHits());
+        builder.build(":whoami");
+        assertEquals(4, builder.getMisses());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakersTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreakers breakers = new CircuitBreakers(3, 30000, now::get);
+
+    private void fail() {
+        assertThrows(ConnectException.class, () -> breakers.call(server, () -> {
+            throw new ConnectException("Connection refused");
+        }));
+    }
+
+    @Test
+    public void testOpenAfterConnectionFailures() throws Exception {
+        fail();
+        fail();
+        assertEquals(CircuitBreakers.State.CLOSED, breakers.getStats().get(0).state());
+        fail();
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getStats().get(0).state());
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(CircuitBreakers.CircuitOpenException.class, () -> breakers.call(server, calls::incrementAndGet));
+        assertEquals(0, calls.get());
+        assertEquals(1, breakers.getStats().get(0).rejectedCalls());
+        // Other servers are not impacted
+        assertEquals(1, breakers.call(new Server("localhost", "10090"), () -> 1));
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws Exception {
+        fail();
+        fail();
+        fail();
+        now.addAndGet(30000);
+        // A single probe is let through
+        breakers.before(server);
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breakers.getStats().get(0).state());
+        assertThrows(CircuitBreakers.CircuitOpenException.class, () -> breakers.before(server));
+        // A failed probe re-opens the circuit
+        breakers.onFailure(server, new ConnectException("Connection refused"));
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getStats().get(0).state());
+        now.addAndGet(30000);
+        assertEquals("ok", breakers.call(server, () -> "ok"));
+        assertEquals(CircuitBreakers.State.CLOSED, breakers.getStats().get(0).state());
+        assertEquals(0, breakers.getStats().get(0).consecutiveFailures());
+    }
+
+    @Test
+    public void testTimedOutProbe() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(TimeoutException.class, () -> breakers.call(server, () -> {
+                throw new TimeoutException("The operation read-attribute didn't complete in 30000ms");
+            }));
+        }
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getStats().get(0).state());
+        now.addAndGet(30000);
+        breakers.before(server);
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breakers.getStats().get(0).state());
+        // The probe that timed out is cancelled, the cancellation is not counted.
+        breakers.onFailure(server, new CancellationException());
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breakers.getStats().get(0).state());
+        assertFalse(CircuitBreakers.isConnectionFailure(new CancellationException()));
+        // The timeout of the probe is counted, the server still hangs.
+        breakers.onFailure(server, new TimeoutException("The operation read-attribute didn't complete in 30000ms"));
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getStats().get(0).state());
+        assertThrows(CircuitBreakers.CircuitOpenException.class, () -> breakers.before(server));
+    }
+
+    @Test
+    public void testOnlyConnectionFailuresAreCounted() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IOException.class, () -> breakers.call(server, () -> {
+                throw new IOException("WFLYCTL0030: No resource definition is registered");
+            }));
+        }
+        assertEquals(CircuitBreakers.State.CLOSED, breakers.getStats().get(0).state());
+        assertTrue(CircuitBreakers.isConnectionFailure(new IOException("WFLYPRT0053: Could not connect to remote+http://localhost:9990",
+                new ConnectException("Connection refused"))));
+        assertFalse(CircuitBreakers.isConnectionFailure(new RuntimeException("Unauthorized")));
+    }
+}
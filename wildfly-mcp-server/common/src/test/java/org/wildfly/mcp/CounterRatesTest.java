@@ -0,0 +1,64 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class CounterRatesTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testRates() {
+        CounterRates rates = new CounterRates(1000);
+        double[] result = new double[4];
+        assertFalse(rates.update("requests", 100, 10 * SECOND, result));
+        assertTrue(rates.update("requests", 150, 15 * SECOND, result));
+        assertEquals(50, result[CounterRates.DELTA]);
+        assertEquals(10, result[CounterRates.RATE]);
+        assertEquals(5, result[CounterRates.SECONDS]);
+        assertEquals(0, result[CounterRates.RESET]);
+        // The server has been restarted.
+        assertTrue(rates.update("requests", 20, 25 * SECOND, result));
+        assertEquals(20, result[CounterRates.DELTA]);
+        assertEquals(2, result[CounterRates.RATE]);
+        assertEquals(1, result[CounterRates.RESET]);
+        // The same time, no rate.
+        assertFalse(rates.update("requests", 30, 25 * SECOND, result));
+        // A value scraped before the previous one is ignored.
+        assertFalse(rates.update("requests", 25, 24 * SECOND, result));
+        assertTrue(rates.update("requests", 40, 30 * SECOND, result));
+        assertEquals(10, result[CounterRates.DELTA]);
+        assertEquals(0, result[CounterRates.RESET]);
+    }
+
+    @Test
+    public void testCapacity() {
+        CounterRates rates = new CounterRates(100);
+        double[] result = new double[4];
+        for (int i = 0; i < 200; i++) {
+            rates.update(new String("series" + i), i, SECOND, result);
+        }
+        assertEquals(100, rates.size());
+        for (int i = 0; i < 200; i++) {
+            // Equal but not the same instance.
+            assertEquals(i < 100, rates.update(new String("series" + i), i + 1, 2 * SECOND, result));
+        }
+        assertEquals(1, result[CounterRates.RATE]);
+    }
+
+    @Test
+    public void testCumulative() {
+        assertTrue(CounterRates.isCumulative("counter", new String[0], 0));
+        assertTrue(CounterRates.isCumulative("histogram", new String[]{"le"}, 1));
+        assertTrue(CounterRates.isCumulative("summary", new String[]{"area"}, 1));
+        assertFalse(CounterRates.isCumulative("summary", new String[]{"area", "quantile"}, 2));
+        assertFalse(CounterRates.isCumulative("gauge", new String[0], 0));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class JMXSessionTest {
+
+    /**
+     * A connection to the platform MBean server that fails once the server is
+     * stopped.
+     */
+    private static MBeanServerConnection connection(boolean[] stopped) {
+        return (MBeanServerConnection) Proxy.newProxyInstance(JMXSessionTest.class.getClassLoader(),
+                new Class<?>[]{MBeanServerConnection.class}, (proxy, method, args) -> {
+                    if (stopped[0]) {
+                        throw new IOException("Connection closed");
+                    }
+                    try {
+                        return method.invoke(ManagementFactory.getPlatformMBeanServer(), args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        boolean[] stopped = new boolean[1];
+        boolean[] available = {true};
+        JMXSession session = new JMXSession(new Server("localhost", "9990"), new User()) {
+            @Override
+            MBeanServerConnection connect() throws IOException {
+                if (!available[0]) {
+                    throw new IOException("Connection refused");
+                }
+                stopped[0] = false;
+                return connection(stopped);
+            }
+        };
+        assertEquals(0, session.getConnections());
+        ObjectName threading = new ObjectName("java.lang:type=Threading");
+        AttributeList attributes = session.getAttributes(threading, "ThreadCount", "Unknown", "DaemonThreadCount");
+        assertEquals("ThreadCount", ((Attribute) attributes.get(0)).getName());
+        assertEquals("DaemonThreadCount", ((Attribute) attributes.get(1)).getName());
+        assertEquals(1, session.queryNames(new ObjectName("java.lang:type=Threading")).size());
+        assertEquals(1, session.getConnections());
+
+        // The server has been restarted.
+        stopped[0] = true;
+        assertEquals(2, session.getAttributes(threading, "ThreadCount", "DaemonThreadCount").size());
+        assertEquals(2, session.getConnections());
+
+        // The server is down.
+        stopped[0] = true;
+        available[0] = false;
+        assertThrows(IOException.class, () -> session.getAttributes(threading, "ThreadCount"));
+        assertThrows(IOException.class, () -> session.getAttributes(threading, "ThreadCount"));
+        available[0] = true;
+        assertEquals(1, session.getAttributes(threading, "ThreadCount").size());
+        assertEquals(3, session.getConnections());
+        session.close();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void testMatch() {
+        KeywordMatcher matcher = new KeywordMatcher(List.of(List.of("he", "hers"), List.of("she", "his"), List.of("../")));
+        BitSet matches = new BitSet();
+        // Overlapping keywords, found through the failure links.
+        assertTrue(matcher.match("uSHErs", matches));
+        assertEquals(BitSet.valueOf(new long[]{0b11}), matches);
+        assertTrue(matcher.match("GET /app/..%2f../etc é", matches));
+        assertEquals(BitSet.valueOf(new long[]{0b100}), matches);
+        assertFalse(matcher.match("h é rs", matches));
+        assertTrue(matches.isEmpty());
+        assertFalse(matcher.match("", matches));
+        assertThrows(IllegalArgumentException.class, () -> new KeywordMatcher(List.of(List.of("é"))));
+    }
+}
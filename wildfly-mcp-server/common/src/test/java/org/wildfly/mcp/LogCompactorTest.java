@@ -0,0 +1,59 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LogCompactorTest {
+
+    private static void failure(LogCompactor compactor, String time, String thread, int port) {
+        compactor.accept(time + " ERROR [org.jboss.as.controller] (" + thread + ") WFLYCTL0013: Operation failed on port " + port);
+        compactor.accept("java.net.BindException: Address already in use 0x" + Integer.toHexString(port));
+        compactor.accept("\tat sun.nio.ch.Net.bind0(Native Method)");
+        compactor.accept("\tat sun.nio.ch.Net.bind(Net.java:" + (555 + port) + ")");
+        compactor.accept("\tat org.xnio.nio.NioXnioWorker.createTcpConnectionServer(NioXnioWorker.java:178)");
+    }
+
+    @Test
+    public void testCompaction() {
+        LogCompactor compactor = new LogCompactor(500, 3);
+        compactor.accept("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        failure(compactor, "2025-06-23 10:13:42,003", "thread-1", 8080);
+        compactor.accept("2025-06-23 10:13:43,003 WARN  [org.jboss.as.server] (main) WFLYSRV0022: Deployment failed");
+        failure(compactor, "2025-06-23 10:13:44,003", "thread-2", 8443);
+        failure(compactor, "2025-06-23 10:13:45,003", "thread-3", 9990);
+        assertEquals("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting\n"
+                + "2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller] (thread-1) WFLYCTL0013: Operation failed on port 8080\n"
+                + "java.net.BindException: Address already in use 0x1f90\n"
+                + "\tat sun.nio.ch.Net.bind0(Native Method)\n"
+                + "\t... 2 more lines\n"
+                + "[3 occurrences, first at 2025-06-23T10:13:42.003, last at 2025-06-23T10:13:45.003]\n"
+                + "2025-06-23 10:13:43,003 WARN  [org.jboss.as.server] (main) WFLYSRV0022: Deployment failed\n", compactor.finish());
+        assertEquals(17, compactor.getLineCount());
+        assertEquals(5, compactor.getRecordCount());
+        assertEquals(3, compactor.getEventCount());
+    }
+
+    @Test
+    public void testMaxEvents() {
+        LogCompactor compactor = new LogCompactor(2, 3);
+        compactor.accept("continuation line");
+        compactor.accept("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        compactor.accept("2025-06-23 10:13:41,001 INFO  [org.jboss.as] (main) WFLYSRV0025: WildFly started");
+        compactor.accept("2025-06-23 10:13:42,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        assertEquals("continuation line\n"
+                + "2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting\n"
+                + "[2 occurrences, first at 2025-06-23T10:13:40.001, last at 2025-06-23T10:13:42.001]\n"
+                + "[1 records not shown, more than 2 distinct events]\n", compactor.finish());
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("session <uuid> of Foo@<hex> expired after <n> ms, address <hex>",
+                LogCompactor.normalize("session 123e4567-e89b-12d3-a456-426614174000 of Foo@5e3f2b1a expired after 1500 ms, address 0x7ffe"));
+    }
+}
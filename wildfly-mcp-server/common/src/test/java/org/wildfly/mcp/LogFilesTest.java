@@ -0,0 +1,173 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.wildfly.mcp.WildFlyControllerClient.GetLogFilesRequest;
+import org.wildfly.mcp.WildFlyControllerClient.GetLoggingFileRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
+
+public class LogFilesTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final User user = new User();
+    private final Map<String, List<String>> files = Map.of(
+            "server.log.2025-06-22", List.of(
+                    "2025-06-22 23:59:58,000 INFO  [a] (main) old 1",
+                    "2025-06-22 23:59:59,000 INFO  [a] (main) old 2"),
+            "server.log.2025-06-23", List.of(
+                    "2025-06-23 10:00:00,000 INFO  [a] (main) first 1",
+                    "2025-06-23 10:00:02,000 ERROR [a] (main) first 2",
+                    "java.lang.IllegalStateException: boom",
+                    "2025-06-23 10:00:04,000 INFO  [a] (main) first 3"),
+            "server.log", List.of(
+                    "2025-06-23 10:00:01,000 INFO  [b] (main) second 1",
+                    "2025-06-23 10:00:03,000 INFO  [b] (main) second 2"));
+    private WildFlyControllerClient client;
+    private final List<String> read = new ArrayList<>();
+
+    private static long millis(String time) {
+        return LogLineParser.parseTime(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private ModelNode lines(ManagementRequest request) {
+        String name = request.address.get(3);
+        read.add(name);
+        List<String> lines = files.get(name);
+        if (request instanceof ReadLogFileLinesRequest r) {
+            lines = lines.subList(Math.min(r.skip, lines.size()), Math.min(r.skip + r.lines, lines.size()));
+        } else if (request instanceof GetLoggingFileRequest r && r.lines >= 0) {
+            lines = lines.subList(Math.max(0, lines.size() - r.lines), lines.size());
+        }
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        ModelNode result = response.get("result").setEmptyList();
+        lines.forEach(result::add);
+        return response;
+    }
+
+    private OperationResponse stream(ManagementRequest request) {
+        String name = request.address.get(3);
+        read.add(name);
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set("uuid");
+        OperationResponse.StreamEntry entry = mock(OperationResponse.StreamEntry.class);
+        StringBuilder content = new StringBuilder();
+        files.get(name).forEach(line -> content.append(line).append('\n'));
+        when(entry.getStream()).thenReturn(new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)));
+        OperationResponse operationResponse = mock(OperationResponse.class);
+        when(operationResponse.getResponseNode()).thenReturn(response);
+        when(operationResponse.getInputStream("uuid")).thenReturn(entry);
+        return operationResponse;
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        client = mock(WildFlyControllerClient.class);
+        ModelNode listing = new ModelNode();
+        listing.get("outcome").set("success");
+        listing.get("result", "server.log", "file-size").set(200);
+        listing.get("result", "server.log", "last-modified-timestamp").set(millis("2025-06-23 10:00:03"));
+        listing.get("result", "server.log.2025-06-22", "file-size").set(100);
+        listing.get("result", "server.log.2025-06-22", "last-modified-timestamp").set(millis("2025-06-22 23:59:59"));
+        listing.get("result", "server.log.2025-06-23", "file-size").set(300);
+        listing.get("result", "server.log.2025-06-23", "last-modified-timestamp").set(millis("2025-06-23 10:00:04"));
+        listing.get("result", "audit.log", "file-size").set(0);
+        when(client.call(any(GetLogFilesRequest.class))).thenReturn(listing);
+        when(client.callBatch(any())).thenAnswer(invocation -> {
+            List<ModelNode> responses = new ArrayList<>();
+            for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                responses.add(lines(request));
+            }
+            return responses;
+        });
+        when(client.callOperation(any(ReadLogFileAttributeRequest.class))).thenAnswer(invocation -> stream(invocation.getArgument(0)));
+        when(client.callAll(any())).thenAnswer(invocation -> {
+            List<ModelNode> responses = new ArrayList<>();
+            for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                responses.add(lines(request));
+            }
+            return responses;
+        });
+    }
+
+    @Test
+    public void testListAndSelect() throws Exception {
+        List<LogFiles.LogFile> list = LogFiles.list(client, server, user);
+        assertEquals(List.of("audit.log", "server.log.2025-06-22", "server.log", "server.log.2025-06-23"),
+                list.stream().map(LogFiles.LogFile::name).toList());
+        assertEquals(LocalDateTime.of(2025, 6, 22, 23, 59, 59), list.get(1).lastModified());
+        assertEquals(100, list.get(1).size());
+        assertEquals(3, LogFiles.select(list, "server.log*").size());
+        assertEquals(2, LogFiles.select(list, "audit.log, server.log").size());
+    }
+
+    @Test
+    public void testMergedRead() throws Exception {
+        List<LogFiles.LogFile> selected = LogFiles.select(LogFiles.list(client, server, user), "server.log*");
+        List<String> merged = new ArrayList<>();
+        List<LogFiles.LogFile> files = LogFiles.read(client, server, user, selected, -1, LogLineParser.parseTime("2025-06-23 00:00:00"),
+                LogLineParser.parseTime("2025-06-23 12:00:00"), merged::add);
+        // The file of the previous day is neither probed nor read.
+        assertEquals(List.of("server.log", "server.log.2025-06-23"), files.stream().map(LogFiles.LogFile::name).toList());
+        assertEquals(List.of(
+                "2025-06-23 10:00:00,000 INFO  [a] (main) first 1",
+                "2025-06-23 10:00:01,000 INFO  [b] (main) second 1",
+                "2025-06-23 10:00:02,000 ERROR [a] (main) first 2",
+                "java.lang.IllegalStateException: boom",
+                "2025-06-23 10:00:03,000 INFO  [b] (main) second 2",
+                "2025-06-23 10:00:04,000 INFO  [a] (main) first 3"), merged);
+
+        // Files starting after the time range are not read.
+        read.clear();
+        files = LogFiles.read(client, server, user, selected, -1, null, LogLineParser.parseTime("2025-06-23 10:00:00"), l -> {
+        });
+        assertEquals(List.of("server.log.2025-06-22", "server.log.2025-06-23"), files.stream().map(LogFiles.LogFile::name).toList());
+        assertEquals(5, read.size());
+    }
+
+    @Test
+    public void testStreamedRead() throws Exception {
+        List<LogFiles.LogFile> selected = LogFiles.select(LogFiles.list(client, server, user), "server.log*");
+        List<String> merged = new ArrayList<>();
+        LogFiles.read(client, server, user, selected, -1, LogLineParser.parseTime("2025-06-23 00:00:00"), null, merged::add);
+        // The records of the streams are merged line by line.
+        assertEquals(List.of(
+                "2025-06-23 10:00:00,000 INFO  [a] (main) first 1",
+                "2025-06-23 10:00:01,000 INFO  [b] (main) second 1",
+                "2025-06-23 10:00:02,000 ERROR [a] (main) first 2",
+                "java.lang.IllegalStateException: boom",
+                "2025-06-23 10:00:03,000 INFO  [b] (main) second 2",
+                "2025-06-23 10:00:04,000 INFO  [a] (main) first 3"), merged);
+        // Each file is read once.
+        assertEquals(List.of("server.log", "server.log.2025-06-23"), read);
+
+        // The last lines of each file.
+        merged.clear();
+        LogFiles.read(client, server, user, selected, 1, LogLineParser.parseTime("2025-06-23 00:00:00"), null, merged::add);
+        assertEquals(List.of(
+                "2025-06-23 10:00:03,000 INFO  [b] (main) second 2",
+                "2025-06-23 10:00:04,000 INFO  [a] (main) first 3"), merged);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LogHistogramTest {
+
+    private static final String[] LOG = {
+        "2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting",
+        "2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller] (Controller Boot Thread) WFLYCTL0013: Operation failed",
+        "java.lang.IllegalStateException: boom",
+        "\tat org.jboss.as.controller.FooException.fail(Foo.java:12)",
+        "Caused by: java.io.IOException: closed",
+        "2025-06-23 10:13:43,004 WARN  [org.jboss.as.controller.management] (main) WFLYCTL0013: Operation failed",
+        "2025-06-23 10:13:44,005 INFO  [org.jboss.as.server] (Controller Boot Thread) WFLYSRV0025: WildFly started"
+    };
+
+    @Test
+    public void testHistogram() {
+        LogHistogram histogram = new LogHistogram(null, null);
+        for (String line : LOG) {
+            histogram.accept(line);
+        }
+        assertEquals(7, histogram.getLineCount());
+        assertEquals(4, histogram.getRecordCount());
+        assertEquals(2, histogram.count("WFLYCTL0013"));
+        assertEquals(2, histogram.count("INFO"));
+        assertEquals(2, histogram.count("org.jboss.as.server"));
+        assertEquals(1, histogram.count("java.lang.IllegalStateException"));
+        assertEquals(1, histogram.count("java.io.IOException"));
+        // Stack frames are not counted.
+        assertEquals(0, histogram.count("org.jboss.as.controller.FooException"));
+        assertEquals("Levels:\n1\tERROR\n1\tWARN\n2\tINFO\n"
+                + "Message codes (3 distinct):\n2\tWFLYCTL0013\n1\tWFLYSRV0025\n1\t(1 others)\n"
+                + "Categories (3 distinct):\n2\torg.jboss.as.server\n1\torg.jboss.as.controller\n1\t(1 others)\n"
+                + "Exceptions (2 distinct):\n1\tjava.io.IOException\n1\tjava.lang.IllegalStateException\n", histogram.format(2));
+    }
+
+    @Test
+    public void testTimeRangeAndUpdate() {
+        LogHistogram histogram = new LogHistogram(LogLineParser.parseTime("2025-06-23 10:13:42"), LogLineParser.parseTime("2025-06-23 10:13:43"));
+        for (int i = 0; i < 4; i++) {
+            histogram.accept(LOG[i]);
+        }
+        LogHistogram updated = histogram.copy();
+        for (int i = 4; i < LOG.length; i++) {
+            updated.accept(LOG[i]);
+        }
+        assertEquals(1, histogram.getRecordCount());
+        assertEquals(0, histogram.count("java.io.IOException"));
+        assertEquals(2, updated.getRecordCount());
+        assertEquals(2, updated.count("WFLYCTL0013"));
+        assertEquals(1, updated.count("java.io.IOException"));
+        assertEquals(0, updated.count("WFLYSRV0025"));
+        updated.reset();
+        assertEquals(0, updated.getRecordCount());
+        assertEquals(1, histogram.count("WFLYCTL0013"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class LogSearchTest {
+
+    private static final List<String> LOG = List.of(
+            "2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting",
+            "2025-06-23 10:13:41,002 DEBUG [org.jboss.as.config] (MSC service thread 1-2) Configured system properties",
+            "2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller.management-operation] (Controller Boot Thread) WFLYCTL0013: Operation failed",
+            "java.lang.IllegalStateException: boom",
+            "\tat org.foo.Bar.run(Bar.java:12)",
+            "2025-06-23 10:13:43,004 WARN  [org.jboss.as.txn] (MSC service thread 1-4) WFLYTX0013: Node identifier not set",
+            "2025-06-23 10:13:44,005 INFO  [org.jboss.as.server] (Controller Boot Thread) WFLYSRV0025: WildFly started",
+            "2025-06-23 10:13:45,006 ERROR [io.undertow.request] (default task-1) UT005023: Exception handling request");
+
+    private static LogSearch search(LogSearch.Criteria criteria) {
+        LogSearch search = new LogSearch(criteria);
+        for (String line : LOG) {
+            search.accept(line);
+        }
+        return search;
+    }
+
+    @Test
+    public void testParse() {
+        LogLineParser.Entry entry = LogLineParser.parse(LOG.get(2));
+        assertEquals("ERROR", entry.level());
+        assertEquals("org.jboss.as.controller.management-operation", entry.category());
+        assertEquals("Controller Boot Thread", entry.thread());
+        assertEquals("WFLYCTL0013", entry.code());
+        assertEquals(42, entry.time().getSecond());
+        assertEquals("UT005023", LogLineParser.parse(LOG.get(7)).code());
+        assertNull(LogLineParser.parse(LOG.get(3)));
+    }
+
+    @Test
+    public void testLevelWithContext() {
+        LogSearch search = search(new LogSearch.Criteria(null, "error", null, null, null, null, 1, 1, 100));
+        assertEquals(LOG.get(1) + "\n" + LOG.get(2) + "\n" + LOG.get(3) + "\n" + LOG.get(4) + "\n" + LOG.get(5) + "\n"
+                + LOG.get(6) + "\n" + LOG.get(7) + "\n", search.finish());
+        assertEquals(2, search.getMatches());
+        assertEquals(8, search.getLineCount());
+    }
+
+    @Test
+    public void testFilters() {
+        assertEquals(LOG.get(0) + "\n--\n" + LOG.get(6) + "\n",
+                search(new LogSearch.Criteria(null, null, "org.jboss.as.server", null, null, null, 0, 0, 100)).finish());
+        assertEquals(LOG.get(6) + "\n",
+                search(new LogSearch.Criteria(null, null, null, "WFLYSRV0025", null, null, 0, 0, 100)).finish());
+        assertEquals(LOG.get(5) + "\n" + LOG.get(6) + "\n",
+                search(new LogSearch.Criteria(null, null, null, null, LogLineParser.parseTime("2025-06-23 10:13:43"),
+                        LogLineParser.parseTime("2025-06-23T10:13:44"), 0, 0, 100)).finish());
+        // The pattern is searched in the continuation lines
+        assertEquals(LOG.get(2) + "\n" + LOG.get(3) + "\n" + LOG.get(4) + "\n",
+                search(new LogSearch.Criteria(Pattern.compile("Bar\\.java"), null, null, null, null, null, 0, 0, 100)).finish());
+        LogSearch search = search(new LogSearch.Criteria(null, "INFO", null, null, null, null, 0, 0, 2));
+        assertEquals(LOG.get(0) + "\n--\n" + LOG.get(2) + "\n" + LOG.get(3) + "\n" + LOG.get(4) + "\n", search.finish());
+        assertTrue(search.isTruncated());
+    }
+
+    @Test
+    public void testMaxRecordLines() {
+        // A file that can't be parsed, the lines are records of their own after the maximum.
+        LogSearch search = new LogSearch(new LogSearch.Criteria(Pattern.compile("line 7"), null, null, null, null, null, 0, 0, 100), 3);
+        for (int i = 0; i < 10; i++) {
+            search.accept("line " + i);
+        }
+        assertEquals("line 6\nline 7\nline 8\n", search.finish());
+        assertEquals(1, search.getMatches());
+        assertEquals(10, search.getLineCount());
+    }
+}
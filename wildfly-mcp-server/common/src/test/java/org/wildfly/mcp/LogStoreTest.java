@@ -0,0 +1,155 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
+
+public class LogStoreTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final User user = new User();
+    private final List<String> logFile = new ArrayList<>();
+    private final AtomicInteger linesRead = new AtomicInteger();
+    private WildFlyControllerClient client;
+
+    private ModelNode read(ReadLogFileLinesRequest request) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        ModelNode result = response.get("result").setEmptyList();
+        int end = request.tail ? logFile.size() - request.skip : Math.min(logFile.size(), request.skip + request.lines);
+        for (int i = Math.max(0, request.tail ? end - request.lines : request.skip); i < end; i++) {
+            result.add(logFile.get(i));
+            linesRead.incrementAndGet();
+        }
+        return response;
+    }
+
+    private ModelNode size() {
+        long size = 0;
+        for (String line : logFile) {
+            size += LogTailer.utf8Length(line) + 1;
+        }
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set(size);
+        return response;
+    }
+
+    private OperationResponse stream() {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set("uuid");
+        OperationResponse.StreamEntry entry = mock(OperationResponse.StreamEntry.class);
+        StringBuilder content = new StringBuilder();
+        logFile.forEach(line -> content.append(line).append('\n'));
+        when(entry.getStream()).thenReturn(new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)));
+        OperationResponse operationResponse = mock(OperationResponse.class);
+        when(operationResponse.getResponseNode()).thenReturn(response);
+        when(operationResponse.getInputStream("uuid")).thenReturn(entry);
+        return operationResponse;
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        client = mock(WildFlyControllerClient.class);
+        when(client.call(any(ReadLogFileLinesRequest.class))).thenAnswer(invocation -> read(invocation.getArgument(0)));
+        when(client.callBatch(any())).thenAnswer(invocation -> {
+            List<ModelNode> responses = new ArrayList<>();
+            for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                responses.add(request instanceof ReadLogFileLinesRequest lines ? read(lines) : size());
+            }
+            return responses;
+        });
+        when(client.callOperation(any(ReadLogFileAttributeRequest.class))).thenAnswer(invocation -> stream());
+        logFile.add("2025-06-23 10:00:01,000 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        logFile.add("2025-06-23 10:00:02,000 WARN  [org.jboss.as.controller] (main) WFLYCTL0028: Attribute deprecated");
+        logFile.add("2025-06-23 10:01:03,000 ERROR [org.jboss.as.controller.management] (worker-1) WFLYCTL0013: Operation failed");
+        logFile.add("java.lang.IllegalStateException: boom");
+        logFile.add("2025-06-23 10:02:04,000 INFO  [org.jboss.as] (main) WFLYSRV0025: WildFly started");
+        logFile.add("2025-06-23 10:02:05,000 INFO  [io.undertow] (worker-1) Request done");
+    }
+
+    private static LogStore.Query query(String level, String category, String code, LogStore.GroupBy groupBy, Duration bucket) {
+        return new LogStore.Query(null, null, level, category, code, groupBy, bucket);
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        LogStore store = new LogStore(new LogTailer(new BootIndex(), 100, 262144), 1000);
+        LogStore.Result result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.LEVEL, null));
+        assertEquals(5, result.count());
+        assertEquals(Map.of("INFO", 3L, "WARN", 1L, "ERROR", 1L), result.counts().get(null));
+
+        result = store.query(client, server, user, query("WARN", "org.jboss.as.controller", null, LogStore.GroupBy.CODE, null));
+        assertEquals(Map.of("WFLYCTL0028", 1L, "WFLYCTL0013", 1L), result.counts().get(null));
+
+        result = store.query(client, server, user, query(null, null, "WFLYSRV", LogStore.GroupBy.NONE, null));
+        assertEquals(2, result.count());
+
+        result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.CODE, null));
+        assertEquals(1L, result.counts().get(null).get("none"));
+
+        result = store.query(client, server, user, new LogStore.Query(LogLineParser.parseTime("2025-06-23 10:00:02"),
+                LogLineParser.parseTime("2025-06-23 10:02:04"), null, null, null, LogStore.GroupBy.THREAD, null));
+        assertEquals(Map.of("main", 2L, "worker-1", 1L), result.counts().get(null));
+    }
+
+    @Test
+    public void testTimeBucketsAndUpdates() throws Exception {
+        LogStore store = new LogStore(new LogTailer(new BootIndex(), 100, 262144, 2), 1000);
+        LogStore.Result result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.NONE, LogStore.parseBucket("1m")));
+        assertEquals(List.of(LocalDateTime.of(2025, 6, 23, 10, 0), LocalDateTime.of(2025, 6, 23, 10, 1), LocalDateTime.of(2025, 6, 23, 10, 2)),
+                List.copyOf(result.counts().keySet()));
+        assertEquals(2L, result.counts().get(LocalDateTime.of(2025, 6, 23, 10, 2)).get(null));
+
+        // Only the new lines are read.
+        linesRead.set(0);
+        logFile.add("2025-06-23 10:03:00,000 INFO  [io.undertow] (worker-1) Request done");
+        result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.NONE, null));
+        assertEquals(6, result.count());
+        // The first 4 lines identify the file, the new line is found in the last 2 lines.
+        assertEquals(6, linesRead.get());
+
+        assertThrows(IllegalArgumentException.class, () -> LogStore.parseBucket("5x"));
+        assertThrows(IllegalArgumentException.class, () -> LogStore.GroupBy.of("foo"));
+        assertEquals(LogStore.GroupBy.CODE, LogStore.GroupBy.of("messageCode"));
+    }
+
+    @Test
+    public void testMaxRecords() throws Exception {
+        LogStore store = new LogStore(new LogTailer(new BootIndex(), 100, 262144), 4);
+        LogStore.Result result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.NONE, null));
+        // The oldest records are dropped.
+        assertEquals(3, result.records());
+        // The dictionaries only contain the values of the kept records.
+        result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.CATEGORY, null));
+        assertEquals(Map.of("org.jboss.as.controller.management", 1L, "org.jboss.as", 1L, "io.undertow", 1L), result.counts().get(null));
+        result = store.query(client, server, user, query(null, null, null, LogStore.GroupBy.THREAD, null));
+        assertEquals(Map.of("worker-1", 2L, "main", 1L), result.counts().get(null));
+        result = store.query(client, server, user, query(null, null, "WFLYCTL", LogStore.GroupBy.CODE, null));
+        assertEquals(Map.of("WFLYCTL0013", 1L), result.counts().get(null));
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
+
+public class LogTailerTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final User user = new User();
+    private final List<String> logFile = new ArrayList<>();
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private WildFlyControllerClient client;
+
+    private ModelNode read(ReadLogFileLinesRequest request) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        ModelNode result = response.get("result").setEmptyList();
+        // The last lines are counted from the end of the file.
+        int end = request.tail ? logFile.size() - request.skip : Math.min(logFile.size(), request.skip + request.lines);
+        for (int i = Math.max(0, request.tail ? end - request.lines : request.skip); i < end; i++) {
+            result.add(logFile.get(i));
+        }
+        return response;
+    }
+
+    private ModelNode read(ManagementRequest request) {
+        if (request instanceof ReadLogFileLinesRequest lines) {
+            return read(lines);
+        }
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        if ("file-size".equals(((ReadLogFileAttributeRequest) request).name)) {
+            long size = 0;
+            for (String line : logFile) {
+                size += LogTailer.utf8Length(line) + 1;
+            }
+            response.get("result").set(size);
+        } else {
+            // Any change of the content changes the modification time.
+            response.get("result").set(logFile.hashCode() & 0xFFFFFFFFL);
+        }
+        return response;
+    }
+
+    private OperationResponse stream() {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set("uuid");
+        OperationResponse.StreamEntry entry = mock(OperationResponse.StreamEntry.class);
+        StringBuilder content = new StringBuilder();
+        logFile.forEach(line -> content.append(line).append('\n'));
+        when(entry.getStream()).thenReturn(new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)));
+        OperationResponse operationResponse = mock(OperationResponse.class);
+        when(operationResponse.getResponseNode()).thenReturn(response);
+        when(operationResponse.getInputStream("uuid")).thenReturn(entry);
+        return operationResponse;
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        client = mock(WildFlyControllerClient.class);
+        when(client.call(any(ReadLogFileLinesRequest.class))).thenAnswer(invocation -> {
+            roundTrips.incrementAndGet();
+            return read(invocation.getArgument(0));
+        });
+        when(client.callOperation(any(ReadLogFileAttributeRequest.class))).thenAnswer(invocation -> {
+            roundTrips.incrementAndGet();
+            return stream();
+        });
+        when(client.callBatch(any())).thenAnswer(invocation -> {
+            roundTrips.incrementAndGet();
+            List<ModelNode> responses = new ArrayList<>();
+            for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                responses.add(read(request));
+            }
+            return responses;
+        });
+    }
+
+    private void append(int count) {
+        int start = logFile.size();
+        for (int i = start; i < start + count; i++) {
+            logFile.add("line" + i);
+        }
+    }
+
+    @Test
+    public void testFollow() throws Exception {
+        LogTailer tailer = new LogTailer(new BootIndex(), 100, 262144);
+        append(5000);
+        // The last lines are read from the end of the file, the lines of the file are not counted.
+        LogTailer.Tail tail = tailer.start(client, server, user, 3);
+        assertEquals(List.of("line4997", "line4998", "line4999"), tail.lines());
+        assertEquals(1, roundTrips.get());
+
+        roundTrips.set(0);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertTrue(tail.lines().isEmpty());
+        append(2);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals(List.of("line5000", "line5001"), tail.lines());
+        assertEquals(2, roundTrips.get());
+
+        append(150);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals(100, tail.lines().size());
+        assertTrue(tail.more());
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals(50, tail.lines().size());
+        assertEquals("line5151", tail.lines().get(49));
+        assertFalse(tail.more());
+
+        // Too many new lines to be found in the last lines, the file is read once.
+        append(200000);
+        roundTrips.set(0);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals("line5152", tail.lines().get(0));
+        assertEquals(100, tail.lines().size());
+        assertEquals(2, roundTrips.get());
+        // The cursor now knows its line, the next page is read after it.
+        roundTrips.set(0);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals("line5252", tail.lines().get(0));
+        assertEquals(2, roundTrips.get());
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        LogTailer tailer = new LogTailer(new BootIndex(), 100, 262144);
+        append(10);
+        LogTailer.Tail tail = tailer.start(client, server, user, 200);
+        assertEquals(10, tail.lines().size());
+        logFile.clear();
+        logFile.add("new file");
+        append(1);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertTrue(tail.rotated());
+        assertEquals(List.of("new file", "line1"), tail.lines());
+        assertThrows(IllegalArgumentException.class, () -> tailer.poll(client, server, user, "foo"));
+
+        // A new file that starts with the same lines is detected by its size.
+        logFile.clear();
+        append(10);
+        tail = tailer.start(client, server, user, 200);
+        logFile.subList(5, 10).clear();
+        append(1);
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertTrue(tail.rotated());
+        assertEquals(6, tail.lines().size());
+    }
+
+    @Test
+    public void testLastBoot() throws Exception {
+        BootIndex index = new BootIndex();
+        LogTailer tailer = new LogTailer(index, 100, 262144);
+        append(10);
+        assertEquals(null, tailer.lastBoot(client, server, user));
+        logFile.add("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        append(20000);
+        logFile.add("2025-06-23 11:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        append(5);
+        roundTrips.set(0);
+        LogTailer.Tail tail = tailer.lastBoot(client, server, user);
+        assertEquals(6, tail.lines().size());
+        assertEquals(11, index.getBoots(server).get(1).time().getHour());
+        assertEquals(20011, index.getBoots(server).get(1).line());
+        // The lines that are not indexed are read once, from the end of the file.
+        assertEquals(2, roundTrips.get());
+
+        // New lines read when tailing are indexed, the last start is read with the header.
+        LogTailer.Tail polled = tailer.poll(client, server, user, tail.cursor());
+        assertTrue(polled.lines().isEmpty());
+        logFile.add("2025-06-23 12:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        append(1);
+        polled = tailer.poll(client, server, user, polled.cursor());
+        assertEquals(3, index.getBoots(server).size());
+        roundTrips.set(0);
+        tail = tailer.lastBoot(client, server, user);
+        assertEquals(logFile.subList(logFile.size() - 2, logFile.size()), tail.lines());
+        assertEquals(1, roundTrips.get());
+        // The last lines since the last start are returned, the cursor reads the next ones.
+        append(150);
+        tail = tailer.lastBoot(client, server, user);
+        assertEquals(logFile.subList(logFile.size() - 100, logFile.size()), tail.lines());
+        assertFalse(tail.more());
+        assertTrue(tailer.poll(client, server, user, tail.cursor()).lines().isEmpty());
+        append(2);
+        assertEquals(2, tailer.poll(client, server, user, tail.cursor()).lines().size());
+
+        // The index of a rotated file starts again.
+        logFile.clear();
+        logFile.add("2025-06-23 13:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        append(1);
+        tail = tailer.lastBoot(client, server, user);
+        assertEquals(logFile, tail.lines());
+        assertEquals(1, index.getBoots(server).size());
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        // Lines are 6 to 8 bytes (with the new line), line0 to line9 fill the first page.
+        LogTailer tailer = new LogTailer(new BootIndex(), 100, 60);
+        append(250);
+        LogTailer.Tail tail = tailer.page(client, server, user);
+        assertEquals(10, tail.lines().size());
+        assertTrue(tail.more());
+        int count = tail.lines().size();
+        roundTrips.set(0);
+        while (tail.more()) {
+            tail = tailer.poll(client, server, user, tail.cursor());
+            assertTrue(tail.lines().size() <= 10);
+            count += tail.lines().size();
+        }
+        assertEquals(250, count);
+        assertEquals("line249", tail.lines().get(tail.lines().size() - 1));
+
+        // The last lines that fit in a page.
+        tail = tailer.start(client, server, user, 50);
+        assertEquals(List.of("line243", "line244", "line245", "line246", "line247", "line248", "line249"), tail.lines());
+
+        // A line larger than a page is truncated, the next call reads the next line.
+        logFile.add("x".repeat(1000));
+        logFile.add("last");
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals(1, tail.lines().size());
+        assertTrue(tail.lines().get(0).endsWith(" [truncated]"));
+        // The lines after the truncated line are available.
+        assertTrue(tail.more());
+        tail = tailer.poll(client, server, user, tail.cursor());
+        assertEquals(List.of("last"), tail.lines());
+
+        List<String> last = new ArrayList<>();
+        tailer.last(client, server, user, 150, last::add);
+        assertEquals(logFile.subList(logFile.size() - 150, logFile.size()), last);
+
+        List<String> scanned = new ArrayList<>();
+        tailer.scan(client, server, user, scanned::add);
+        assertEquals(logFile.size(), scanned.size());
+        assertEquals("last", scanned.get(scanned.size() - 1));
+        // A line read from the stream of the file is bounded to a page.
+        assertEquals("x".repeat(60) + " [truncated]", scanned.get(scanned.size() - 2));
+    }
+
+    @Test
+    public void testScanPages() throws Exception {
+        // The whole file is read in a single call, the lines are not bounded in bytes.
+        LogTailer tailer = new LogTailer(new BootIndex(), 100, 60, 1000);
+        append(2500);
+        List<String> lines = new ArrayList<>();
+        roundTrips.set(0);
+        tailer.scan(client, server, user, lines::add);
+        assertEquals(logFile, lines);
+        assertEquals(1, roundTrips.get());
+
+        lines.clear();
+        roundTrips.set(0);
+        // Followed from the start in a single read of the file.
+        String cursor = tailer.follow(client, server, user, null, lines::add, () -> {});
+        assertEquals(logFile, lines);
+        assertEquals(2, roundTrips.get());
+        // The new lines are found in the last lines of the file.
+        append(5);
+        lines.clear();
+        roundTrips.set(0);
+        cursor = tailer.follow(client, server, user, cursor, lines::add, () -> {});
+        assertEquals(logFile.subList(2500, 2505), lines);
+        assertEquals(1, roundTrips.get());
+        // A rotated file is read from its start.
+        logFile.clear();
+        append(3);
+        lines.clear();
+        List<String> rotations = new ArrayList<>();
+        tailer.follow(client, server, user, cursor, lines::add, () -> rotations.add("rotated"));
+        assertEquals(logFile, lines);
+        assertEquals(1, rotations.size());
+    }
+}
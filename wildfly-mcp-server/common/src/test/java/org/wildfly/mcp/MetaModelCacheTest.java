@@ -0,0 +1,177 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MetaModelCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final User user = new User();
+
+    private static ServerInfo version(String version) {
+        ServerInfo info = new ServerInfo();
+        info.productName = "WildFly";
+        info.productVersion = version;
+        info.coreVersion = "29.0.0.Final";
+        return info;
+    }
+
+    private ModelNode describe() {
+        calls.incrementAndGet();
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result", "description").set("The logging subsystem");
+        return response;
+    }
+
+    @Test
+    public void testSharedAcrossServersAndRestarts() throws Exception {
+        ModelNode op = Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "logging"));
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 10);
+        cache.read(new Server("localhost", "9990"), user, op, () -> version("37.0.0.Final"), this::describe);
+        ModelNode response = cache.read(new Server("localhost", "10090"), user, op, () -> version("37.0.0.Final"), this::describe);
+        assertEquals("The logging subsystem", response.get("result", "description").asString());
+        assertEquals(1, calls.get());
+        // A new cache reads the files written by the previous one
+        cache = new MetaModelCache(dir, 1 << 20, 10);
+        cache.read(new Server("localhost", "9990"), user, op, () -> version("37.0.0.Final"), this::describe);
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getHits());
+        // Another version is not shared
+        cache.read(new Server("remote", "9990"), user, op, () -> version("38.0.0.Final"), this::describe);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testUnknownVersionNotCached() throws Exception {
+        ModelNode op = Operations.createOperation("read-resource-description", new ModelNode().setEmptyList());
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 10);
+        Server server = new Server("localhost", "9990");
+        cache.read(server, user, op, () -> null, this::describe);
+        cache.read(server, user, op, () -> {
+            throw new IllegalStateException();
+        }, this::describe);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testVersionFromResponses() throws Exception {
+        ModelNode op = Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "logging"));
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 10);
+        Server server = new Server("localhost", "9990");
+        cache.setVersion(server, version("37.0.0.Final"));
+        cache.read(server, user, op, () -> {
+            throw new IllegalStateException("The version is known");
+        }, this::describe);
+        cache.read(server, user, op, () -> {
+            throw new IllegalStateException("The version is known");
+        }, this::describe);
+        assertEquals(1, calls.get());
+        // The server can't be reached, its version is read again.
+        ModelNode other = Operations.createOperation("read-resource-description", new ModelNode().setEmptyList());
+        assertThrows(ConnectException.class, () -> cache.read(server, user, other, () -> version("37.0.0.Final"), () -> {
+            throw new ConnectException("Connection refused");
+        }));
+        cache.read(server, user, op, () -> version("38.0.0.Final"), this::describe);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDiskEviction() throws Exception {
+        List<ModelNode> ops = List.of(Operations.createOperation("read-resource-description", new ModelNode().setEmptyList()),
+                Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "logging")),
+                Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "jca")));
+        Server server = new Server("localhost", "9990");
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 10);
+        cache.read(server, user, ops.get(0), () -> version("37.0.0.Final"), this::describe);
+        List<Path> files = files();
+        long size = Files.size(files.get(0));
+        // Room for 2 files.
+        cache = new MetaModelCache(dir, 2 * size, 10);
+        cache.read(server, user, ops.get(1), () -> version("37.0.0.Final"), this::describe);
+        for (Path file : files()) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - (file.equals(files.get(0)) ? 20000 : 10000)));
+        }
+        cache.read(server, user, ops.get(2), () -> version("37.0.0.Final"), this::describe);
+        assertEquals(3, calls.get());
+        // The least recently used file is deleted.
+        assertEquals(2, files().size());
+        assertFalse(Files.exists(files.get(0)));
+        cache = new MetaModelCache(dir, 2 * size, 10);
+        cache.read(server, user, ops.get(1), () -> version("37.0.0.Final"), this::describe);
+        assertEquals(3, calls.get());
+        cache.read(server, user, ops.get(0), () -> version("37.0.0.Final"), this::describe);
+        assertEquals(4, calls.get());
+    }
+
+    private List<Path> files() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    @Test
+    public void testMemoryCache() throws Exception {
+        ModelNode op = Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "logging"));
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 1);
+        Server server = new Server("localhost", "9990");
+        ModelNode response = cache.read(server, user, op, () -> version("37.0.0.Final"), this::describe);
+        // The callers can modify the returned descriptions
+        response.get("result").remove("description");
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.delete(file);
+            }
+        }
+        response = cache.read(server, user, op, () -> version("37.0.0.Final"), this::describe);
+        assertEquals("The logging subsystem", response.get("result", "description").asString());
+        assertEquals(1, calls.get());
+        // The least recently used description is evicted
+        ModelNode other = Operations.createOperation("read-resource-description", new ModelNode().setEmptyList());
+        cache.read(server, user, other, () -> version("37.0.0.Final"), this::describe);
+        cache.read(server, user, op, () -> version("37.0.0.Final"), this::describe);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testCachedPerUser() throws Exception {
+        ModelNode op = Operations.createOperation("read-resource-description", Operations.createAddress("subsystem", "logging"));
+        MetaModelCache cache = new MetaModelCache(dir, 1 << 20, 10);
+        Server server = new Server("localhost", "9990");
+        cache.read(server, user, op, () -> version("37.0.0.Final"), this::describe);
+        String previous = System.getProperty("org.wildfly.user.name");
+        System.setProperty("org.wildfly.user.name", "monitor" + user.userName);
+        try {
+            User monitor = new User();
+            assertFalse(monitor.userName.equals(user.userName));
+            cache.read(server, monitor, op, () -> version("37.0.0.Final"), this::describe);
+        } finally {
+            if (previous == null) {
+                System.clearProperty("org.wildfly.user.name");
+            } else {
+                System.setProperty("org.wildfly.user.name", previous);
+            }
+        }
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MetricsHistoryTest {
+
+    private final Server server = new Server("localhost", "9990");
+
+    @Test
+    public void testRingBuffer() {
+        MetricsHistory history = new MetricsHistory(3, 10, 10);
+        for (int i = 1; i <= 5; i++) {
+            history.record(server, i * 1000, List.of("heap", "cpu"), new double[]{i * 10, i}, 2);
+        }
+        List<MetricsHistory.Points> points = history.query(server, List.of(), 3000, Long.MAX_VALUE, 100);
+        assertEquals(2, points.size());
+        assertEquals(0, points.get(0).resolution());
+        // Sorted by name, the oldest samples are overwritten.
+        assertEquals("cpu", points.get(0).series());
+        assertArrayEquals(new long[]{3000, 4000, 5000}, points.get(0).times());
+        assertArrayEquals(new double[]{3, 4, 5}, points.get(0).values());
+        assertArrayEquals(new double[]{30, 40, 50}, points.get(1).values());
+
+        points = history.query(server, List.of("he"), 4000, Long.MAX_VALUE, 100);
+        assertEquals(1, points.size());
+        assertArrayEquals(new double[]{40, 50}, points.get(0).values());
+
+        // The overwritten samples are in the 10 seconds bucket.
+        points = history.query(server, List.of("cpu"), Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertEquals(10000, points.get(0).resolution());
+        assertArrayEquals(new long[]{0}, points.get(0).times());
+        assertArrayEquals(new double[]{3}, points.get(0).values());
+        assertArrayEquals(new long[]{5}, points.get(0).counts());
+
+        assertEquals(0, history.query(new Server("other", "9990"), List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 100).size());
+    }
+
+    @Test
+    public void testResolution() {
+        MetricsHistory history = new MetricsHistory(1000, 100, 10);
+        // One sample per second during one hour.
+        for (int i = 0; i < 3600; i++) {
+            history.record(server, i * 1000L, List.of("heap"), new double[]{i}, 1);
+        }
+        MetricsHistory.Points points = history.query(server, List.of(), 3590000, Long.MAX_VALUE, 100).get(0);
+        assertEquals(0, points.resolution());
+        assertEquals(10, points.size());
+
+        // The last 100 buckets of 10 seconds don't cover 30 minutes.
+        points = history.query(server, List.of(), 1800000, Long.MAX_VALUE, 100).get(0);
+        assertEquals(60000, points.resolution());
+        assertEquals(30, points.size());
+        assertEquals(1800000, points.times()[0]);
+        assertEquals(1800 + 29.5, points.values()[0]);
+        assertEquals(1800, points.min()[0]);
+        assertEquals(1859, points.max()[0]);
+        assertEquals(1859, points.last()[0]);
+        assertEquals(60, points.counts()[0]);
+
+        // 6 buckets of 10 minutes merged by 2.
+        points = history.query(server, List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 3).get(0);
+        assertEquals(1200000, points.resolution());
+        assertEquals(3, points.size());
+        assertEquals(0, points.min()[0]);
+        assertEquals(1199, points.max()[0]);
+        assertEquals(1200, points.counts()[0]);
+    }
+
+    @Test
+    public void testMaxSeries() {
+        MetricsHistory history = new MetricsHistory(3, 10, 2);
+        history.record(server, 1000, List.of("a", "b", "c"), new double[]{1, 2, 3}, 3);
+        // Only the first count values are recorded.
+        history.record(server, 2000, List.of("a", "b", "c"), new double[]{1, 2, 3}, 1);
+        assertEquals(2, history.query(server, List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 100).size());
+        assertEquals(1, history.getDropped(server));
+        assertArrayEquals(new long[]{1000}, history.query(server, List.of("b"), Long.MIN_VALUE, Long.MAX_VALUE, 100).get(0).times());
+    }
+
+    @Test
+    public void testMaxMemory() {
+        // 1000 series of 720 samples (1 hour) and 459 buckets fit in 32 MB. 153 buckets of 10 seconds would only cover 25 minutes,
+        // the buckets are shared by the 1 minute (3.8 hours) and 10 minutes (38 hours) resolutions.
+        assertArrayEquals(new int[]{0, 229, 230}, MetricsHistory.rollupCapacities(720, 5000, 1008, 1000, 32 * 1024 * 1024));
+        // 20 series keep all their buckets.
+        assertArrayEquals(new int[]{1008, 1008, 1008}, MetricsHistory.rollupCapacities(720, 5000, 1008, 20, 32 * 1024 * 1024));
+        // At least a bucket, whatever the budget.
+        assertArrayEquals(new int[]{0, 0, 1}, MetricsHistory.rollupCapacities(720, 5000, 1008, 1000, 0));
+        assertArrayEquals(new int[]{10, 10, 10}, new MetricsHistory(3, 10, 10).getRollupCapacities());
+    }
+
+    @Test
+    public void testDefaultCoverage() {
+        // The default properties.
+        MetricsHistory history = new MetricsHistory(720, 5000, 1008, 1000, 32 * 1024 * 1024);
+        int[] capacities = history.getRollupCapacities();
+        // Each kept resolution covers a longer period than the samples and the finer resolutions.
+        long covered = 720 * 5000L;
+        for (int i = 0; i < capacities.length; i++) {
+            if (capacities[i] > 0) {
+                assertTrue(capacities[i] * MetricsHistory.RESOLUTIONS[i] > covered, "" + MetricsHistory.RESOLUTIONS[i]);
+                covered = capacities[i] * MetricsHistory.RESOLUTIONS[i];
+            }
+        }
+        assertTrue(covered > 24 * 3600000L, "" + covered);
+        // 3 hours sampled every 5 seconds, the last 3 hours are returned in 1 minute buckets.
+        for (int i = 0; i < 3 * 720; i++) {
+            history.record(server, i * 5000L, List.of("heap"), new double[]{i}, 1);
+        }
+        MetricsHistory.Points points = history.query(server, List.of(), 0, Long.MAX_VALUE, 200).get(0);
+        assertEquals(60000, points.resolution());
+        assertEquals(180, points.size());
+        assertEquals(0, points.times()[0]);
+    }
+}
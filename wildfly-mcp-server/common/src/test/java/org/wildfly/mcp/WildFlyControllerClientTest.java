@@ -0,0 +1,247 @@
+/*
+ * Copyright The WildFly Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.wildfly.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.Operation;
+import org.jboss.as.controller.client.OperationResponse;
+import org.jboss.dmr.ModelNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.wildfly.mcp.WildFlyControllerClient.AddLoggerRequest;
+import org.wildfly.mcp.WildFlyControllerClient.GetLoggersRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadBootErrorsRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadDeploymentsStatusRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadRunningModeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadServerStateRequest;
+
+public class WildFlyControllerClientTest {
+
+    private final Server server = new Server("localhost", "9990");
+    private final User user = new User();
+    private ModelControllerClient modelControllerClient;
+    private ModelControllerClientPool pool;
+    private ServerConcurrencyLimiter limiter;
+    private WildFlyControllerClient client;
+
+    @BeforeEach
+    public void setup() {
+        modelControllerClient = mock(ModelControllerClient.class);
+        pool = new ModelControllerClientPool(k -> modelControllerClient, 2, 60000, 60000, 1000);
+        limiter = new ServerConcurrencyLimiter(2, 100);
+        client = new WildFlyControllerClient(pool, limiter, new CircuitBreakers(3, 60000, System::currentTimeMillis),
+                new ResponseCache(), 1000);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        client.close();
+    }
+
+    @Test
+    public void testCallBatch() throws Exception {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").get("step-1").get("outcome").set("success");
+        response.get("result").get("step-1").get("result").set("running");
+        response.get("result").get("step-2").get("outcome").set("success");
+        response.get("result").get("step-2").get("result").set("NORMAL");
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(CompletableFuture.completedFuture(response));
+
+        List<ModelNode> responses = client.callBatch(List.of(new ReadServerStateRequest(server, user),
+                new ReadRunningModeRequest(server, user)));
+
+        ArgumentCaptor<ModelNode> op = ArgumentCaptor.forClass(ModelNode.class);
+        verify(modelControllerClient, times(1)).executeAsync(op.capture(), any());
+        assertEquals("composite", op.getValue().get("operation").asString());
+        assertEquals(2, op.getValue().get("steps").asList().size());
+        assertEquals("server-state", op.getValue().get("steps").get(0).get("name").asString());
+        assertEquals("running", responses.get(0).get("result").asString());
+        assertEquals("NORMAL", responses.get(1).get("result").asString());
+    }
+
+    @Test
+    public void testGetStatusSingleRoundTrip() throws Exception {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        ModelNode result = response.get("result");
+        result.get("step-1", "result").set("running");
+        result.get("step-2", "result").set("NORMAL");
+        result.get("step-3", "result").setEmptyList();
+        result.get("step-4", "result").setEmptyList();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(CompletableFuture.completedFuture(response));
+
+        WildFlyDMRStatus status = client.getStatus(server, user);
+
+        verify(modelControllerClient, times(1)).executeAsync(any(ModelNode.class), any());
+        assertEquals(true, status.isOk());
+    }
+
+    @Test
+    public void testCallAsyncCancellation() throws Exception {
+        CompletableFuture<ModelNode> operation = new CompletableFuture<>();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(operation);
+
+        CompletableFuture<ModelNode> future = client.callAsync(new ReadServerStateRequest(server, user));
+        assertFalse(future.isDone());
+        future.cancel(true);
+        assertTrue(operation.isCancelled());
+        // The connection went back to the pool
+        assertEquals(1, pool.idleCount(server, user));
+    }
+
+    @Test
+    public void testCallTimeout() throws Exception {
+        CompletableFuture<ModelNode> operation = new CompletableFuture<>();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(operation);
+
+        assertThrows(TimeoutException.class, () -> client.call(new ReadServerStateRequest(server, user)));
+        assertTrue(operation.isCancelled());
+    }
+
+    @Test
+    public void testCallAll() throws Exception {
+        CompletableFuture<ModelNode> first = new CompletableFuture<>();
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set("NORMAL");
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any()))
+                .thenReturn(first, CompletableFuture.completedFuture(response));
+
+        // Both operations are sent before waiting for the first response.
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> first.complete(response));
+        List<ModelNode> responses = client.callAll(List.of(new ReadServerStateRequest(server, user),
+                new ReadRunningModeRequest(server, user)));
+        assertEquals(2, responses.size());
+        verify(modelControllerClient, times(2)).executeAsync(any(ModelNode.class), any());
+
+        CompletableFuture<ModelNode> blocked = new CompletableFuture<>();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(blocked);
+        assertThrows(TimeoutException.class, () -> client.callAll(List.of(new ReadServerStateRequest(server, user))));
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void testCancelledRequestsAreNotCounted() throws Exception {
+        CircuitBreakers breakers = new CircuitBreakers(1, 60000, System::currentTimeMillis);
+        Server other = new Server("localhost", "10090");
+        WildFlyControllerClient client = new WildFlyControllerClient(pool, limiter, breakers, new ResponseCache(), 1000);
+        CompletableFuture<ModelNode> blocked = new CompletableFuture<>();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("WFLYCTL0030: No resource definition is registered")), blocked);
+        assertThrows(IOException.class, () -> client.callAll(List.of(new ReadServerStateRequest(server, user),
+                new ReadServerStateRequest(other, user))));
+        // The request sent to the other server is cancelled, the circuit of this server stays closed.
+        assertTrue(blocked.isCancelled());
+        for (CircuitBreakers.BreakerStats stats : breakers.getStats()) {
+            assertEquals(CircuitBreakers.State.CLOSED, stats.state());
+        }
+
+        // The request that timed out opens the circuit.
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(new CompletableFuture<>());
+        assertThrows(TimeoutException.class, () -> client.call(new ReadServerStateRequest(other, user)));
+        assertThrows(CircuitBreakers.CircuitOpenException.class, () -> client.call(new ReadServerStateRequest(other, user)));
+    }
+
+    @Test
+    public void testCallAsyncFailure() throws Exception {
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(CompletableFuture.failedFuture(new IOException("WFLYPRT0053: Could not connect")));
+
+        IOException ex = assertThrows(IOException.class, () -> client.call(new ReadServerStateRequest(server, user)));
+        assertEquals("WFLYPRT0053: Could not connect", ex.getMessage());
+        // The broken connection is not reused
+        assertEquals(0, pool.idleCount(server, user));
+    }
+
+    @Test
+    public void testConcurrentCallsLimit() throws Exception {
+        CompletableFuture<ModelNode> operation = new CompletableFuture<>();
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(operation);
+
+        client.callAsync(new ReadServerStateRequest(server, user));
+        client.callAsync(new ReadServerStateRequest(server, user));
+        CompletableFuture<ModelNode> rejected = client.callAsync(new ReadServerStateRequest(server, user));
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> rejected.get());
+        assertTrue(ex.getCause() instanceof ServerConcurrencyLimiter.ServerBusyException);
+        operation.complete(new ModelNode());
+        ServerConcurrencyLimiter.ServerStats stats = limiter.getStats().get(0);
+        assertEquals(2, stats.acquired());
+        assertEquals(1, stats.rejected());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    public void testOperationResponseHoldsConnection() throws Exception {
+        OperationResponse response = mock(OperationResponse.class);
+        when(response.getResponseNode()).thenReturn(new ModelNode());
+        when(modelControllerClient.executeOperation(any(Operation.class), any())).thenReturn(response);
+
+        OperationResponse value = client.callOperation(server, user, new ModelNode());
+        // The attached streams are read from the connection, it is not returned to the pool yet.
+        assertEquals(0, pool.idleCount(server, user));
+        assertEquals(1, limiter.getStats().get(0).inFlight());
+        value.close();
+        verify(response).close();
+        assertEquals(1, pool.idleCount(server, user));
+        assertEquals(0, limiter.getStats().get(0).inFlight());
+    }
+
+    @Test
+    public void testFailedComposite() throws Exception {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("failed");
+        response.get("failure-description").set("WFLYCTL0030: No resource definition is registered");
+        List<ModelNode> responses = WildFlyControllerClient.splitCompositeResponse(response, 2);
+        assertEquals(2, responses.size());
+        assertEquals("failed", responses.get(1).get("outcome").asString());
+        assertEquals("WFLYCTL0030: No resource definition is registered", responses.get(1).get("failure-description").asString());
+    }
+
+    @Test
+    public void testBatchRequestsOperations() {
+        ModelNode op = WildFlyControllerClient.toOperation(new ReadDeploymentsStatusRequest(server, user));
+        assertEquals("read-attribute", op.get("operation").asString());
+        assertEquals("status", op.get("name").asString());
+        op = WildFlyControllerClient.toOperation(new ReadBootErrorsRequest(server, user));
+        assertEquals("read-boot-errors", op.get("operation").asString());
+    }
+
+    @Test
+    public void testReadResponseCachedUntilWrite() throws Exception {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").add("org.foo");
+        when(modelControllerClient.executeAsync(any(ModelNode.class), any())).thenReturn(CompletableFuture.completedFuture(response));
+
+        ModelNode loggers = client.call(new GetLoggersRequest(server, user));
+        // The cached response can't be modified by the callers
+        loggers.get("result").add("org.bar");
+        loggers = client.call(new GetLoggersRequest(server, user));
+        assertEquals(1, loggers.get("result").asList().size());
+        verify(modelControllerClient, times(1)).executeAsync(any(ModelNode.class), any());
+
+        client.call(new AddLoggerRequest(server, user, "org.bar"));
+        client.call(new GetLoggersRequest(server, user));
+        verify(modelControllerClient, times(3)).executeAsync(any(ModelNode.class), any());
+    }
+}
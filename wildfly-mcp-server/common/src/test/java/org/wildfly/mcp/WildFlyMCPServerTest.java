@@ -11,15 +11,20 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.quarkiverse.mcp.server.ToolResponse;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.InjectMock;
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import org.jboss.dmr.ModelNode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import io.quarkiverse.mcp.server.TextContent;
 import java.util.ArrayList;
@@ -31,9 +36,9 @@ import org.wildfly.mcp.WildFlyControllerClient.EnableLoggerRequest;
 import org.wildfly.mcp.WildFlyControllerClient.GetLoggersRequest;
 import org.wildfly.mcp.WildFlyControllerClient.RemoveLoggerRequest;
 import org.wildfly.mcp.WildFlyControllerClient.GetLoggingFileRequest;
-import org.wildfly.mcp.WildFlyControllerClient.GetRuntimeMXBean;
-import org.wildfly.mcp.WildFlyControllerClient.GetOperatingSystemMXBean;
-import org.wildfly.mcp.WildFlyControllerClient.GetMemoryMXBean;
+import org.wildfly.mcp.WildFlyControllerClient.ManagementRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileAttributeRequest;
+import org.wildfly.mcp.WildFlyControllerClient.ReadLogFileLinesRequest;
 import org.jboss.resteasy.reactive.ClientWebApplicationException;
 import org.wildfly.mcp.WildFlyControllerClient.UndeployRequest;
 
@@ -267,7 +272,7 @@ public class WildFlyMCPServerTest {
                 .thenReturn(response);
 
         // Call the method
-        ToolResponse toolResponse = server.getWildFlyLogFileContent("localhost", "9990", "100", false);
+        ToolResponse toolResponse = server.getWildFlyLogFileContent("localhost", "9990", "100", false, null, null);
 
         // Assertions
         assertFalse(toolResponse.isError());
@@ -276,21 +281,25 @@ public class WildFlyMCPServerTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testGetWildFlyLogFileContentLastStart() throws Exception {
-        // Prepare mock response
-        ModelNode response = new ModelNode();
-        ModelNode result = response.get("result");
-        result.add("line1");
-        result.add("WFLYSRV0049: blah");
-        result.add("line3");
-        result.add("line4");
-
-
-        when(controllerClientMock.call(any(GetLoggingFileRequest.class)))
-                .thenReturn(response);
+        // Prepare mock response, the lines are read from the last server start
+        List<String> logFile = List.of("line1", "WFLYSRV0049: blah", "line3", "line4");
+        when(controllerClientMock.call(any(ReadLogFileLinesRequest.class)))
+                .thenAnswer(invocation -> readLogFile(logFile, invocation.getArgument(0)));
+        when(controllerClientMock.callBatch(any()))
+                .thenAnswer(invocation -> {
+                    List<ModelNode> responses = new ArrayList<>();
+                    for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                        responses.add(readLogFile(logFile, request));
+                    }
+                    return responses;
+                });
+        when(controllerClientMock.callOperation(any(ReadLogFileAttributeRequest.class)))
+                .thenAnswer(invocation -> streamLogFile(logFile));
 
         // Call the method, lastStart is true by default
-        ToolResponse toolResponse = server.getWildFlyLogFileContent("localhost", "9990", null, true);
+        ToolResponse toolResponse = server.getWildFlyLogFileContent("localhost", "9990", null, true, null, null);
 
         // Assertions
         assertFalse(toolResponse.isError());
@@ -298,6 +307,121 @@ public class WildFlyMCPServerTest {
         assertEquals("WildFly server log file Content: `WFLYSRV0049: blah\nline3\nline4\n`", textResponse);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetWildFlyLogHistogram() throws Exception {
+        List<String> logFile = new ArrayList<>();
+        logFile.add("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting");
+        logFile.add("2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller] (main) WFLYCTL0013: Operation failed");
+        when(controllerClientMock.call(any(ReadLogFileLinesRequest.class)))
+                .thenAnswer(invocation -> readLogFile(logFile, invocation.getArgument(0)));
+        when(controllerClientMock.callBatch(any()))
+                .thenAnswer(invocation -> {
+                    List<ModelNode> responses = new ArrayList<>();
+                    for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                        responses.add(readLogFile(logFile, request));
+                    }
+                    return responses;
+                });
+        when(controllerClientMock.callOperation(any(ReadLogFileAttributeRequest.class)))
+                .thenAnswer(invocation -> streamLogFile(logFile));
+
+        ToolResponse toolResponse = server.getWildFlyLogHistogram("localhost", "9990", null, null, null, null);
+        assertFalse(toolResponse.isError());
+        String textResponse = ((TextContent)toolResponse.content().get(0)).text();
+        assertTrue(textResponse.startsWith("Histogram of 2 log records in 2 lines:"));
+        assertTrue(textResponse.contains("1\tWFLYCTL0013\n"));
+        String cursor = ((TextContent)toolResponse.content().get(1)).text().substring("Cursor: ".length());
+
+        // Only the new lines are read, the counts are added to the previous ones.
+        logFile.add("2025-06-23 10:13:43,003 ERROR [org.jboss.as.controller] (main) WFLYCTL0013: Operation failed");
+        toolResponse = server.getWildFlyLogHistogram("localhost", "9990", null, null, null, cursor);
+        assertFalse(toolResponse.isError());
+        textResponse = ((TextContent)toolResponse.content().get(0)).text();
+        assertTrue(textResponse.startsWith("Histogram of 3 log records in 3 lines:"));
+        assertTrue(textResponse.contains("2\tWFLYCTL0013\n"));
+
+        assertTrue(server.getWildFlyLogHistogram("localhost", "9990", null, null, null, "foo").isError());
+
+        // A histogram of another time range at the same position of the log file has its own cursor.
+        toolResponse = server.getWildFlyLogHistogram("localhost", "9990", "2025-06-23 10:13:42", null, null, null);
+        textResponse = ((TextContent)toolResponse.content().get(0)).text();
+        assertTrue(textResponse.startsWith("Histogram of 2 log records in 3 lines:"));
+        String rangeCursor = ((TextContent)toolResponse.content().get(1)).text().substring("Cursor: ".length());
+        assertFalse(rangeCursor.equals(cursor));
+        toolResponse = server.getWildFlyLogHistogram("localhost", "9990", null, null, null, rangeCursor);
+        assertTrue(((TextContent)toolResponse.content().get(0)).text().startsWith("Histogram of 2 log records in 3 lines:"));
+        toolResponse = server.getWildFlyLogHistogram("localhost", "9990", null, null, null, cursor);
+        assertTrue(((TextContent)toolResponse.content().get(0)).text().startsWith("Histogram of 3 log records in 3 lines:"));
+        // The time range of a cursor can't be changed.
+        toolResponse = server.getWildFlyLogHistogram("localhost", "9990", "2025-06-23 10:13:43", null, null, rangeCursor);
+        assertTrue(toolResponse.isError());
+        assertTrue(((TextContent)toolResponse.content().get(0)).text().contains("from 2025-06-23T10:13:42 to the end"));
+    }
+
+    private static ModelNode readLogFile(List<String> logFile, ManagementRequest request) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        if (!(request instanceof ReadLogFileLinesRequest lines)) {
+            // The size of the file.
+            long size = 0;
+            for (String line : logFile) {
+                size += LogTailer.utf8Length(line) + 1;
+            }
+            response.get("result").set(size);
+            return response;
+        }
+        ModelNode result = response.get("result").setEmptyList();
+        int end = lines.tail ? logFile.size() - lines.skip : Math.min(logFile.size(), lines.skip + lines.lines);
+        for (int i = Math.max(0, lines.tail ? end - lines.lines : lines.skip); i < end; i++) {
+            result.add(logFile.get(i));
+        }
+        return response;
+    }
+
+    private static OperationResponse streamLogFile(List<String> logFile) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        response.get("result").set("uuid");
+        OperationResponse.StreamEntry entry = mock(OperationResponse.StreamEntry.class);
+        StringBuilder content = new StringBuilder();
+        logFile.forEach(line -> content.append(line).append('\n'));
+        when(entry.getStream()).thenReturn(new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)));
+        OperationResponse operationResponse = mock(OperationResponse.class);
+        when(operationResponse.getResponseNode()).thenReturn(response);
+        when(operationResponse.getInputStream("uuid")).thenReturn(entry);
+        return operationResponse;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSearchWildFlyLog() throws Exception {
+        List<String> logFile = List.of("2025-06-23 10:13:40,001 INFO  [org.jboss.as.server] (main) WFLYSRV0049: WildFly starting",
+                "2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller] (Controller Boot Thread) WFLYCTL0013: Operation failed",
+                "java.lang.IllegalStateException: boom",
+                "2025-06-23 10:13:44,005 INFO  [org.jboss.as.server] (Controller Boot Thread) WFLYSRV0025: WildFly started");
+        when(controllerClientMock.call(any(ReadLogFileLinesRequest.class)))
+                .thenAnswer(invocation -> readLogFile(logFile, invocation.getArgument(0)));
+        when(controllerClientMock.callBatch(any()))
+                .thenAnswer(invocation -> {
+                    List<ModelNode> responses = new ArrayList<>();
+                    for (ManagementRequest request : (List<ManagementRequest>) invocation.getArgument(0)) {
+                        responses.add(readLogFile(logFile, request));
+                    }
+                    return responses;
+                });
+        when(controllerClientMock.callOperation(any(ReadLogFileAttributeRequest.class)))
+                .thenAnswer(invocation -> streamLogFile(logFile));
+
+        ToolResponse toolResponse = server.searchWildFlyLog("localhost", "9990", null, "ERROR", null, null, null, null, null, null, null, null, null);
+
+        assertFalse(toolResponse.isError());
+        String textResponse = ((TextContent)toolResponse.content().get(0)).text();
+        assertEquals("Found 1 matching log records in 4 lines. Matching lines: `"
+                + "2025-06-23 10:13:42,003 ERROR [org.jboss.as.controller] (Controller Boot Thread) WFLYCTL0013: Operation failed\n"
+                + "java.lang.IllegalStateException: boom\n`", textResponse);
+    }
+
     @Test
     public void testGetWildFlyServerAndJVMInfo() throws Exception {
         // Mocks for MXBean calls
@@ -322,16 +446,15 @@ public class WildFlyMCPServerTest {
         memoryResult.get("max").set(1024*1024*512); // 512MB
         memoryResult.get("used").set(1024*1024*256); // 256MB
 
-        ServerInfo serverInfo = new ServerInfo();
-        serverInfo.nodeName = "test-node";
-        serverInfo.productName = "WildFly";
-        serverInfo.productVersion = "30.0.0.Final";
-        serverInfo.coreVersion = "22.0.0.Final";
+        ModelNode rootResponse = new ModelNode();
+        ModelNode rootResult = rootResponse.get("result");
+        rootResult.get("name").set("test-node");
+        rootResult.get("product-name").set("WildFly");
+        rootResult.get("product-version").set("30.0.0.Final");
+        rootResult.get("release-version").set("22.0.0.Final");
 
-        when(controllerClientMock.call(any(GetRuntimeMXBean.class))).thenReturn(runtimeResponse);
-        when(controllerClientMock.call(any(GetOperatingSystemMXBean.class))).thenReturn(osResponse);
-        when(controllerClientMock.call(any(GetMemoryMXBean.class))).thenReturn(memoryResponse);
-        doReturn(serverInfo).when(server).getServerInfo(any(Server.class), any(User.class), any(ServerInfo.class));
+        // All the resources are read in a single composite operation
+        when(controllerClientMock.callBatch(any())).thenReturn(List.of(runtimeResponse, osResponse, memoryResponse, rootResponse));
 
         // Call the method
         ToolResponse toolResponse = server.getWildFlyServerAndJVMInfo("localhost", "9990");
@@ -339,11 +462,80 @@ public class WildFlyMCPServerTest {
         // Assertions
         assertFalse(toolResponse.isError());
         String jsonResponse = ((TextContent)toolResponse.content().get(0)).text();
+        ModelNode reply = ModelNode.fromJSONString(jsonResponse);
+        assertEquals("test-node", reply.get("nodeName").asString());
+        assertEquals("WildFly", reply.get("productName").asString());
+        assertEquals("30.0.0.Final", reply.get("productVersion").asString());
+        assertEquals("22.0.0.Final", reply.get("coreVersion").asString());
+        assertEquals("test-vm", reply.get("vmInfo").get("name").asString());
+        assertEquals("-Xmx512m", reply.get("vmInfo").get("inputArguments").get(0).asString());
+        assertEquals("3600seconds", reply.get("vmInfo").get("upTime").asString());
+        assertEquals("50%", reply.get("vmInfo").get("consumedMemory").asString());
+        assertEquals("not available", reply.get("vmInfo").get("consumedCPU").asString());
+    }
+
+    private static ModelNode result(Object value) {
+        ModelNode response = new ModelNode();
+        response.get("outcome").set("success");
+        if (value instanceof Long l) {
+            response.get("result").set(l);
+        } else if (value instanceof Double d) {
+            response.get("result").set(d);
+        } else if (value instanceof ModelNode node) {
+            response.get("result").set(node);
+        }
+        return response;
+    }
 
-        // The vmInfo is not fully populated, so we can't do a full object comparison.
-        // Instead, we'll construct the expected JSON manually.
-        String expectedJson = server.toJson(serverInfo);
-        assertEquals(expectedJson, jsonResponse);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetWildFlyServerAndJVMInfoCached() throws Exception {
+        ModelNode runtime = new ModelNode();
+        runtime.get("name").set("test-vm");
+        runtime.get("input-arguments").add("-Xmx512m");
+        runtime.get("start-time").set(1615891200000L);
+        runtime.get("uptime").set(3600000L);
+        ModelNode heap = new ModelNode();
+        heap.get("max").set(1000L);
+        heap.get("used").set(250L);
+        ModelNode memory = new ModelNode();
+        memory.get("heap-memory-usage").set(heap);
+        ModelNode os = new ModelNode();
+        os.get("system-load-average").set(1.0);
+        ModelNode root = new ModelNode();
+        root.get("product-version").set("30.0.0.Final");
+        List<ModelNode> full = List.of(result(runtime), result(os), result(memory), result(root));
+        ModelNode usedHeap = heap.clone();
+        usedHeap.get("used").set(750L);
+        List<ModelNode> volatileValues = List.of(result(1615891200000L), result(7200000L), result(null), result(2.0), result(usedHeap));
+        when(controllerClientMock.callBatch(any())).thenReturn(full, volatileValues);
+
+        ModelNode reply = ModelNode.fromJSONString(((TextContent) server.getWildFlyServerAndJVMInfo("localhost", "9990").content().get(0)).text());
+        assertEquals("25%", reply.get("vmInfo").get("consumedMemory").asString());
+        assertEquals("1%", reply.get("vmInfo").get("systemLoadAverage").asString());
+
+        // The immutable values are cached, only the volatile values are read.
+        ToolResponse toolResponse = server.getWildFlyServerAndJVMInfo("localhost", "9990");
+        assertFalse(toolResponse.isError());
+        reply = ModelNode.fromJSONString(((TextContent) toolResponse.content().get(0)).text());
+        assertEquals("75%", reply.get("vmInfo").get("consumedMemory").asString());
+        assertEquals("7200seconds", reply.get("vmInfo").get("upTime").asString());
+        assertEquals("not available", reply.get("vmInfo").get("consumedCPU").asString());
+        assertEquals("2%", reply.get("vmInfo").get("systemLoadAverage").asString());
+        assertEquals("test-vm", reply.get("vmInfo").get("name").asString());
+        assertEquals("-Xmx512m", reply.get("vmInfo").get("inputArguments").get(0).asString());
+        assertEquals("30.0.0.Final", reply.get("productVersion").asString());
+        ArgumentCaptor<List<WildFlyControllerClient.ManagementRequest>> requests = ArgumentCaptor.forClass(List.class);
+        verify(controllerClientMock, times(2)).callBatch(requests.capture());
+        assertEquals(4, requests.getAllValues().get(0).size());
+        assertEquals(5, requests.getAllValues().get(1).size());
+        assertTrue(requests.getAllValues().get(1).stream().allMatch(r -> r.operation.equals("read-attribute")));
+
+        // The server has been restarted, everything is read again.
+        when(controllerClientMock.callBatch(any())).thenReturn(List.of(result(1615900000000L)), full);
+        reply = ModelNode.fromJSONString(((TextContent) server.getWildFlyServerAndJVMInfo("localhost", "9990").content().get(0)).text());
+        assertEquals("25%", reply.get("vmInfo").get("consumedMemory").asString());
+        verify(controllerClientMock, times(4)).callBatch(any());
     }
 
     @Test
@@ -352,7 +544,7 @@ public class WildFlyMCPServerTest {
         when(wildflyMetricsClient.getMetrics(any(String.class))).thenReturn("my_metric 123");
 
         // Call the method
-        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990");
+        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, null);
 
         // Assertions
         assertFalse(toolResponse.isError());
@@ -360,6 +552,96 @@ public class WildFlyMCPServerTest {
         assertEquals("my_metric 123", response);
     }
 
+    @Test
+    public void testGetWildFlyPrometheusMetricsFiltered() {
+        when(wildflyMetricsClient.getMetrics(any(String.class))).thenReturn("""
+                # TYPE base_memory_usedHeap_bytes gauge
+                base_memory_usedHeap_bytes 5.4525952E7
+                # TYPE vendor_memoryPool_usage_bytes gauge
+                vendor_memoryPool_usage_bytes{name="Metaspace",area="nonheap"} 6.1E7
+                """);
+
+        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", "vendor_", "area=\"nonheap\"", null, null);
+
+        assertFalse(toolResponse.isError());
+        String response = ((TextContent)toolResponse.content().get(0)).text();
+        assertEquals("name\tlabels\ttype\tvalue\nvendor_memoryPool_usage_bytes\tname=Metaspace,area=nonheap\tgauge\t61000000\n", response);
+
+        toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, "area=heap foo", null, null);
+        assertTrue(toolResponse.isError());
+    }
+
+    @Test
+    public void testGetWildFlyPrometheusMetricsRates() {
+        when(wildflyMetricsClient.getMetrics(any(String.class))).thenReturn("""
+                # TYPE requests counter
+                requests_total{path="/a"} 10
+                # TYPE heap gauge
+                heap 100
+                """, """
+                # TYPE requests counter
+                requests_total{path="/a"} 25
+                heap 100
+                """, """
+                # TYPE requests counter
+                requests_total{path="/a"} 5
+                """);
+
+        // The counters are scraped once, the first call has no previous value.
+        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, true);
+        assertFalse(toolResponse.isError());
+        String[] lines = ((TextContent)toolResponse.content().get(0)).text().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("requests_total\tpath=/a\t10\tno previous value\t-\t-", lines[1]);
+        assertTrue(lines[2].startsWith("1 counter(s) have no previous value"), lines[2]);
+
+        toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, true);
+        lines = ((TextContent)toolResponse.content().get(0)).text().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].startsWith("requests_total\tpath=/a\t25\t15\t"), lines[1]);
+
+        toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, true);
+        lines = ((TextContent)toolResponse.content().get(0)).text().split("\n");
+        assertTrue(lines[1].startsWith("requests_total\tpath=/a\t5\t5 (reset)\t"), lines[1]);
+    }
+
+    @Test
+    public void testGetWildFlyMetricsHistoryNotSampled() {
+        ToolResponse toolResponse = server.getWildFlyMetricsHistory("localhost", "9990", null, null, null);
+
+        assertTrue(toolResponse.isError());
+        String response = ((TextContent)toolResponse.content().get(0)).text();
+        assertTrue(response.contains("org.wildfly.mcp.sampler.servers"));
+    }
+
+    @Test
+    public void testGetWildFlyMetricsAnomaliesNotSampled() {
+        ToolResponse toolResponse = server.getWildFlyMetricsAnomalies("localhost", "9990", null);
+
+        assertTrue(toolResponse.isError());
+        String response = ((TextContent)toolResponse.content().get(0)).text();
+        assertTrue(response.contains("org.wildfly.mcp.sampler.servers"));
+    }
+
+    @Test
+    public void testGetWildFlyMCPServerDiagnostics() throws Exception {
+        when(wildflyMetricsClient.getMetrics(any(String.class))).thenReturn("my_metric 123");
+        server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, null);
+
+        ToolResponse toolResponse = server.getWildFlyMCPServerDiagnostics();
+
+        assertFalse(toolResponse.isError());
+        ModelNode reply = ModelNode.fromJSONString(((TextContent)toolResponse.content().get(0)).text());
+        ModelNode concurrency = reply.get("concurrency").get(0);
+        assertEquals("localhost:9990", concurrency.get("server").asString());
+        assertEquals(1, concurrency.get("acquired").asLong());
+        assertEquals(0, concurrency.get("inFlight").asInt());
+        ModelNode breaker = reply.get("circuitBreakers").get(0);
+        assertEquals("localhost:9990", breaker.get("server").asString());
+        assertEquals("CLOSED", breaker.get("state").asString());
+        assertEquals(0, reply.get("responseCache").get("size").asInt());
+    }
+
     @Test
     public void testGetWildFlyPrometheusMetricsNotFound() {
         // Mock metrics client to throw 404
@@ -368,7 +650,7 @@ public class WildFlyMCPServerTest {
         when(wildflyMetricsClient.getMetrics(any(String.class))).thenThrow(exception);
 
         // Call the method
-        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990");
+        ToolResponse toolResponse = server.getWildFlyPrometheusMetrics("localhost", "9990", null, null, null, null);
 
         // Assertions
         assertFalse(toolResponse.isError());